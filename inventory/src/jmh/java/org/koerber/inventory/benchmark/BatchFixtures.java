@@ -0,0 +1,63 @@
+package org.koerber.inventory.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+
+/** Reproducible batch data for the benchmarks, seeded so every fork sees the same batches. */
+final class BatchFixtures {
+
+  private static final long SEED = 42L;
+
+  private BatchFixtures() {}
+
+  /**
+   * Generate batches for one product
+   *
+   * @param product owning product, may be null for handler-only benchmarks
+   * @param batchCount number of batches
+   * @param unusableRatio share of batches that are expired or inactive, split evenly
+   * @param nullDateRatio share of batches without expiry and manufacturing date
+   * @return batches in insertion order
+   */
+  static List<InventoryBatch> batches(
+      Product product, int batchCount, double unusableRatio, double nullDateRatio) {
+    Random random = new Random(SEED);
+    LocalDate today = LocalDate.now();
+    LocalDateTime now = LocalDateTime.now();
+
+    List<InventoryBatch> batches = new ArrayList<>(batchCount);
+    for (long id = 1; id <= batchCount; id++) {
+      boolean unusable = random.nextDouble() < unusableRatio;
+      boolean expired = unusable && random.nextBoolean();
+      boolean noDates = random.nextDouble() < nullDateRatio;
+
+      LocalDate expiryDate =
+          expired
+              ? today.minusDays(1 + random.nextInt(90))
+              : noDates ? null : today.plusDays(random.nextInt(720));
+      LocalDate manufacturingDate = noDates ? null : today.minusDays(random.nextInt(720));
+
+      batches.add(
+          InventoryBatch.builder()
+              .id(id)
+              .product(product)
+              .batchNumber("BATCH-" + id)
+              .quantity(1 + random.nextInt(100))
+              .expiryDate(expiryDate)
+              .manufacturingDate(manufacturingDate)
+              .supplierName("Supplier " + random.nextInt(20))
+              .costPerUnit(BigDecimal.valueOf(100 + random.nextInt(900), 2))
+              .status(unusable && !expired ? BatchStatus.INACTIVE : BatchStatus.ACTIVE)
+              .createdAt(now.minusSeconds(random.nextInt(86_400)))
+              .build());
+    }
+    return batches;
+  }
+}
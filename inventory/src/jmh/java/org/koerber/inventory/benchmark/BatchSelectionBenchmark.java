@@ -0,0 +1,59 @@
+package org.koerber.inventory.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.handler.FIFOInventoryHandler;
+import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.handler.StandardInventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the full sort followed by selection with the top-k selection used on the deduction
+ * path, for products with many batches and small order quantities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchSelectionBenchmark {
+
+  @Param({"10000", "100000"})
+  private int batchCount;
+
+  @Param({"5", "500"})
+  private int requiredQuantity;
+
+  @Param({"STANDARD", "FIFO"})
+  private String handlerType;
+
+  private InventoryHandler handler;
+  private List<InventoryBatch> batches;
+
+  @Setup
+  public void setUp() {
+    handler =
+        StandardInventoryHandler.TYPE.equals(handlerType)
+            ? new StandardInventoryHandler()
+            : new FIFOInventoryHandler();
+
+    batches = BatchFixtures.batches(null, batchCount, 0.0, 0.0);
+  }
+
+  @Benchmark
+  public List<InventoryBatch> fullSortThenSelect() {
+    return handler.selectBatchesForDeduction(
+        handler.sortAndFilterBatches(batches), requiredQuantity);
+  }
+
+  @Benchmark
+  public List<InventoryBatch> topKSelect() {
+    return handler.selectTopBatchesForDeduction(batches, requiredQuantity);
+  }
+}
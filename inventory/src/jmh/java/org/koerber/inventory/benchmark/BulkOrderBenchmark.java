@@ -0,0 +1,127 @@
+package org.koerber.inventory.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.handler.FewestBatchesInventoryHandler;
+import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.handler.StandardInventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustom.StockDeduction;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustomImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Bulk orders under the standard handler and the fewest-batches handler: the rows one order
+ * writes, and the latency of selecting the batches and writing them with the service's conditional
+ * UPDATE batch. Writes go to an in-memory H2 table and are rolled back after every order, so every
+ * order sees the same stock. Divide the rowsWritten counter by orders for the rows per order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BulkOrderBenchmark {
+
+  @Param({"1000", "10000"})
+  private int batchCount;
+
+  @Param({"2000", "20000"})
+  private int requiredQuantity;
+
+  @Param({"STANDARD", "FEWEST_BATCHES"})
+  private String handlerType;
+
+  private InventoryHandler handler;
+  private List<InventoryBatch> batches;
+  private SingleConnectionDataSource dataSource;
+  private InventoryBatchRepositoryCustomImpl batchWriter;
+
+  @Setup
+  public void setUp() throws SQLException {
+    handler =
+        StandardInventoryHandler.TYPE.equals(handlerType)
+            ? new StandardInventoryHandler()
+            : new FewestBatchesInventoryHandler();
+    batches = BatchFixtures.batches(null, batchCount, 0.0, 0.0);
+
+    dataSource = new SingleConnectionDataSource("jdbc:h2:mem:bulk-order", "sa", "", true);
+    dataSource.setAutoCommit(false);
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute(
+        "CREATE TABLE inventory_batches (id BIGINT PRIMARY KEY, quantity INT NOT NULL, "
+            + "status VARCHAR(20) NOT NULL, version BIGINT NOT NULL, updated_at TIMESTAMP)");
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO inventory_batches (id, quantity, status, version) VALUES (?, ?, 'ACTIVE', 0)",
+        batches,
+        batches.size(),
+        (ps, batch) -> {
+          ps.setLong(1, batch.getId());
+          ps.setInt(2, batch.getQuantity());
+        });
+    dataSource.getConnection().commit();
+    batchWriter = new InventoryBatchRepositoryCustomImpl(jdbcTemplate);
+  }
+
+  @TearDown
+  public void tearDown() {
+    dataSource.destroy();
+  }
+
+  @Benchmark
+  public List<InventoryBatch> select(RowCounters counters) {
+    List<InventoryBatch> selected = handler.selectTopBatchesForDeduction(batches, requiredQuantity);
+    counters.count(selected.size());
+    return selected;
+  }
+
+  @Benchmark
+  public int[] selectAndWrite(RowCounters counters) throws SQLException {
+    List<InventoryBatch> selected = handler.selectTopBatchesForDeduction(batches, requiredQuantity);
+
+    List<StockDeduction> deductions = new ArrayList<>(selected.size());
+    int remainingQuantity = requiredQuantity;
+    for (InventoryBatch batch : selected) {
+      int quantity = Math.min(batch.getQuantity(), remainingQuantity);
+      deductions.add(new StockDeduction(batch.getId(), quantity));
+      remainingQuantity -= quantity;
+    }
+    int[] updatedRows = batchWriter.deductQuantities(deductions);
+    dataSource.getConnection().rollback();
+
+    counters.count(deductions.size());
+    return updatedRows;
+  }
+
+  /** Orders and rows written per iteration */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RowCounters {
+
+    public long orders;
+    public long rowsWritten;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      orders = 0;
+      rowsWritten = 0;
+    }
+
+    void count(int rows) {
+      orders++;
+      rowsWritten += rows;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.koerber.inventory.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.handler.BatchSnapshot;
+import org.koerber.inventory.handler.FIFOInventoryHandler;
+import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.handler.StandardInventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Sorting, filtering and selection cost of the handlers across batch counts and data shapes:
+ * share of expired or inactive batches and share of batches without dates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InventoryHandlerBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  private int batchCount;
+
+  @Param({"0.0", "0.3"})
+  private double unusableRatio;
+
+  @Param({"0.0", "0.2"})
+  private double nullDateRatio;
+
+  @Param({"STANDARD", "FIFO"})
+  private String handlerType;
+
+  private InventoryHandler handler;
+  private List<InventoryBatch> batches;
+  private List<InventoryBatch> sortedBatches;
+  private BatchSnapshot snapshot;
+  private int[] positions;
+  private int requiredQuantity;
+
+  @Setup
+  public void setUp() {
+    handler =
+        StandardInventoryHandler.TYPE.equals(handlerType)
+            ? new StandardInventoryHandler()
+            : new FIFOInventoryHandler();
+    batches = BatchFixtures.batches(null, batchCount, unusableRatio, nullDateRatio);
+    sortedBatches = handler.sortAndFilterBatches(batches);
+    snapshot = BatchSnapshot.of(batches);
+    positions = new int[batchCount];
+    // Roughly a tenth of the usable stock, so selection touches more than one batch
+    requiredQuantity =
+        Math.max(1, sortedBatches.stream().mapToInt(InventoryBatch::getQuantity).sum() / 10);
+  }
+
+  @Benchmark
+  public List<InventoryBatch> sortAndFilterBatches() {
+    return handler.sortAndFilterBatches(batches);
+  }
+
+  @Benchmark
+  public List<InventoryBatch> selectBatchesForDeduction() {
+    return handler.selectBatchesForDeduction(sortedBatches, requiredQuantity);
+  }
+
+  @Benchmark
+  public int sortAndFilterSnapshot() {
+    return handler.sortAndFilter(snapshot, BatchSnapshot.today(), positions);
+  }
+}
@@ -0,0 +1,144 @@
+package org.koerber.inventory.benchmark;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.InventoryApplication;
+import org.koerber.inventory.dto.BatchDTO;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.StockTotals;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Read path of GET /inventory/{productCode} against the in-memory H2 database: managed entities
+ * with totals summed in Java, against projected read views with totals aggregated in SQL. Compare
+ * {@code gc.alloc.rate.norm} from the gc profiler for the heap allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InventoryReadBenchmark {
+
+  private static final long PRODUCT_ID = 1L;
+
+  @Param({"100", "10000"})
+  private int batchCount;
+
+  private ConfigurableApplicationContext context;
+  private InventoryBatchRepository batchRepository;
+  private TransactionTemplate readOnlyTransaction;
+
+  @Setup
+  public void setUp() {
+    context =
+        new SpringApplicationBuilder(InventoryApplication.class)
+            .web(WebApplicationType.NONE)
+            .run(
+                "--spring.sql.init.mode=never",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                "--inventory.product-cache.preload=false");
+    batchRepository = context.getBean(InventoryBatchRepository.class);
+    readOnlyTransaction =
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    readOnlyTransaction.setReadOnly(true);
+    seed(context.getBean(JdbcTemplate.class));
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public List<BatchDTO> managedEntities() {
+    return readOnlyTransaction.execute(
+        status -> {
+          List<InventoryBatch> batches = batchRepository.findByProductId(PRODUCT_ID);
+          LocalDate today = LocalDate.now();
+          int totalQuantity = 0;
+          int availableQuantity = 0;
+          for (InventoryBatch batch : batches) {
+            totalQuantity += batch.getQuantity();
+            availableQuantity += batch.isAvailable(today) ? batch.getQuantity() : 0;
+          }
+          List<BatchDTO> dtos = toDtos(batches);
+          dtos.add(BatchDTO.builder().quantity(totalQuantity + availableQuantity).build());
+          return dtos;
+        });
+  }
+
+  @Benchmark
+  public List<BatchDTO> projectedViews() {
+    return readOnlyTransaction.execute(
+        status -> {
+          List<InventoryBatch> batches = batchRepository.findBatchViewsByProductId(PRODUCT_ID);
+          StockTotals totals =
+              batchRepository.findStockTotalsByProductIds(List.of(PRODUCT_ID)).get(0);
+          List<BatchDTO> dtos = toDtos(batches);
+          dtos.add(
+              BatchDTO.builder()
+                  .quantity((int) (totals.totalQuantity() + totals.availableQuantity()))
+                  .build());
+          return dtos;
+        });
+  }
+
+  private static List<BatchDTO> toDtos(List<InventoryBatch> batches) {
+    List<BatchDTO> dtos = new ArrayList<>(batches.size() + 1);
+    for (InventoryBatch batch : batches) {
+      dtos.add(BatchDTO.convertToBatchDTO(batch));
+    }
+    return dtos;
+  }
+
+  private void seed(JdbcTemplate jdbcTemplate) {
+    jdbcTemplate.update(
+        "INSERT INTO products (id, product_code, name, category, minimum_stock, handler_type, "
+            + "created_at, updated_at) VALUES (?, 'BENCH-001', 'Benchmark Product', "
+            + "'ELECTRONICS', 50, 'STANDARD', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+        PRODUCT_ID);
+
+    List<Object[]> rows = new ArrayList<>(batchCount);
+    for (InventoryBatch batch : BatchFixtures.batches(null, batchCount, 0.2, 0.1)) {
+      rows.add(
+          new Object[] {
+            batch.getId(),
+            PRODUCT_ID,
+            batch.getBatchNumber(),
+            batch.getQuantity(),
+            batch.getExpiryDate(),
+            batch.getManufacturingDate(),
+            batch.getSupplierName(),
+            batch.getCostPerUnit(),
+            batch.getStatus().name(),
+            batch.getCreatedAt(),
+            LocalDateTime.now()
+          });
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO inventory_batches (id, product_id, batch_number, quantity, expiry_date, "
+            + "manufacturing_date, supplier_name, cost_per_unit, status, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        rows);
+  }
+}
@@ -0,0 +1,140 @@
+package org.koerber.inventory.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.InventoryApplication;
+import org.koerber.inventory.dto.InventoryResponse;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.service.BatchExpirySweeper;
+import org.koerber.inventory.service.InventoryService;
+import org.koerber.inventory.service.StockCounterReconciler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Latency of GET and deduction by product as {@code inventory_batches} grows, on a file-based H2
+ * database under {@code build/jmh-data}. The generated data is deterministic: batches are spread
+ * evenly over 100k products, a tenth of them never expire, and a few are expired or inactive. A
+ * database is generated once per batch count with set-based inserts and reused by later runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InventoryScalingBenchmark {
+
+  private static final int PRODUCT_COUNT = 100_000;
+
+  /** Rows generated per INSERT ... SELECT, bounds the undo log of one statement */
+  private static final int GENERATE_CHUNK = 1_000_000;
+
+  @Param({"1000000", "10000000"})
+  private int batchCount;
+
+  private ConfigurableApplicationContext context;
+  private InventoryService inventoryService;
+  private SplittableRandom random;
+
+  @Setup
+  public void setUp() {
+    context =
+        new SpringApplicationBuilder(InventoryApplication.class)
+            .web(WebApplicationType.NONE)
+            .run(
+                "--spring.datasource.url=jdbc:h2:file:./build/jmh-data/inventory-" + batchCount,
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.sql.init.mode=never",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                "--inventory.product-cache.preload=false");
+    inventoryService = context.getBean(InventoryService.class);
+    random = new SplittableRandom(42);
+
+    JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    if (!isGenerated(jdbcTemplate)) {
+      generate(jdbcTemplate);
+      context.getBean(BatchExpirySweeper.class).sweep();
+      context.getBean(StockCounterReconciler.class).reconcile();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public InventoryResponse getInventoryByProduct() {
+    return inventoryService.getInventoryByProduct(randomProductCode());
+  }
+
+  @Benchmark
+  public InventoryUpdateResponse updateInventory() {
+    return inventoryService.updateInventory(
+        InventoryUpdateRequest.builder()
+            .productCode(randomProductCode())
+            .quantityToDeduct(1)
+            .orderId(UUID.randomUUID().toString())
+            .build());
+  }
+
+  private String randomProductCode() {
+    return productCode(random.nextInt(PRODUCT_COUNT) + 1);
+  }
+
+  private static String productCode(int productId) {
+    return String.format("GEN-%06d", productId);
+  }
+
+  private boolean isGenerated(JdbcTemplate jdbcTemplate) {
+    Long products = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products", Long.class);
+    Long batches =
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM inventory_batches", Long.class);
+    return products == PRODUCT_COUNT && batches == batchCount;
+  }
+
+  private void generate(JdbcTemplate jdbcTemplate) {
+    jdbcTemplate.execute("TRUNCATE TABLE inventory_batches");
+    jdbcTemplate.execute("DELETE FROM products");
+
+    jdbcTemplate.update(
+        "INSERT INTO products (id, product_code, name, category, minimum_stock, handler_type, "
+            + "created_at, updated_at) "
+            + "SELECT X, 'GEN-' || LPAD(CAST(X AS VARCHAR), 6, '0'), 'Generated Product ' || X, "
+            + "'ELECTRONICS', 50, CASE WHEN MOD(X, 2) = 0 THEN 'FIFO' ELSE 'STANDARD' END, "
+            + "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM SYSTEM_RANGE(1, ?)",
+        PRODUCT_COUNT);
+
+    for (long from = 1; from <= batchCount; from += GENERATE_CHUNK) {
+      long to = Math.min(from + GENERATE_CHUNK - 1, batchCount);
+      jdbcTemplate.update(
+          "INSERT INTO inventory_batches (id, product_id, batch_number, quantity, expiry_date, "
+              + "manufacturing_date, supplier_name, cost_per_unit, status, created_at, "
+              + "updated_at) "
+              + "SELECT X, MOD(X, ?) + 1, 'GEN-BATCH-' || X, 100 + MOD(X * 7919, 900), "
+              + "CASE WHEN MOD(X, 10) = 0 THEN NULL "
+              + "ELSE DATEADD(DAY, MOD(X * 31, 1460) - 30, CURRENT_DATE) END, "
+              + "DATEADD(DAY, -MOD(X * 17, 730), CURRENT_DATE), 'Generated Supplier', 10.00, "
+              + "CASE WHEN MOD(X, 20) = 0 THEN 'INACTIVE' ELSE 'ACTIVE' END, "
+              + "DATEADD(SECOND, -X, CURRENT_TIMESTAMP), CURRENT_TIMESTAMP "
+              + "FROM SYSTEM_RANGE(?, ?)",
+          PRODUCT_COUNT,
+          from,
+          to);
+    }
+  }
+}
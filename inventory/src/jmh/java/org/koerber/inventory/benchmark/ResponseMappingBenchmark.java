@@ -0,0 +1,87 @@
+package org.koerber.inventory.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.koerber.inventory.dto.BatchDTO;
+import org.koerber.inventory.dto.InventoryResponse;
+import org.koerber.inventory.enums.HandlerType;
+import org.koerber.inventory.enums.ProductCategory;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Cost of turning batches into the GET /inventory/{productCode} payload: entity to DTO mapping and
+ * JSON serialization with the same Jackson generation the web layer uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseMappingBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  private int batchCount;
+
+  @Param({"0.0", "0.2"})
+  private double nullDateRatio;
+
+  private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+  private List<InventoryBatch> batches;
+  private InventoryResponse response;
+
+  @Setup
+  public void setUp() {
+    Product product =
+        Product.builder()
+            .id(1L)
+            .productCode("PROD-001")
+            .name("Benchmark Product")
+            .category(ProductCategory.ELECTRONICS)
+            .minimumStock(50)
+            .handlerType(HandlerType.STANDARD)
+            .build();
+    batches = BatchFixtures.batches(product, batchCount, 0.0, nullDateRatio);
+    response =
+        InventoryResponse.builder()
+            .productId(product.getId())
+            .productCode(product.getProductCode())
+            .productName(product.getName())
+            .category(product.getCategory())
+            .totalQuantity(batches.stream().mapToInt(InventoryBatch::getQuantity).sum())
+            .availableQuantity(batches.stream().mapToInt(InventoryBatch::getQuantity).sum())
+            .handlerType(product.getHandlerType().name())
+            .batches(convertAll())
+            .minimumStock(product.getMinimumStock())
+            .lowStockWarning(false)
+            .message("Stock available")
+            .build();
+  }
+
+  @Benchmark
+  public List<BatchDTO> convertToBatchDTO() {
+    return convertAll();
+  }
+
+  @Benchmark
+  public byte[] serializeInventoryResponse() {
+    return jsonMapper.writeValueAsBytes(response);
+  }
+
+  private List<BatchDTO> convertAll() {
+    List<BatchDTO> dtos = new ArrayList<>(batches.size());
+    for (InventoryBatch batch : batches) {
+      dtos.add(BatchDTO.convertToBatchDTO(batch));
+    }
+    return dtos;
+  }
+}
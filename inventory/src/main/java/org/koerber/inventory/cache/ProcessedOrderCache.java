@@ -0,0 +1,270 @@
+package org.koerber.inventory.cache;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.model.ProcessedOrder;
+import org.koerber.inventory.repository.ProcessedOrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Responses of processed inventory updates by order ID. The {@code processed_orders} table is the
+ * record; the most recently used entries are also kept in memory, so a retry is usually answered
+ * without a query. Records are kept for {@code retention-days}, which bounds how late a retry may
+ * come. Cached responses are shared, so callers must only read them.
+ *
+ * <p>An order ID is recorded once, either for a single product update or for a multi-line batch
+ * update; recording it for the other kind fails on the unique order ID.
+ */
+@Component
+@Slf4j
+public class ProcessedOrderCache {
+
+  private final ProcessedOrderRepository processedOrderRepository;
+  private final JsonMapper jsonMapper;
+  private final int maxSize;
+  private final int retentionDays;
+
+  private final Map<String, Entry> entries;
+
+  public ProcessedOrderCache(
+      ProcessedOrderRepository processedOrderRepository,
+      JsonMapper jsonMapper,
+      @Value("${inventory.processed-orders.max-size:10000}") int maxSize,
+      @Value("${inventory.processed-orders.retention-days:7}") int retentionDays) {
+    this.processedOrderRepository = processedOrderRepository;
+    this.jsonMapper = jsonMapper;
+    this.maxSize = maxSize;
+    this.retentionDays = retentionDays;
+    // Access order makes the eldest entry the least recently used one
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > ProcessedOrderCache.this.maxSize;
+          }
+        };
+  }
+
+  /**
+   * Find the processed update of an order, loading it from the table on a miss
+   *
+   * @param orderId order ID
+   * @return processed update, if the order was processed by a single product update
+   */
+  public Optional<ProcessedUpdate> find(String orderId) {
+    return lookup(orderId)
+        .filter(ProcessedUpdate.class::isInstance)
+        .map(ProcessedUpdate.class::cast);
+  }
+
+  /**
+   * Find the processed batch update of an order, loading it from the table on a miss
+   *
+   * @param orderId order ID
+   * @return processed batch update, if the order was processed by a multi-line update
+   */
+  public Optional<ProcessedBatchUpdate> findBatch(String orderId) {
+    return lookup(orderId)
+        .filter(ProcessedBatchUpdate.class::isInstance)
+        .map(ProcessedBatchUpdate.class::cast);
+  }
+
+  /**
+   * Whether an order was processed by any inventory update
+   *
+   * @param orderId order ID
+   * @return true if a single product or batch update was recorded for it
+   */
+  public boolean contains(String orderId) {
+    return lookup(orderId).isPresent();
+  }
+
+  private Optional<Object> lookup(String orderId) {
+    synchronized (entries) {
+      Entry cached = entries.get(orderId);
+      if (cached != null) {
+        return Optional.of(cached.processed());
+      }
+    }
+    return processedOrderRepository
+        .findByOrderId(orderId)
+        .map(
+            order -> {
+              Object processed = toProcessed(order);
+              put(orderId, processed, order.getProcessedAt());
+              return processed;
+            });
+  }
+
+  /** A record without product code is a batch update, whose response holds all lines */
+  private Object toProcessed(ProcessedOrder order) {
+    if (order.getProductCode() == null) {
+      return new ProcessedBatchUpdate(
+          jsonMapper.readValue(order.getResponse(), BatchInventoryUpdateResponse.class));
+    }
+    return new ProcessedUpdate(
+        order.getProductCode(),
+        order.getQuantity(),
+        jsonMapper.readValue(order.getResponse(), InventoryUpdateResponse.class));
+  }
+
+  /**
+   * Record a processed update in the current transaction. It is cached once the transaction
+   * commits, so a rolled back update is never replayed.
+   *
+   * @param request processed request
+   * @param response response of the update
+   * @throws org.springframework.dao.DataIntegrityViolationException if the order was recorded by a
+   *     concurrent update
+   */
+  public void record(InventoryUpdateRequest request, InventoryUpdateResponse response) {
+    processedOrderRepository.saveAndFlush(toProcessedOrder(request, response));
+    cacheAfterCommit(Map.of(request, response));
+  }
+
+  /**
+   * Record several processed updates in the current transaction with one batched insert
+   *
+   * @param updates responses by processed request, each for a distinct order ID
+   * @throws org.springframework.dao.DataIntegrityViolationException if one of the orders was
+   *     recorded by a concurrent update
+   */
+  public void recordAll(Map<InventoryUpdateRequest, InventoryUpdateResponse> updates) {
+    processedOrderRepository.saveAllAndFlush(
+        updates.entrySet().stream()
+            .map(entry -> toProcessedOrder(entry.getKey(), entry.getValue()))
+            .toList());
+    cacheAfterCommit(updates);
+  }
+
+  /**
+   * Record a processed batch update in the current transaction, cached once it commits
+   *
+   * @param request processed batch request
+   * @param response response of the update
+   * @throws org.springframework.dao.DataIntegrityViolationException if the order was recorded by a
+   *     concurrent update
+   */
+  public void recordBatch(
+      BatchInventoryUpdateRequest request, BatchInventoryUpdateResponse response) {
+    processedOrderRepository.saveAndFlush(
+        ProcessedOrder.builder()
+            .orderId(request.getOrderId())
+            .quantity(
+                request.getLines().stream()
+                    .mapToInt(BatchInventoryUpdateRequest.Line::getQuantityToDeduct)
+                    .sum())
+            .response(jsonMapper.writeValueAsString(response))
+            .build());
+    afterCommit(() -> put(request.getOrderId(), new ProcessedBatchUpdate(response)));
+  }
+
+  private ProcessedOrder toProcessedOrder(
+      InventoryUpdateRequest request, InventoryUpdateResponse response) {
+    return ProcessedOrder.builder()
+        .orderId(request.getOrderId())
+        .productCode(request.getProductCode())
+        .quantity(request.getQuantityToDeduct())
+        .response(jsonMapper.writeValueAsString(response))
+        .build();
+  }
+
+  private void cacheAfterCommit(Map<InventoryUpdateRequest, InventoryUpdateResponse> updates) {
+    afterCommit(() -> updates.forEach(this::put));
+  }
+
+  private void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  /**
+   * Delete records older than the retention period, every night by default. Cached entries of the
+   * deleted records go too, so memory holds nothing the table no longer does.
+   */
+  @Scheduled(cron = "${inventory.processed-orders.purge-cron:0 30 0 * * *}")
+  @Transactional
+  public void purge() {
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+    int deleted = processedOrderRepository.deleteProcessedBefore(cutoff);
+    synchronized (entries) {
+      entries.values().removeIf(entry -> entry.processedAt().isBefore(cutoff));
+    }
+    if (deleted > 0) {
+      log.info("Purged {} processed orders older than {} days", deleted, retentionDays);
+    }
+  }
+
+  private void put(String orderId, Object processed) {
+    put(orderId, processed, LocalDateTime.now());
+  }
+
+  private void put(String orderId, Object processed, LocalDateTime processedAt) {
+    synchronized (entries) {
+      entries.put(orderId, new Entry(processed, processedAt));
+    }
+  }
+
+  private void put(InventoryUpdateRequest request, InventoryUpdateResponse response) {
+    put(
+        request.getOrderId(),
+        new ProcessedUpdate(request.getProductCode(), request.getQuantityToDeduct(), response));
+  }
+
+  /** A cached update with the time it was recorded, which the purge compares to its cutoff */
+  private record Entry(Object processed, LocalDateTime processedAt) {}
+
+  /** What an order was processed for, and the response it was answered with */
+  public record ProcessedUpdate(
+      String productCode, int quantity, InventoryUpdateResponse response) {
+
+    /** Whether a request asks for the same deduction */
+    public boolean matches(InventoryUpdateRequest request) {
+      return productCode.equals(request.getProductCode())
+          && quantity == request.getQuantityToDeduct();
+    }
+  }
+
+  /** The response a multi-line order was answered with, one line per request line */
+  public record ProcessedBatchUpdate(BatchInventoryUpdateResponse response) {
+
+    /** Whether a request asks for the same lines, in the same order */
+    public boolean matches(BatchInventoryUpdateRequest request) {
+      List<BatchInventoryUpdateRequest.Line> lines = request.getLines();
+      List<InventoryUpdateResponse> processed = response.getLines();
+      return lines.size() == processed.size()
+          && IntStream.range(0, lines.size())
+              .allMatch(
+                  i ->
+                      lines.get(i).getProductCode().equals(processed.get(i).getProductCode())
+                          && lines
+                              .get(i)
+                              .getQuantityToDeduct()
+                              .equals(processed.get(i).getQuantityDeducted()));
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package org.koerber.inventory.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of product metadata keyed by product code. Entries are evicted least
+ * recently used once the cache is full and expire after a fixed time to live. Every caller gets its
+ * own detached copy, so changing one does not change the cached product. Writes are picked up
+ * through {@link ProductCacheInvalidator}.
+ */
+@Component
+@Slf4j
+public class ProductCache {
+
+  private final ProductRepository productRepository;
+  private final int maxSize;
+  private final long ttlNanos;
+  private final boolean preload;
+  private final LongSupplier clock;
+
+  private final Map<String, Entry> entries;
+  // Product code of each cached product ID, guarded by the lock on entries
+  private final Map<Long, String> codesById = new HashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  @Autowired
+  public ProductCache(
+      ProductRepository productRepository,
+      @Value("${inventory.product-cache.max-size:10000}") int maxSize,
+      @Value("${inventory.product-cache.ttl-seconds:600}") long ttlSeconds,
+      @Value("${inventory.product-cache.preload:true}") boolean preload) {
+    this(productRepository, maxSize, ttlSeconds, preload, System::nanoTime);
+  }
+
+  ProductCache(
+      ProductRepository productRepository,
+      int maxSize,
+      long ttlSeconds,
+      boolean preload,
+      LongSupplier clock) {
+    this.productRepository = productRepository;
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.preload = preload;
+    this.clock = clock;
+    // Access order makes the eldest entry the least recently used one
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > ProductCache.this.maxSize) {
+              evictions.increment();
+              unindex(eldest.getKey(), eldest.getValue());
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /** Load the first {@code max-size} products so the first requests are served from memory */
+  @EventListener(ApplicationReadyEvent.class)
+  public void preload() {
+    if (!preload) {
+      return;
+    }
+    List<Product> products = productRepository.findAll(PageRequest.of(0, maxSize)).getContent();
+    products.forEach(this::put);
+    log.info("Product cache preloaded with {} products", products.size());
+  }
+
+  /**
+   * Find a product by code, loading it on a miss. Unknown codes are not cached.
+   *
+   * @param productCode product code
+   * @return product, if it exists
+   */
+  public Optional<Product> findByProductCode(String productCode) {
+    Product cached = get(productCode);
+    if (cached != null) {
+      return Optional.of(cached);
+    }
+    Optional<Product> product = productRepository.findByProductCode(productCode);
+    product.ifPresent(this::put);
+    return product;
+  }
+
+  /**
+   * Find products by code, loading all misses with one query. Unknown codes are omitted.
+   *
+   * @param productCodes product codes
+   * @return products found, in no particular order
+   */
+  public List<Product> findByProductCodeIn(Collection<String> productCodes) {
+    List<Product> products = new ArrayList<>(productCodes.size());
+    Set<String> missing = new LinkedHashSet<>();
+    for (String productCode : productCodes) {
+      Product cached = get(productCode);
+      if (cached != null) {
+        products.add(cached);
+      } else {
+        missing.add(productCode);
+      }
+    }
+    if (!missing.isEmpty()) {
+      for (Product product : productRepository.findByProductCodeIn(missing)) {
+        put(product);
+        products.add(product);
+      }
+    }
+    return products;
+  }
+
+  /**
+   * Drop a changed product. Entries are matched by ID too, so a renamed product code is dropped.
+   *
+   * @param product changed product
+   */
+  public void invalidate(Product product) {
+    synchronized (entries) {
+      remove(product.getProductCode());
+      if (product.getId() != null) {
+        remove(codesById.get(product.getId()));
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+      codesById.clear();
+    }
+  }
+
+  public CacheStats stats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+  }
+
+  private Product get(String productCode) {
+    synchronized (entries) {
+      Entry entry = entries.get(productCode);
+      if (entry != null && clock.getAsLong() - entry.expiresAt() >= 0) {
+        remove(productCode);
+        evictions.increment();
+        entry = null;
+      }
+      if (entry == null) {
+        misses.increment();
+        return null;
+      }
+      hits.increment();
+      return entry.product().toBuilder().build();
+    }
+  }
+
+  private void put(Product product) {
+    Entry entry = new Entry(product.toBuilder().build(), clock.getAsLong() + ttlNanos);
+    synchronized (entries) {
+      unindex(product.getProductCode(), entries.put(product.getProductCode(), entry));
+      if (product.getId() != null) {
+        // Drop the entry of a product code the product no longer has
+        String previousCode = codesById.put(product.getId(), product.getProductCode());
+        if (previousCode != null && !previousCode.equals(product.getProductCode())) {
+          entries.remove(previousCode);
+        }
+      }
+    }
+  }
+
+  /** Remove an entry and its ID; the caller holds the lock on entries */
+  private void remove(String productCode) {
+    if (productCode != null) {
+      unindex(productCode, entries.remove(productCode));
+    }
+  }
+
+  /** Remove the ID of a removed entry unless it now points to another code */
+  private void unindex(String productCode, Entry entry) {
+    if (entry != null && entry.product().getId() != null) {
+      codesById.remove(entry.product().getId(), productCode);
+    }
+  }
+
+  private record Entry(Product product, long expiresAt) {}
+
+  /** Cumulative counters since startup; expired entries count as evictions */
+  public record CacheStats(long hits, long misses, long evictions, int size) {}
+}
@@ -0,0 +1,46 @@
+package org.koerber.inventory.cache;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.koerber.inventory.model.Product;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that drops products from the {@link ProductCache} when they are written.
+ * The entry is dropped right away and again after the transaction completes, so a read racing the
+ * commit cannot leave the old state cached. The cache is resolved lazily because the listener is
+ * created while the entity manager factory, which the cache depends on, is still being built.
+ */
+@Component
+public class ProductCacheInvalidator {
+
+  private final ObjectProvider<ProductCache> productCache;
+
+  public ProductCacheInvalidator(ObjectProvider<ProductCache> productCache) {
+    this.productCache = productCache;
+  }
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  void onProductWritten(Product product) {
+    ProductCache cache = productCache.getIfAvailable();
+    if (cache == null) {
+      return;
+    }
+    cache.invalidate(product);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              cache.invalidate(product);
+            }
+          });
+    }
+  }
+}
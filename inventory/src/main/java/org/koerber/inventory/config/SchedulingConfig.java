@@ -0,0 +1,9 @@
+package org.koerber.inventory.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Enables scheduled background jobs such as the stock ledger write-behind. */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {}
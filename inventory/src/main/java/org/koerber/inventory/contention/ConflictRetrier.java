@@ -0,0 +1,123 @@
+package org.koerber.inventory.contention;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.exception.ConcurrentUpdateException;
+import org.koerber.inventory.exception.ProductNotFoundException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs stock updates again when they lose against a concurrent update of the same rows. Each
+ * attempt is a new transaction, so the handler selects batches again from fresh quantities.
+ * Attempts are spaced by a random delay of up to {@code base-backoff-ms}, doubling per attempt up
+ * to {@code max-backoff-ms}, so callers that collided do not collide again in step. Uncontended
+ * updates run once and never wait. Attempts and conflicts are counted per product in {@link
+ * ContentionStats}: every attempt of known products, including replays and updates rejected for
+ * insufficient stock.
+ */
+@Component
+@Slf4j
+public class ConflictRetrier {
+
+  private final ContentionStats contentionStats;
+  private final int maxAttempts;
+  private final long baseBackoffMillis;
+  private final long maxBackoffMillis;
+
+  public ConflictRetrier(
+      ContentionStats contentionStats,
+      @Value("${inventory.conflict-retry.max-attempts:4}") int maxAttempts,
+      @Value("${inventory.conflict-retry.base-backoff-ms:2}") long baseBackoffMillis,
+      @Value("${inventory.conflict-retry.max-backoff-ms:50}") long maxBackoffMillis) {
+    this.contentionStats = contentionStats;
+    this.maxAttempts = maxAttempts;
+    this.baseBackoffMillis = baseBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  /**
+   * Run an update of one product, retrying it on concurrent update conflicts
+   *
+   * @param productCode product the update writes
+   * @param update update to run, in its own transaction
+   * @return result of the first attempt that did not conflict
+   * @throws ConcurrentUpdateException if the last attempt conflicted too
+   */
+  public <T> T execute(String productCode, Supplier<T> update) {
+    return execute(List.of(productCode), update);
+  }
+
+  /**
+   * Run an update of several products, retrying it on concurrent update conflicts
+   *
+   * @param productCodes products the update writes
+   * @param update update to run, in its own transaction
+   * @return result of the first attempt that did not conflict
+   * @throws ConcurrentUpdateException if the last attempt conflicted too
+   */
+  public <T> T execute(Collection<String> productCodes, Supplier<T> update) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      // A conflict marks the surrounding transaction for rollback, only its owner can retry
+      return update.get();
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      ConcurrentUpdateException conflict;
+      try {
+        T result = update.get();
+        productCodes.forEach(contentionStats::recordAttempt);
+        return result;
+      } catch (ConcurrentUpdateException e) {
+        conflict = e;
+      } catch (OptimisticLockingFailureException e) {
+        conflict = new ConcurrentUpdateException(null, "A batch was modified concurrently");
+        conflict.initCause(e);
+      } catch (ProductNotFoundException e) {
+        // Unknown product codes get no counters
+        throw e;
+      } catch (RuntimeException e) {
+        productCodes.forEach(contentionStats::recordAttempt);
+        throw e;
+      }
+
+      boolean retry = attempt < maxAttempts;
+      recordConflict(productCodes, conflict, retry);
+      if (!retry || !backOff(attempt)) {
+        log.warn("Update of {} still conflicted after {} attempts", productCodes, attempt);
+        throw conflict;
+      }
+      log.debug("Update of {} conflicted on attempt {}, retrying", productCodes, attempt);
+    }
+  }
+
+  /** Count the conflict against the contended product if known, else against all of them */
+  private void recordConflict(
+      Collection<String> productCodes, ConcurrentUpdateException conflict, boolean retried) {
+    if (conflict.getProductCode() != null && productCodes.contains(conflict.getProductCode())) {
+      contentionStats.recordConflict(conflict.getProductCode(), retried);
+    } else {
+      productCodes.forEach(productCode -> contentionStats.recordConflict(productCode, retried));
+    }
+  }
+
+  /** Wait a random delay below the attempt's ceiling; false if interrupted */
+  private boolean backOff(int attempt) {
+    long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+    if (ceiling <= 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
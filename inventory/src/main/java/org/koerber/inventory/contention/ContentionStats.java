@@ -0,0 +1,61 @@
+package org.koerber.inventory.contention;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.koerber.inventory.dto.ContentionResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Update attempts and conflicts per product code, counted since startup by {@link
+ * ConflictRetrier}. Every attempt of a known product counts, whether it wrote, replayed an order
+ * already processed or was rejected, e.g. for insufficient stock. Updates of unknown product codes
+ * are not counted, so they never get an entry.
+ */
+@Component
+public class ContentionStats {
+
+  private final Map<String, Counters> countersByProduct = new ConcurrentHashMap<>();
+
+  void recordAttempt(String productCode) {
+    counters(productCode).attempts.increment();
+  }
+
+  void recordConflict(String productCode, boolean retried) {
+    Counters counters = counters(productCode);
+    counters.attempts.increment();
+    counters.conflicts.increment();
+    (retried ? counters.retries : counters.exhausted).increment();
+  }
+
+  /**
+   * Get the contention of a product
+   *
+   * @param productCode product code
+   * @return counters of the product, all zero if it was not updated since startup
+   */
+  public ContentionResponse get(String productCode) {
+    Counters counters = countersByProduct.get(productCode);
+    long attempts = counters != null ? counters.attempts.sum() : 0;
+    long conflicts = counters != null ? counters.conflicts.sum() : 0;
+    return ContentionResponse.builder()
+        .productCode(productCode)
+        .attempts(attempts)
+        .conflicts(conflicts)
+        .retries(counters != null ? counters.retries.sum() : 0)
+        .exhausted(counters != null ? counters.exhausted.sum() : 0)
+        .conflictRate(attempts > 0 ? (double) conflicts / attempts : 0.0)
+        .build();
+  }
+
+  private Counters counters(String productCode) {
+    return countersByProduct.computeIfAbsent(productCode, code -> new Counters());
+  }
+
+  private static final class Counters {
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+  }
+}
@@ -1,14 +1,36 @@
 package org.koerber.inventory.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.contention.ConflictRetrier;
+import org.koerber.inventory.contention.ContentionStats;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest.Line;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.BatchPageResponse;
+import org.koerber.inventory.dto.ContentionResponse;
+import org.koerber.inventory.dto.InventoryLookupRequest;
 import org.koerber.inventory.dto.InventoryResponse;
 import org.koerber.inventory.dto.InventoryUpdateRequest;
 import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.StockAsOfResponse;
+import org.koerber.inventory.dto.StockAvailabilityResponse;
+import org.koerber.inventory.mailbox.DeductionMailbox;
 import org.koerber.inventory.service.InventoryService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tools.jackson.databind.json.JsonMapper;
 
 /** REST Controller for inventory operations */
 @RestController
@@ -17,25 +39,151 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class InventoryController {
 
+  private static final String NDJSON = "application/x-ndjson";
+
   private final InventoryService inventoryService;
+  private final DeductionMailbox deductionMailbox;
+  private final ConflictRetrier conflictRetrier;
+  private final ContentionStats contentionStats;
+  private final JsonMapper jsonMapper;
 
   /**
    * GET /inventory/{productCode} Returns a list of inventory batches sorted by expiry date for a
-   * given product
+   * given product. Answers 304 Not Modified when If-None-Match carries the current stock version.
    */
   @GetMapping("/{productCode}")
-  public ResponseEntity<InventoryResponse> getInventory(@PathVariable String productCode) {
+  public ResponseEntity<InventoryResponse> getInventory(
+      @PathVariable String productCode, WebRequest webRequest) {
     log.info("Retrieving inventory for product ID/Code {}", productCode);
+    // Read before the batches, so a racing deduction at worst costs one more full response
+    String etag = inventoryService.getInventoryETag(productCode);
+    if (webRequest.checkNotModified(etag)) {
+      return null;
+    }
     InventoryResponse response = inventoryService.getInventoryByProduct(productCode);
-    return ResponseEntity.ok(response);
+    return ResponseEntity.ok().eTag(etag).body(response);
+  }
+
+  /**
+   * GET /inventory/{productCode}/availability Returns the available quantity from the product's
+   * stock counter, a primary key read whatever the batch count
+   */
+  @GetMapping("/{productCode}/availability")
+  public ResponseEntity<StockAvailabilityResponse> getAvailability(
+      @PathVariable String productCode) {
+    log.info("Retrieving availability for product {}", productCode);
+    return ResponseEntity.ok(inventoryService.getAvailability(productCode));
+  }
+
+  /**
+   * GET /inventory/{productCode}/as-of?time= Returns the product's batch quantities as they were at
+   * an ISO date-time, replayed from the nearest stock snapshot
+   */
+  @GetMapping("/{productCode}/as-of")
+  public ResponseEntity<StockAsOfResponse> getInventoryAsOf(
+      @PathVariable String productCode,
+      @RequestParam("time") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime time) {
+    log.info("Retrieving inventory for product {} as of {}", productCode, time);
+    return ResponseEntity.ok(inventoryService.getInventoryAsOf(productCode, time));
+  }
+
+  /**
+   * GET /inventory/{productCode}/contention Returns how often updates of the product conflicted
+   * with concurrent updates since startup, and how many were retried
+   */
+  @GetMapping("/{productCode}/contention")
+  public ResponseEntity<ContentionResponse> getContention(@PathVariable String productCode) {
+    return ResponseEntity.ok(contentionStats.get(productCode));
+  }
+
+  /**
+   * GET /inventory/{productCode}/batches?after=&limit= Returns one page of the product's batches in
+   * batch ID order; pass the returned nextAfter as after to fetch the next page
+   */
+  @GetMapping("/{productCode}/batches")
+  public ResponseEntity<BatchPageResponse> getBatches(
+      @PathVariable String productCode,
+      @RequestParam(required = false) Long after,
+      @RequestParam(defaultValue = "100") int limit) {
+    log.info("Retrieving batches for product {} after {}", productCode, after);
+    return ResponseEntity.ok(inventoryService.getBatchPage(productCode, after, limit));
+  }
+
+  /**
+   * GET /inventory/{productCode}/batches/stream Writes every batch of the product as one JSON
+   * document per line (NDJSON) while it is read from the database
+   */
+  @GetMapping("/{productCode}/batches/stream")
+  public void streamBatches(@PathVariable String productCode, HttpServletResponse response)
+      throws IOException {
+    log.info("Streaming batches for product {}", productCode);
+    // Resolves the product before the body starts, so an unknown code still gets a 404
+    String etag = inventoryService.getInventoryETag(productCode);
+
+    response.setContentType(NDJSON);
+    response.setHeader(HttpHeaders.ETAG, "\"" + etag + "\"");
+    OutputStream body = response.getOutputStream();
+    inventoryService.streamBatches(
+        productCode,
+        batch -> {
+          try {
+            body.write(jsonMapper.writeValueAsBytes(batch));
+            body.write('\n');
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+    body.flush();
+  }
+
+  /** GET /inventory?codes=... Returns inventory details for several products in one call */
+  @GetMapping(params = "codes")
+  public ResponseEntity<Map<String, InventoryResponse>> getInventories(
+      @RequestParam("codes") List<String> productCodes) {
+    log.info("Retrieving inventory for {} products", productCodes.size());
+    return ResponseEntity.ok(inventoryService.getInventoryByProducts(productCodes));
+  }
+
+  /** POST /inventory/lookup Same as the bulk GET, for code lists too long for a query string */
+  @PostMapping("/lookup")
+  public ResponseEntity<Map<String, InventoryResponse>> lookupInventories(
+      @Valid @RequestBody InventoryLookupRequest request) {
+    log.info("Retrieving inventory for {} products", request.getProductCodes().size());
+    return ResponseEntity.ok(inventoryService.getInventoryByProducts(request.getProductCodes()));
   }
 
-  /** POST /inventory/update Updates inventory after an order is placed */
+  /**
+   * POST /inventory/update Updates inventory after an order is placed. In mailbox mode the update
+   * is applied together with the other orders of the product queued at the same time. An update
+   * that lost against a concurrent one is run again after a short random delay.
+   */
   @PostMapping("/update")
   public ResponseEntity<InventoryUpdateResponse> updateInventory(
       @Valid @RequestBody InventoryUpdateRequest request) {
     log.info("Updating inventory for product ID/Code: {}", request.getProductCode());
-    InventoryUpdateResponse response = inventoryService.updateInventory(request);
+    InventoryUpdateResponse response =
+        conflictRetrier.execute(
+            request.getProductCode(),
+            () ->
+                deductionMailbox.isEnabled()
+                    ? deductionMailbox.deduct(request)
+                    : inventoryService.updateInventory(request));
+    return ResponseEntity.ok(response);
+  }
+
+  /** POST /inventory/update/batch Updates inventory for all lines of an order at once */
+  @PostMapping("/update/batch")
+  public ResponseEntity<BatchInventoryUpdateResponse> updateInventoryBatch(
+      @Valid @RequestBody BatchInventoryUpdateRequest request) {
+    log.info(
+        "Updating inventory for order {} with {} lines",
+        request.getOrderId(),
+        request.getLines().size());
+    BatchInventoryUpdateResponse response =
+        conflictRetrier.execute(
+            request.getLines().stream().map(Line::getProductCode).distinct().toList(),
+            () -> inventoryService.updateInventoryBatch(request));
     return ResponseEntity.ok(response);
   }
 }
@@ -0,0 +1,54 @@
+package org.koerber.inventory.controller;
+
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.contention.ConflictRetrier;
+import org.koerber.inventory.dto.ReservationRequest;
+import org.koerber.inventory.dto.ReservationResponse;
+import org.koerber.inventory.service.ReservationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/** REST Controller for two-phase stock reservations */
+@RestController
+@RequestMapping("/inventory/reservations")
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationController {
+
+  private final ReservationService reservationService;
+  private final ConflictRetrier conflictRetrier;
+
+  /**
+   * POST /inventory/reservations Holds stock for an order until it is committed, released or the
+   * reservation expires
+   */
+  @PostMapping
+  public ResponseEntity<ReservationResponse> reserve(
+      @Valid @RequestBody ReservationRequest request) {
+    log.info(
+        "Reserving stock of product {} for order {}",
+        request.getProductCode(),
+        request.getOrderId());
+    ReservationResponse response =
+        conflictRetrier.execute(
+            request.getProductCode(), () -> reservationService.reserve(request));
+    return ResponseEntity.status(HttpStatus.CREATED).body(response);
+  }
+
+  /** POST /inventory/reservations/{reservationId}/commit Makes a held reservation final */
+  @PostMapping("/{reservationId}/commit")
+  public ResponseEntity<ReservationResponse> commit(@PathVariable String reservationId) {
+    log.info("Committing reservation {}", reservationId);
+    return ResponseEntity.ok(reservationService.commit(reservationId));
+  }
+
+  /** POST /inventory/reservations/{reservationId}/release Gives the held stock back */
+  @PostMapping("/{reservationId}/release")
+  public ResponseEntity<ReservationResponse> release(@PathVariable String reservationId) {
+    log.info("Releasing reservation {}", reservationId);
+    return ResponseEntity.ok(reservationService.release(reservationId));
+  }
+}
@@ -0,0 +1,41 @@
+package org.koerber.inventory.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Request DTO for deducting several order lines in one call */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchInventoryUpdateRequest {
+
+  @NotBlank(message = "Order ID is required")
+  private String orderId;
+
+  @NotEmpty(message = "At least one line is required")
+  private List<@Valid Line> lines;
+
+  /** Inner class representing one order line */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class Line {
+
+    @NotBlank(message = "productCode is required")
+    private String productCode;
+
+    @NotNull(message = "Quantity to deduct is required")
+    @Min(value = 1, message = "Quantity must be at least 1")
+    private Integer quantityToDeduct;
+  }
+}
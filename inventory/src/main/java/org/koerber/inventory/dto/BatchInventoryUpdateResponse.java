@@ -0,0 +1,27 @@
+package org.koerber.inventory.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for multi-line inventory update operations */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchInventoryUpdateResponse {
+
+  private Boolean success;
+
+  private String message;
+
+  private String orderId;
+
+  /** One result per request line, in request order */
+  private List<InventoryUpdateResponse> lines;
+
+  private LocalDateTime timestamp;
+}
@@ -0,0 +1,24 @@
+package org.koerber.inventory.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for one page of a product's batches, ordered by batch ID */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchPageResponse {
+
+  private String productCode;
+
+  private List<BatchDTO> batches;
+
+  private Integer limit;
+
+  /** Value for {@code after} to fetch the next page, null on the last page */
+  private Long nextAfter;
+}
@@ -0,0 +1,31 @@
+package org.koerber.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for a product's update contention since startup */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentionResponse {
+
+  private String productCode;
+
+  /** Update attempts, including retries, replayed orders and updates rejected for stock */
+  private Long attempts;
+
+  /** Attempts that lost against a concurrent update */
+  private Long conflicts;
+
+  /** Conflicts that were retried */
+  private Long retries;
+
+  /** Updates that still conflicted on their last attempt and were answered with 409 */
+  private Long exhausted;
+
+  /** Share of attempts that conflicted, between 0 and 1 */
+  private Double conflictRate;
+}
@@ -0,0 +1,19 @@
+package org.koerber.inventory.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Request DTO for bulk inventory lookups */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryLookupRequest {
+
+  @NotEmpty(message = "productCodes must not be empty")
+  private List<String> productCodes;
+}
@@ -24,6 +24,10 @@ public class InventoryUpdateResponse {
 
   private Integer quantityDeducted;
 
+  /**
+   * Available quantity of the product right after this update: its stock counter as written, or
+   * the ledger's quantity in ledger mode
+   */
   private Integer remainingQuantity;
 
   private List<BatchDeduction> batchDeductions;
@@ -0,0 +1,31 @@
+package org.koerber.inventory.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Request DTO for reserving stock of a product for an order */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationRequest {
+
+  @NotBlank(message = "productCode is required")
+  private String productCode;
+
+  @NotNull(message = "Quantity to reserve is required")
+  @Min(value = 1, message = "Quantity must be at least 1")
+  private Integer quantity;
+
+  @NotBlank(message = "Order ID is required")
+  private String orderId;
+
+  /** Seconds until the reservation expires unless committed, the service default when null */
+  @Min(value = 1, message = "ttlSeconds must be at least 1")
+  private Integer ttlSeconds;
+}
@@ -0,0 +1,44 @@
+package org.koerber.inventory.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for stock reservation operations */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationResponse {
+
+  private String reservationId;
+
+  private String orderId;
+
+  private String productCode;
+
+  private Integer quantity;
+
+  private String status;
+
+  private LocalDateTime expiresAt;
+
+  /** Available quantity left after the reservation, only set when reserving */
+  private Integer remainingQuantity;
+
+  private List<ReservedBatch> batches;
+
+  /** Inner class representing the quantity held on one batch */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class ReservedBatch {
+    private Long batchId;
+    private String batchNumber;
+    private Integer quantity;
+  }
+}
@@ -0,0 +1,38 @@
+package org.koerber.inventory.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for a product's stock at a point in time, replayed from stock movements */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockAsOfResponse {
+
+  private String productCode;
+
+  private LocalDateTime asOf;
+
+  /** Time of the snapshot the replay started from, null when replayed from the first movement */
+  private LocalDateTime snapshotAsOf;
+
+  private Integer totalQuantity;
+
+  private List<BatchQuantity> batches;
+
+  /** Inner class representing a batch's quantity at that time */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class BatchQuantity {
+    private Long batchId;
+    private String batchNumber;
+    private Integer quantity;
+  }
+}
@@ -0,0 +1,24 @@
+package org.koerber.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for availability checks, served from the product's stock counter */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockAvailabilityResponse {
+
+  private String productCode;
+
+  private Integer availableQuantity;
+
+  private Integer minimumStock;
+
+  private Boolean lowStockWarning;
+
+  private Long stockVersion;
+}
@@ -0,0 +1,9 @@
+package org.koerber.inventory.enums;
+
+/**
+ * Enumeration for how a product's deductions claim batches when orders for it run concurrently.
+ */
+public enum AllocationPolicy {
+  STRICT, // Every order takes batches in handler order, waiting for batches other orders hold
+  SKIP_LOCKED, // Orders skip batches other orders hold and select among the ones they could lock
+}
@@ -7,4 +7,5 @@ package org.koerber.inventory.enums;
 public enum HandlerType {
   STANDARD,
   FIFO, // First In, First Out
+  FEWEST_BATCHES, // Fewest batches covering the order, soonest expiring among them
 }
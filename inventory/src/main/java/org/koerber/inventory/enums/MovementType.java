@@ -0,0 +1,12 @@
+package org.koerber.inventory.enums;
+
+/**
+ * Kind of a stock movement. EXPIRED records a batch leaving the available stock; its quantity stays
+ * on hand, so the movement does not change it.
+ */
+public enum MovementType {
+  RECEIVED,
+  DEDUCTED,
+  EXPIRED,
+  ADJUSTED
+}
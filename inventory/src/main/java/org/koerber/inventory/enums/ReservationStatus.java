@@ -0,0 +1,9 @@
+package org.koerber.inventory.enums;
+
+/** Lifecycle of a stock reservation. Only HELD reservations still hold batch quantities. */
+public enum ReservationStatus {
+  HELD,
+  COMMITTED,
+  RELEASED,
+  EXPIRED
+}
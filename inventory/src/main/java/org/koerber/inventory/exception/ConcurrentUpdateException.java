@@ -0,0 +1,20 @@
+package org.koerber.inventory.exception;
+
+/**
+ * Stock conflict caused by a concurrent update of the same rows. Unlike other conflicts it is
+ * transient: running the update again, with a fresh batch selection, can succeed.
+ */
+public class ConcurrentUpdateException extends StockConflictException {
+
+  private final String productCode;
+
+  public ConcurrentUpdateException(String productCode, String message) {
+    super(message);
+    this.productCode = productCode;
+  }
+
+  /** Product whose rows were contended, null when not known */
+  public String getProductCode() {
+    return productCode;
+  }
+}
@@ -33,6 +33,21 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
   }
 
+  @ExceptionHandler(ReservationNotFoundException.class)
+  public ResponseEntity<ErrorResponse> handleReservationNotFound(
+      ReservationNotFoundException ex, WebRequest request) {
+
+    ErrorResponse error =
+        new ErrorResponse(
+            LocalDateTime.now(),
+            HttpStatus.NOT_FOUND.value(),
+            "Reservation Not Found",
+            ex.getMessage(),
+            request.getDescription(false).replace("uri=", ""));
+
+    return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+  }
+
   @ExceptionHandler(InsufficientStockException.class)
   public ResponseEntity<ErrorResponse> handleInsufficientStock(
       InsufficientStockException ex, WebRequest request) {
@@ -48,6 +63,21 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
   }
 
+  @ExceptionHandler(StockConflictException.class)
+  public ResponseEntity<ErrorResponse> handleStockConflict(
+      StockConflictException ex, WebRequest request) {
+
+    ErrorResponse error =
+        new ErrorResponse(
+            LocalDateTime.now(),
+            HttpStatus.CONFLICT.value(),
+            "Stock Conflict",
+            ex.getMessage(),
+            request.getDescription(false).replace("uri=", ""));
+
+    return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+  }
+
   @ExceptionHandler(IllegalArgumentException.class)
   public ResponseEntity<ErrorResponse> handleIllegalArgument(
       IllegalArgumentException ex, WebRequest request) {
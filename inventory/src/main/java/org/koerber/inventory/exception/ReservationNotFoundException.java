@@ -0,0 +1,8 @@
+package org.koerber.inventory.exception;
+
+/** Exception thrown when a requested stock reservation is not found. */
+public class ReservationNotFoundException extends RuntimeException {
+  public ReservationNotFoundException(String message) {
+    super(message);
+  }
+}
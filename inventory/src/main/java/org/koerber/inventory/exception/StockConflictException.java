@@ -0,0 +1,11 @@
+package org.koerber.inventory.exception;
+
+/**
+ * Exception thrown when an update conflicts with the current state, e.g. an order already processed
+ * with other values. See {@link ConcurrentUpdateException} for conflicts that a retry can resolve.
+ */
+public class StockConflictException extends RuntimeException {
+  public StockConflictException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,152 @@
+package org.koerber.inventory.handler;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.model.InventoryBatch;
+
+/**
+ * Read-only columnar copy of a product's batches for handler evaluation. Each attribute the
+ * handlers look at is stored in its own primitive array, so filtering, sorting and selection work
+ * on positions without unboxing quantities or comparing {@link LocalDate} objects. Position {@code
+ * i} in every column refers to {@link #batch(int)}.
+ */
+public final class BatchSnapshot {
+
+  /** Epoch day used for a missing date; sorts last and never expires */
+  public static final int NO_DATE = Integer.MAX_VALUE;
+
+  /** Timestamp used for a missing creation time; sorts last */
+  public static final long NO_TIMESTAMP = Long.MAX_VALUE;
+
+  /** Unsaved batches get distinct negative ids below this value */
+  private static final long UNSAVED = -1L;
+
+  private static final byte ACTIVE = (byte) BatchStatus.ACTIVE.ordinal();
+
+  private final List<InventoryBatch> batches;
+  private final long[] batchIds;
+  private final int[] quantities;
+  private final int[] expiryEpochDays;
+  private final int[] manufacturingEpochDays;
+  private final long[] createdAtNanos;
+  private final byte[] statuses;
+
+  private BatchSnapshot(List<InventoryBatch> batches) {
+    int size = batches.size();
+    this.batches = batches;
+    this.batchIds = new long[size];
+    this.quantities = new int[size];
+    this.expiryEpochDays = new int[size];
+    this.manufacturingEpochDays = new int[size];
+    this.createdAtNanos = new long[size];
+    this.statuses = new byte[size];
+
+    for (int i = 0; i < size; i++) {
+      InventoryBatch batch = batches.get(i);
+      batchIds[i] = batch.getId() != null ? batch.getId() : UNSAVED - i;
+      quantities[i] = batch.getQuantity();
+      expiryEpochDays[i] = toEpochDay(batch.getExpiryDate());
+      manufacturingEpochDays[i] = toEpochDay(batch.getManufacturingDate());
+      createdAtNanos[i] = toEpochNanos(batch.getCreatedAt());
+      statuses[i] = batch.getStatus() != null ? (byte) batch.getStatus().ordinal() : -1;
+    }
+  }
+
+  private BatchSnapshot(BatchSnapshot snapshot, int[] quantities) {
+    this.batches = snapshot.batches;
+    this.batchIds = snapshot.batchIds;
+    this.quantities = quantities;
+    this.expiryEpochDays = snapshot.expiryEpochDays;
+    this.manufacturingEpochDays = snapshot.manufacturingEpochDays;
+    this.createdAtNanos = snapshot.createdAtNanos;
+    this.statuses = snapshot.statuses;
+  }
+
+  /**
+   * Take a snapshot of batches
+   *
+   * @param batches batches to copy; kept by reference to map positions back to entities
+   * @return snapshot
+   */
+  public static BatchSnapshot of(List<InventoryBatch> batches) {
+    return new BatchSnapshot(batches);
+  }
+
+  /**
+   * Same batches with other quantities, e.g. the live ones of the stock ledger. Batch entities
+   * still carry the quantities they were loaded with.
+   *
+   * @param quantities quantity per position, not copied
+   * @return snapshot sharing every other column with this one
+   */
+  public BatchSnapshot withQuantities(int[] quantities) {
+    if (quantities.length != size()) {
+      throw new IllegalArgumentException(
+          "Expected " + size() + " quantities, got " + quantities.length);
+    }
+    return new BatchSnapshot(this, quantities);
+  }
+
+  /**
+   * Current date in the representation used by the snapshot, resolve it once per request
+   *
+   * @return today as epoch day
+   */
+  public static int today() {
+    return (int) LocalDate.now().toEpochDay();
+  }
+
+  public int size() {
+    return batchIds.length;
+  }
+
+  public InventoryBatch batch(int position) {
+    return batches.get(position);
+  }
+
+  public long batchId(int position) {
+    return batchIds[position];
+  }
+
+  public int quantity(int position) {
+    return quantities[position];
+  }
+
+  public int expiryEpochDay(int position) {
+    return expiryEpochDays[position];
+  }
+
+  public int manufacturingEpochDay(int position) {
+    return manufacturingEpochDays[position];
+  }
+
+  public long createdAtNanos(int position) {
+    return createdAtNanos[position];
+  }
+
+  public boolean isActive(int position) {
+    return statuses[position] == ACTIVE;
+  }
+
+  public boolean isExpired(int position, int todayEpochDay) {
+    return expiryEpochDays[position] < todayEpochDay;
+  }
+
+  /** Same rule as {@link InventoryBatch#isAvailable()}, with today resolved by the caller */
+  public boolean isAvailable(int position, int todayEpochDay) {
+    return isActive(position) && quantities[position] > 0 && !isExpired(position, todayEpochDay);
+  }
+
+  private static int toEpochDay(LocalDate date) {
+    return date != null ? (int) date.toEpochDay() : NO_DATE;
+  }
+
+  private static long toEpochNanos(LocalDateTime timestamp) {
+    return timestamp != null
+        ? timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano()
+        : NO_TIMESTAMP;
+  }
+}
@@ -1,38 +1,26 @@
 package org.koerber.inventory.handler;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import org.koerber.inventory.enums.BatchStatus;
 import org.koerber.inventory.model.InventoryBatch;
 import org.springframework.stereotype.Component;
 
 /**
  * FIFO (First In, First Out) inventory handler. Sorts batches by manufacturing date (oldest first).
- * Strategy: Use the oldest inventory first, regardless of expiry date.
+ * Strategy: Use the oldest inventory first, regardless of expiry date. Expired batches are still
+ * never used, since availability queries leave them in until the expiry sweep has run.
  */
 @Component
 @Slf4j
-public class FIFOInventoryHandler implements InventoryHandler {
+public class FIFOInventoryHandler extends IndexedInventoryHandler {
 
   public static final String TYPE = "FIFO";
 
   @Override
   public List<InventoryBatch> sortAndFilterBatches(List<InventoryBatch> batches) {
     log.debug("FIFOHandler: Sorting {} batches by manufacturing/creation date", batches.size());
-
-    return batches.stream()
-        .filter(batch -> BatchStatus.ACTIVE.equals(batch.getStatus()))
-        .filter(batch -> batch.getQuantity() > 0)
-        .sorted(
-            Comparator.comparing(
-                    InventoryBatch::getManufacturingDate,
-                    Comparator.nullsLast(Comparator.naturalOrder()))
-                .thenComparing(
-                    InventoryBatch::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder())))
-        .collect(Collectors.toList());
+    return sortedView(batches);
   }
 
   @Override
@@ -62,6 +50,21 @@ public class FIFOInventoryHandler implements InventoryHandler {
     return selectedBatches;
   }
 
+  @Override
+  protected int primarySortKey(BatchSnapshot snapshot, int position) {
+    return snapshot.manufacturingEpochDay(position);
+  }
+
+  @Override
+  protected long secondarySortKey(BatchSnapshot snapshot, int position) {
+    return snapshot.createdAtNanos(position);
+  }
+
+  @Override
+  protected boolean isEligible(BatchSnapshot snapshot, int position, int todayEpochDay) {
+    return snapshot.isAvailable(position, todayEpochDay);
+  }
+
   @Override
   public String getType() {
     return TYPE;
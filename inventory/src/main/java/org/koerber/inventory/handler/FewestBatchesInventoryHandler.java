@@ -0,0 +1,143 @@
+package org.koerber.inventory.handler;
+
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.model.InventoryBatch;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fewest-batches inventory handler for bulk orders. Selects the smallest number of batches that
+ * covers the quantity, so a large order writes a few rows instead of one per small batch. Among
+ * selections of that size it takes the batches expiring soonest, and it never uses expired
+ * batches. Batches are sorted by expiry date like the standard handler; the selection is not a
+ * prefix of that order, so the ledger asks for it on every deduction.
+ */
+@Component
+@Slf4j
+public class FewestBatchesInventoryHandler extends IndexedInventoryHandler {
+
+  public static final String TYPE = "FEWEST_BATCHES";
+
+  @Override
+  public List<InventoryBatch> sortAndFilterBatches(List<InventoryBatch> batches) {
+    log.debug("FewestBatchesHandler: Sorting {} batches by expiry date", batches.size());
+    return sortedView(batches);
+  }
+
+  @Override
+  public boolean selectsPrefix() {
+    return false;
+  }
+
+  @Override
+  public List<InventoryBatch> selectBatchesForDeduction(
+      List<InventoryBatch> batches, Integer requiredQuantity) {
+    log.debug("FewestBatchesHandler: Selecting batches for quantity {}", requiredQuantity);
+    return selectTopBatchesForDeduction(batches, requiredQuantity);
+  }
+
+  /**
+   * The k largest batches cover the most a selection of k batches can, so the fewest batches needed
+   * is the shortest prefix of the batches by descending quantity that covers the quantity. Walking
+   * the batches in expiry order, a batch is then taken whenever the remaining slots can still cover
+   * the rest with the largest batches expiring after it. A Fenwick tree over quantity ranks answers
+   * that check in O(log n), so selection stays O(n log n) whatever the order size.
+   */
+  @Override
+  public int selectForDeduction(
+      BatchSnapshot snapshot, int todayEpochDay, int requiredQuantity, int[] selected) {
+    int count = sortAndFilter(snapshot, todayEpochDay, selected);
+
+    // Ranks by quantity, largest first and sooner expiry on ties
+    long[] keys = new long[count];
+    for (int k = 0; k < count; k++) {
+      keys[k] = ((long) (Integer.MAX_VALUE - snapshot.quantity(selected[k])) << 32) | k;
+    }
+    Arrays.sort(keys);
+
+    int[] ranks = new int[count];
+    int slots = 0;
+    long covered = 0;
+    for (int rank = 0; rank < count; rank++) {
+      int k = (int) keys[rank];
+      ranks[k] = rank;
+      if (covered < requiredQuantity) {
+        covered += snapshot.quantity(selected[k]);
+        slots++;
+      }
+    }
+    if (covered < requiredQuantity) {
+      // Not enough stock: everything eligible, as the other handlers do
+      return count;
+    }
+
+    // Batches not yet walked past, per quantity rank
+    int[] batchCounts = new int[count + 1];
+    long[] quantitySums = new long[count + 1];
+    for (int k = 0; k < count; k++) {
+      add(batchCounts, quantitySums, ranks[k], 1, snapshot.quantity(selected[k]));
+    }
+
+    int taken = 0;
+    long remainingQuantity = requiredQuantity;
+    for (int k = 0; k < count && remainingQuantity > 0; k++) {
+      int position = selected[k];
+      int quantity = snapshot.quantity(position);
+      add(batchCounts, quantitySums, ranks[k], -1, -quantity);
+      if (quantity > 0
+          && (quantity >= remainingQuantity
+              || largestSum(batchCounts, quantitySums, slots - 1)
+                  >= remainingQuantity - quantity)) {
+        // Taken positions are packed in front of the ones still to walk
+        selected[taken++] = position;
+        remainingQuantity -= quantity;
+        slots--;
+      }
+    }
+    return taken;
+  }
+
+  @Override
+  protected int primarySortKey(BatchSnapshot snapshot, int position) {
+    return snapshot.expiryEpochDay(position);
+  }
+
+  @Override
+  protected long secondarySortKey(BatchSnapshot snapshot, int position) {
+    return 0L;
+  }
+
+  @Override
+  protected boolean isEligible(BatchSnapshot snapshot, int position, int todayEpochDay) {
+    return snapshot.isAvailable(position, todayEpochDay);
+  }
+
+  @Override
+  public String getType() {
+    return TYPE;
+  }
+
+  private static void add(int[] batchCounts, long[] quantitySums, int rank, int count, long sum) {
+    for (int i = rank + 1; i < batchCounts.length; i += i & -i) {
+      batchCounts[i] += count;
+      quantitySums[i] += sum;
+    }
+  }
+
+  /** Total quantity of the {@code batches} largest batches left, or of all if fewer are left */
+  private static long largestSum(int[] batchCounts, long[] quantitySums, int batches) {
+    int index = 0;
+    long sum = 0;
+    int remaining = batches;
+    for (int step = Integer.highestOneBit(batchCounts.length); step > 0; step >>= 1) {
+      int next = index + step;
+      if (next < batchCounts.length && batchCounts[next] <= remaining) {
+        index = next;
+        remaining -= batchCounts[next];
+        sum += quantitySums[next];
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,191 @@
+package org.koerber.inventory.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.koerber.inventory.model.InventoryBatch;
+
+/**
+ * Base class for handlers whose order is defined by two primitive sort keys over a {@link
+ * BatchSnapshot}. Filtering, sorting and selection run on snapshot positions without boxing.
+ */
+public abstract class IndexedInventoryHandler implements InventoryHandler {
+
+  private static final ThreadLocal<long[]> SORT_KEYS = ThreadLocal.withInitial(() -> new long[64]);
+
+  private static final ThreadLocal<long[]> SECONDARY_KEYS =
+      ThreadLocal.withInitial(() -> new long[64]);
+
+  /** Primary sort key of the batch at a position, lower values are used first */
+  protected abstract int primarySortKey(BatchSnapshot snapshot, int position);
+
+  /** Secondary sort key of the batch at a position, used when primary keys are equal */
+  protected abstract long secondarySortKey(BatchSnapshot snapshot, int position);
+
+  /** Whether the batch at a position may be used for deduction by this handler */
+  protected abstract boolean isEligible(BatchSnapshot snapshot, int position, int todayEpochDay);
+
+  @Override
+  public int sortAndFilter(BatchSnapshot snapshot, int todayEpochDay, int[] order) {
+    long[] keys = sortKeys(SORT_KEYS, snapshot.size());
+    long[] secondaryKeys = sortKeys(SECONDARY_KEYS, snapshot.size());
+
+    int count = 0;
+    long lowestSecondary = Long.MAX_VALUE;
+    long highestSecondary = Long.MIN_VALUE;
+    for (int i = 0; i < snapshot.size(); i++) {
+      if (isEligible(snapshot, i, todayEpochDay)) {
+        long secondaryKey = secondarySortKey(snapshot, i);
+        lowestSecondary = Math.min(lowestSecondary, secondaryKey);
+        highestSecondary = Math.max(highestSecondary, secondaryKey);
+        secondaryKeys[count] = secondaryKey;
+        order[count++] = i;
+      }
+    }
+
+    if (lowestSecondary == highestSecondary) {
+      // Primary key in the high half, position in the low half: one primitive sort
+      for (int k = 0; k < count; k++) {
+        keys[k] = ((long) primarySortKey(snapshot, order[k]) << 32) | order[k];
+      }
+      Arrays.sort(keys, 0, count);
+      for (int k = 0; k < count; k++) {
+        order[k] = (int) keys[k];
+      }
+      return count;
+    }
+
+    // Secondary keys take 64 bits, so (secondary key, position) is ranked first and the composite
+    // (primary key, that rank) then fits one long: primitive sorts only, O(n log n) however many
+    // batches share a primary key
+    Arrays.sort(secondaryKeys, 0, count);
+    int distinct = 0;
+    for (int k = 0; k < count; k++) {
+      if (distinct == 0 || secondaryKeys[k] != secondaryKeys[distinct - 1]) {
+        secondaryKeys[distinct++] = secondaryKeys[k];
+      }
+    }
+    for (int k = 0; k < count; k++) {
+      long secondaryRank =
+          Arrays.binarySearch(secondaryKeys, 0, distinct, secondarySortKey(snapshot, order[k]));
+      keys[k] = (secondaryRank << 32) | order[k];
+    }
+    Arrays.sort(keys, 0, count);
+
+    // Positions by tie rank, kept in the secondary key buffer which is no longer needed
+    for (int rank = 0; rank < count; rank++) {
+      int position = (int) keys[rank];
+      secondaryKeys[rank] = position;
+      keys[rank] = ((long) primarySortKey(snapshot, position) << 32) | rank;
+    }
+    Arrays.sort(keys, 0, count);
+    for (int k = 0; k < count; k++) {
+      order[k] = (int) secondaryKeys[(int) keys[k]];
+    }
+    return count;
+  }
+
+  @Override
+  public int selectForDeduction(
+      BatchSnapshot snapshot, int todayEpochDay, int requiredQuantity, int[] selected) {
+    int size = 0;
+    for (int i = 0; i < snapshot.size(); i++) {
+      if (isEligible(snapshot, i, todayEpochDay)) {
+        selected[size++] = i;
+      }
+    }
+    int eligible = size;
+
+    // Heapify in place, then pop until the quantity is covered: O(n + k log n)
+    for (int i = (size >>> 1) - 1; i >= 0; i--) {
+      siftDown(snapshot, selected, i, size);
+    }
+
+    int remainingQuantity = requiredQuantity;
+    while (remainingQuantity > 0 && size > 0) {
+      int head = selected[0];
+      size--;
+      selected[0] = selected[size];
+      siftDown(snapshot, selected, 0, size);
+      // Popped positions collect behind the shrinking heap, highest priority last
+      selected[size] = head;
+      remainingQuantity -= snapshot.quantity(head);
+    }
+
+    int taken = eligible - size;
+    for (int left = size, right = eligible - 1; left < right; left++, right--) {
+      int swap = selected[left];
+      selected[left] = selected[right];
+      selected[right] = swap;
+    }
+    System.arraycopy(selected, size, selected, 0, taken);
+    return taken;
+  }
+
+  @Override
+  public List<InventoryBatch> selectTopBatchesForDeduction(
+      List<InventoryBatch> batches, Integer requiredQuantity) {
+    BatchSnapshot snapshot = BatchSnapshot.of(batches);
+    int[] selected = new int[snapshot.size()];
+    int count = selectForDeduction(snapshot, BatchSnapshot.today(), requiredQuantity, selected);
+    return toBatches(snapshot, selected, count);
+  }
+
+  /** Full sorted and filtered view of batches, evaluated over a snapshot */
+  protected List<InventoryBatch> sortedView(List<InventoryBatch> batches) {
+    BatchSnapshot snapshot = BatchSnapshot.of(batches);
+    int[] order = new int[snapshot.size()];
+    int count = sortAndFilter(snapshot, BatchSnapshot.today(), order);
+    return toBatches(snapshot, order, count);
+  }
+
+  private void siftDown(BatchSnapshot snapshot, int[] heap, int index, int size) {
+    int position = heap[index];
+    int half = size >>> 1;
+    while (index < half) {
+      int child = (index << 1) + 1;
+      int right = child + 1;
+      if (right < size && less(snapshot, heap[right], heap[child])) {
+        child = right;
+      }
+      if (!less(snapshot, heap[child], position)) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = position;
+  }
+
+  private boolean less(BatchSnapshot snapshot, int left, int right) {
+    int leftPrimary = primarySortKey(snapshot, left);
+    int rightPrimary = primarySortKey(snapshot, right);
+    if (leftPrimary != rightPrimary) {
+      return leftPrimary < rightPrimary;
+    }
+    long leftSecondary = secondarySortKey(snapshot, left);
+    long rightSecondary = secondarySortKey(snapshot, right);
+    if (leftSecondary != rightSecondary) {
+      return leftSecondary < rightSecondary;
+    }
+    return left < right;
+  }
+
+  private static long[] sortKeys(ThreadLocal<long[]> buffer, int size) {
+    long[] keys = buffer.get();
+    if (keys.length < size) {
+      keys = new long[Math.max(size, keys.length * 2)];
+      buffer.set(keys);
+    }
+    return keys;
+  }
+
+  private static List<InventoryBatch> toBatches(
+      BatchSnapshot snapshot, int[] positions, int count) {
+    List<InventoryBatch> batches = new ArrayList<>(count);
+    for (int k = 0; k < count; k++) {
+      batches.add(snapshot.batch(positions[k]));
+    }
+    return batches;
+  }
+}
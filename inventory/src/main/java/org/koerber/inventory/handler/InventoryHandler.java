@@ -1,6 +1,9 @@
 package org.koerber.inventory.handler;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import org.koerber.inventory.model.InventoryBatch;
 
 /**
@@ -27,6 +30,74 @@ public interface InventoryHandler {
   List<InventoryBatch> selectBatchesForDeduction(
       List<InventoryBatch> batches, Integer requiredQuantity);
 
+  /**
+   * Select batches to fulfill the required quantity straight from unsorted batches. Batches are
+   * produced lazily in the handler's priority order and selection stops as soon as the quantity is
+   * covered, so only the full sorted view ({@link #sortAndFilterBatches(List)}) pays for a sort.
+   *
+   * @param batches unsorted batches
+   * @param requiredQuantity quantity needed
+   * @return list of batches to use for deduction, in priority order
+   */
+  default List<InventoryBatch> selectTopBatchesForDeduction(
+      List<InventoryBatch> batches, Integer requiredQuantity) {
+    return selectBatchesForDeduction(sortAndFilterBatches(batches), requiredQuantity);
+  }
+
+  /**
+   * Sort and filter a columnar snapshot of batches into snapshot positions. The default maps the
+   * positions back to entities and uses {@link #sortAndFilterBatches(List)}.
+   *
+   * @param snapshot columnar copy of the batches
+   * @param todayEpochDay current date as epoch day, resolved once by the caller
+   * @param order receives the positions of usable batches in priority order
+   * @return number of positions written to {@code order}
+   */
+  default int sortAndFilter(BatchSnapshot snapshot, int todayEpochDay, int[] order) {
+    List<InventoryBatch> batches = new ArrayList<>(snapshot.size());
+    Map<InventoryBatch, Integer> positions = new IdentityHashMap<>();
+    for (int i = 0; i < snapshot.size(); i++) {
+      batches.add(snapshot.batch(i));
+      positions.put(snapshot.batch(i), i);
+    }
+    int count = 0;
+    for (InventoryBatch batch : sortAndFilterBatches(batches)) {
+      order[count++] = positions.get(batch);
+    }
+    return count;
+  }
+
+  /**
+   * Select snapshot positions to fulfill the required quantity, in priority order
+   *
+   * @param snapshot columnar copy of the unsorted batches
+   * @param todayEpochDay current date as epoch day, resolved once by the caller
+   * @param requiredQuantity quantity needed
+   * @param selected receives the selected positions
+   * @return number of positions written to {@code selected}
+   */
+  default int selectForDeduction(
+      BatchSnapshot snapshot, int todayEpochDay, int requiredQuantity, int[] selected) {
+    int count = sortAndFilter(snapshot, todayEpochDay, selected);
+    int taken = 0;
+    int remainingQuantity = requiredQuantity;
+    while (remainingQuantity > 0 && taken < count) {
+      remainingQuantity -= snapshot.quantity(selected[taken++]);
+    }
+    return taken;
+  }
+
+  /**
+   * Whether {@link #selectForDeduction} always takes a prefix of the {@link #sortAndFilter} order.
+   * Callers that walk the sorted batches themselves, like the stock ledger, must ask the handler
+   * for its selection when it does not.
+   *
+   * @return true when the selection is the shortest covering prefix of the sorted batches
+   */
+  default boolean selectsPrefix() {
+    return true;
+  }
+
   /**
    * Get the handler type identifier
    *
@@ -1,12 +1,8 @@
 package org.koerber.inventory.handler;
 
-import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import org.koerber.inventory.enums.BatchStatus;
 import org.koerber.inventory.model.InventoryBatch;
 import org.springframework.stereotype.Component;
 
@@ -16,24 +12,14 @@ import org.springframework.stereotype.Component;
  */
 @Component
 @Slf4j
-public class StandardInventoryHandler implements InventoryHandler {
+public class StandardInventoryHandler extends IndexedInventoryHandler {
 
   public static final String TYPE = "STANDARD";
 
   @Override
   public List<InventoryBatch> sortAndFilterBatches(List<InventoryBatch> batches) {
     log.debug("StandardHandler: Sorting {} batches by expiry date", batches.size());
-
-    LocalDate today = LocalDate.now();
-
-    return batches.stream()
-        .filter(batch -> BatchStatus.ACTIVE.equals(batch.getStatus()))
-        .filter(batch -> batch.getExpiryDate() == null || !batch.getExpiryDate().isBefore(today))
-        .filter(batch -> batch.getQuantity() > 0)
-        .sorted(
-            Comparator.comparing(
-                InventoryBatch::getExpiryDate, Comparator.nullsLast(Comparator.naturalOrder())))
-        .collect(Collectors.toList());
+    return sortedView(batches);
   }
 
   @Override
@@ -61,6 +47,21 @@ public class StandardInventoryHandler implements InventoryHandler {
     return selectedBatches;
   }
 
+  @Override
+  protected int primarySortKey(BatchSnapshot snapshot, int position) {
+    return snapshot.expiryEpochDay(position);
+  }
+
+  @Override
+  protected long secondarySortKey(BatchSnapshot snapshot, int position) {
+    return 0L;
+  }
+
+  @Override
+  protected boolean isEligible(BatchSnapshot snapshot, int position, int todayEpochDay) {
+    return snapshot.isAvailable(position, todayEpochDay);
+  }
+
   @Override
   public String getType() {
     return TYPE;
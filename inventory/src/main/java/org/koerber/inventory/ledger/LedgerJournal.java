@@ -0,0 +1,405 @@
+package org.koerber.inventory.ledger;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only journal of ledger quantity changes, for the durable ledger mode. Every change is a
+ * fixed-size record holding the batch's new quantity, written to a memory-mapped segment file.
+ * Callers wait for {@link #awaitDurable(long)} before acknowledging a change; concurrent callers
+ * share one fsync, so the cost of durability is amortised over everything appended meanwhile.
+ *
+ * <p>Records carry absolute quantities and are appended in the order the changes were made per
+ * product, so replaying them over any earlier snapshot yields the latest quantity of every batch.
+ * Snapshots are written by {@link LedgerSnapshotter}; segments they cover are deleted.
+ *
+ * <p>Record layout, little endian: sequence (8), product ID (8), batch ID (8), quantity (4),
+ * CRC32C of the preceding 28 bytes (4). Replay stops at the first record that is torn or out of
+ * sequence.
+ */
+@Component
+@Slf4j
+public class LedgerJournal {
+
+  static final int RECORD_SIZE = 32;
+  private static final int CHECKSUMMED_SIZE = 28;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".bin";
+  private static final long SNAPSHOT_MAGIC = 0x4c4544474552534eL;
+  private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private final boolean enabled;
+  private final Path directory;
+  private final int segmentRecords;
+
+  private final Object syncLock = new Object();
+
+  private Segment current;
+  private final List<Segment> unsynced = new ArrayList<>();
+  private long lastSequence;
+  private volatile long durableSequence;
+  private volatile boolean open;
+
+  public LedgerJournal(
+      @Value("${inventory.ledger.journal.enabled:false}") boolean enabled,
+      @Value("${inventory.ledger.journal.dir:./data/ledger-journal}") String directory,
+      @Value("${inventory.ledger.journal.segment-records:1048576}") int segmentRecords) {
+    this.enabled = enabled;
+    this.directory = Path.of(directory);
+    this.segmentRecords = segmentRecords;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Whether the journal was recovered and accepts appends */
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Replay the latest snapshot and the journal after it, then open the journal for appending.
+   * Called once, when the ledger has been rebuilt from the database.
+   *
+   * @param sink receives batch ID and quantity, in the order the changes were made
+   * @return number of journal records replayed after the snapshot
+   */
+  public synchronized int recover(QuantitySink sink) {
+    try {
+      Files.createDirectories(directory);
+      long snapshotSequence = readLatestSnapshot(sink);
+      lastSequence = snapshotSequence;
+
+      int replayed = 0;
+      Segment tail = null;
+      List<Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+      int used = 0;
+      for (; used < segments.size(); used++) {
+        Path path = segments.get(used);
+        long firstSequence = sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        if (firstSequence > lastSequence + 1) {
+          // A gap: nothing from here on can be applied in order
+          break;
+        }
+        Segment segment = Segment.open(path, firstSequence, segmentRecords);
+        ByteBuffer buffer = segment.buffer;
+        while (segment.next < segmentRecords) {
+          int offset = segment.next * RECORD_SIZE;
+          long sequence = buffer.getLong(offset);
+          if (sequence != firstSequence + segment.next || !checksumMatches(buffer, offset)) {
+            break;
+          }
+          segment.next++;
+          if (sequence > lastSequence) {
+            long productId = buffer.getLong(offset + 8);
+            long batchId = buffer.getLong(offset + 16);
+            sink.accept(productId, batchId, buffer.getInt(offset + 24));
+            lastSequence = sequence;
+            replayed++;
+          }
+        }
+        tail = segment;
+      }
+      // Segments past a gap hold records that were never acknowledged
+      for (Path stale : segments.subList(used, segments.size())) {
+        log.warn("Discarding ledger journal segment {} after a gap", stale);
+        Files.delete(stale);
+      }
+
+      boolean resumeTail =
+          tail != null
+              && tail.next < segmentRecords
+              && tail.firstSequence + tail.next == lastSequence + 1;
+      current = resumeTail ? tail : newSegment(lastSequence + 1);
+      durableSequence = lastSequence;
+      open = true;
+      log.info(
+          "Ledger journal recovered from snapshot {} with {} records, next sequence {}",
+          snapshotSequence,
+          replayed,
+          lastSequence + 1);
+      return replayed;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to recover ledger journal in " + directory, e);
+    }
+  }
+
+  /**
+   * Append the new quantity of a batch. Callers append the changes of one product in the order
+   * they were made, e.g. while holding a per-product lock.
+   *
+   * @param productId product ID
+   * @param batchId batch ID
+   * @param quantity quantity of the batch after the change
+   * @return sequence of the record, to be passed to {@link #awaitDurable(long)}
+   */
+  public synchronized long append(long productId, long batchId, int quantity) {
+    if (!open) {
+      throw new IllegalStateException("Ledger journal is not open");
+    }
+    if (current.next == segmentRecords) {
+      roll();
+    }
+    long sequence = lastSequence + 1;
+    ByteBuffer buffer = current.buffer;
+    int offset = current.next * RECORD_SIZE;
+    buffer.putLong(offset, sequence);
+    buffer.putLong(offset + 8, productId);
+    buffer.putLong(offset + 16, batchId);
+    buffer.putInt(offset + 24, quantity);
+    buffer.putInt(offset + CHECKSUMMED_SIZE, checksum(buffer, offset));
+    current.next++;
+    lastSequence = sequence;
+    return sequence;
+  }
+
+  /**
+   * Wait until a record is on disk. The first waiter forces everything appended so far and the
+   * others find their record durable once it is done, so an fsync covers a whole group.
+   *
+   * @param sequence sequence returned by {@link #append}
+   */
+  public void awaitDurable(long sequence) {
+    if (durableSequence >= sequence) {
+      return;
+    }
+    synchronized (syncLock) {
+      if (durableSequence >= sequence) {
+        return;
+      }
+      List<Segment> toForce;
+      long target;
+      synchronized (this) {
+        target = lastSequence;
+        toForce = new ArrayList<>(unsynced);
+        unsynced.clear();
+        toForce.add(current);
+      }
+      // Appends go on while the pages are forced; they wait for the next group
+      toForce.forEach(segment -> segment.buffer.force());
+      durableSequence = target;
+    }
+  }
+
+  /** Sequence of the last appended record */
+  public synchronized long lastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Write a snapshot of batch quantities covering every record up to a sequence, then delete the
+   * older snapshots and the segments the snapshot covers. The quantities must have been read after
+   * the sequence was taken.
+   *
+   * @param sequence last record reflected in the quantities
+   * @param quantities batch quantities by product ID and batch ID
+   */
+  public void writeSnapshot(long sequence, Map<Long, Map<Long, Integer>> quantities) {
+    awaitDurable(sequence);
+    int count = quantities.values().stream().mapToInt(Map::size).sum();
+    ByteBuffer buffer = ByteBuffer.allocate(24 + count * 20 + 4).order(ORDER);
+    // Header: magic, sequence, entry count and a reserved word; entries; CRC32C of all before it
+    buffer.putLong(SNAPSHOT_MAGIC).putLong(sequence).putInt(count).putInt(0);
+    quantities.forEach(
+        (productId, batches) ->
+            batches.forEach(
+                (batchId, quantity) ->
+                    buffer.putLong(productId).putLong(batchId).putInt(quantity)));
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue());
+    buffer.flip();
+
+    try {
+      Path target = directory.resolve(fileName(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+      Path temp = directory.resolve(target.getFileName() + ".tmp");
+      try (FileChannel channel =
+          FileChannel.open(
+              temp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      compact(sequence);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to write ledger snapshot " + sequence, e);
+    }
+  }
+
+  /** Force what was appended before shutting down */
+  @PreDestroy
+  public void close() {
+    if (open) {
+      awaitDurable(lastSequence());
+    }
+  }
+
+  private void roll() {
+    // Forced on the next awaitDurable, together with the new segment
+    unsynced.add(current);
+    current = newSegment(lastSequence + 1);
+  }
+
+  private Segment newSegment(long firstSequence) {
+    try {
+      Path path = directory.resolve(fileName(SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+      // A leftover of an unacknowledged tail must not be read as new records
+      Files.deleteIfExists(path);
+      return Segment.open(path, firstSequence, segmentRecords);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create ledger journal segment", e);
+    }
+  }
+
+  /** Delete snapshots older than the given one and segments whose records it covers */
+  private void compact(long snapshotSequence) throws IOException {
+    for (Path path : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+      if (sequenceOf(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < snapshotSequence) {
+        delete(path);
+      }
+    }
+    List<Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+    for (int i = 0; i + 1 < segments.size(); i++) {
+      // Covered when the next segment starts at or before the first record after the snapshot
+      if (sequenceOf(segments.get(i + 1), SEGMENT_PREFIX, SEGMENT_SUFFIX)
+          <= snapshotSequence + 1) {
+        delete(segments.get(i));
+      }
+    }
+  }
+
+  /** Some platforms refuse to delete a file that is still mapped; the next snapshot retries */
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.debug("Could not delete {} yet: {}", path, e.getMessage());
+    }
+  }
+
+  /** Apply the latest valid snapshot, if any, and return the sequence it covers */
+  private long readLatestSnapshot(QuantitySink sink) throws IOException {
+    List<Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+    for (int i = snapshots.size() - 1; i >= 0; i--) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshots.get(i)));
+      buffer.order(ORDER);
+      if (!snapshotValid(buffer)) {
+        log.warn("Skipping corrupt ledger snapshot {}", snapshots.get(i));
+        continue;
+      }
+      buffer.position(8);
+      long sequence = buffer.getLong();
+      int count = buffer.getInt();
+      buffer.getInt();
+      for (int j = 0; j < count; j++) {
+        sink.accept(buffer.getLong(), buffer.getLong(), buffer.getInt());
+      }
+      return sequence;
+    }
+    return 0;
+  }
+
+  private static boolean snapshotValid(ByteBuffer buffer) {
+    if (buffer.limit() < 28 || buffer.getLong(0) != SNAPSHOT_MAGIC) {
+      return false;
+    }
+    int count = buffer.getInt(16);
+    int length = 24 + count * 20;
+    if (count < 0 || buffer.limit() != length + 4) {
+      return false;
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array(), 0, length);
+    return (int) crc.getValue() == buffer.getInt(length);
+  }
+
+  private static int checksum(ByteBuffer buffer, int offset) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.slice(offset, CHECKSUMMED_SIZE));
+    return (int) crc.getValue();
+  }
+
+  private static boolean checksumMatches(ByteBuffer buffer, int offset) {
+    return checksum(buffer, offset) == buffer.getInt(offset + CHECKSUMMED_SIZE);
+  }
+
+  private List<Path> listFiles(String prefix, String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(
+              path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+              })
+          .sorted()
+          .toList();
+    }
+  }
+
+  /** Zero-padded, so file names sort by sequence */
+  private static String fileName(String prefix, long sequence, String suffix) {
+    return String.format("%s%020d%s", prefix, sequence, suffix);
+  }
+
+  private static long sequenceOf(Path path, String prefix, String suffix) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+  }
+
+  /** Receives recovered batch quantities */
+  @FunctionalInterface
+  public interface QuantitySink {
+    void accept(long productId, long batchId, int quantity);
+  }
+
+  /** A memory-mapped segment file, preallocated to its full size */
+  private static final class Segment {
+
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private int next;
+
+    private Segment(long firstSequence, MappedByteBuffer buffer) {
+      this.firstSequence = firstSequence;
+      this.buffer = buffer;
+    }
+
+    static Segment open(Path path, long firstSequence, int records) throws IOException {
+      try (FileChannel channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        // The mapping stays valid after the channel is closed
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_SIZE);
+        buffer.order(ORDER);
+        return new Segment(firstSequence, buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.koerber.inventory.ledger;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that has the {@link StockLedger} reload a product when it or one of its
+ * batches is written through JPA, e.g. when batches are received. The reload is requested once the
+ * transaction committed and runs with the next flush of the write-behind. The ledger is resolved
+ * lazily because the listener is created while the entity manager factory is still being built.
+ */
+@Component
+public class LedgerReloadListener {
+
+  private final ObjectProvider<StockLedger> stockLedger;
+
+  public LedgerReloadListener(ObjectProvider<StockLedger> stockLedger) {
+    this.stockLedger = stockLedger;
+  }
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  void onWritten(Object entity) {
+    StockLedger ledger = stockLedger.getIfAvailable();
+    if (ledger == null || !ledger.isEnabled()) {
+      return;
+    }
+    Long productId =
+        entity instanceof InventoryBatch batch
+            ? batch.getProduct().getId()
+            : ((Product) entity).getId();
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      ledger.requestReload(productId);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            ledger.requestReload(productId);
+          }
+        });
+  }
+}
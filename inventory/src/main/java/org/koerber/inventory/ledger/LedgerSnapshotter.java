@@ -0,0 +1,42 @@
+package org.koerber.inventory.ledger;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes ledger snapshots in the background in durable mode, so recovery replays only the journal
+ * written since the last snapshot and older journal segments can be deleted.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerSnapshotter {
+
+  private final StockLedger stockLedger;
+  private final LedgerJournal journal;
+
+  private long snapshotSequence = -1;
+
+  /** Snapshot the ledger if anything was journaled since the last snapshot */
+  @Scheduled(fixedDelayString = "${inventory.ledger.journal.snapshot-interval-ms:60000}")
+  public void snapshot() {
+    if (!stockLedger.isEnabled() || !journal.isOpen()) {
+      return;
+    }
+    long sequence = journal.lastSequence();
+    if (sequence == snapshotSequence) {
+      return;
+    }
+
+    try {
+      // Quantities are read after the sequence, so they include every record up to it
+      journal.writeSnapshot(sequence, stockLedger.quantities());
+      snapshotSequence = sequence;
+      log.debug("Ledger snapshot written at journal sequence {}", sequence);
+    } catch (RuntimeException e) {
+      log.error("Failed to write ledger snapshot at sequence {}: {}", sequence, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.koerber.inventory.ledger;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.enums.MovementType;
+import org.koerber.inventory.repository.ProductRepository;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom.NewMovement;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Persists ledger changes to {@code inventory_batches}, and the stock counters of the affected
+ * products, in the background. The flush interval bounds how far the database can lag behind the
+ * ledger. Each flush records the net change of every written batch as one stock movement, since
+ * individual deductions are not kept once they are folded into the ledger. Batches are updated by
+ * that change rather than set to the ledger's quantity, so writes made in SQL meanwhile, e.g. the
+ * database deduction path for batches the ledger does not track or received stock, are kept.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerWriteBehind {
+
+  private static final String UPDATE_BATCH_SQL =
+      "UPDATE inventory_batches SET quantity = quantity + ?, "
+          + "status = CASE WHEN status = 'EXPIRED' THEN status "
+          + "WHEN quantity + ? = 0 THEN 'INACTIVE' ELSE 'ACTIVE' END, "
+          + "version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+
+  private final StockLedger stockLedger;
+  private final JdbcTemplate jdbcTemplate;
+  private final ProductRepository productRepository;
+  private final StockMovementRepository movementRepository;
+  private final TransactionTemplate transactionTemplate;
+
+  /** Write pending batch changes with a single JDBC batch, then reload requested products */
+  @Scheduled(fixedDelayString = "${inventory.ledger.flush-interval-ms:100}")
+  public void flush() {
+    if (!stockLedger.isEnabled()) {
+      return;
+    }
+
+    List<StockLedger.PendingWrite> writes = stockLedger.drainDirtyBatches();
+    if (!writes.isEmpty() && !write(writes)) {
+      return;
+    }
+    // Reloads read the database, so they wait until the changes above are in it
+    stockLedger.reloadRequested();
+  }
+
+  private boolean write(List<StockLedger.PendingWrite> writes) {
+    try {
+      // Batches, their movements and the stock counters of their products commit together
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            movementRepository.append(
+                writes.stream()
+                    .map(
+                        write ->
+                            new NewMovement(
+                                write.batchId(),
+                                write.productId(),
+                                write.quantityDelta() < 0
+                                    ? MovementType.DEDUCTED
+                                    : MovementType.ADJUSTED,
+                                write.quantityDelta(),
+                                null))
+                    .toList());
+            jdbcTemplate.batchUpdate(
+                UPDATE_BATCH_SQL,
+                writes,
+                writes.size(),
+                (ps, write) -> {
+                  ps.setInt(1, write.quantityDelta());
+                  ps.setInt(2, write.quantityDelta());
+                  ps.setLong(3, write.batchId());
+                });
+            productRepository.recalculateAvailableQuantities(
+                writes.stream().map(StockLedger.PendingWrite::productId).toList());
+          });
+      log.debug("Flushed {} ledger batch changes", writes.size());
+      return true;
+    } catch (RuntimeException e) {
+      log.error("Failed to flush {} ledger batch changes: {}", writes.size(), e.getMessage());
+      stockLedger.requeue(writes);
+      return false;
+    }
+  }
+
+  /** Flush remaining changes on shutdown */
+  @PreDestroy
+  public void flushOnShutdown() {
+    flush();
+    if (stockLedger.pendingWrites() > 0) {
+      log.warn("{} ledger batch changes were not persisted", stockLedger.pendingWrites());
+    }
+  }
+}
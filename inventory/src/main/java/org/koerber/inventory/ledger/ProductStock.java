@@ -0,0 +1,435 @@
+package org.koerber.inventory.ledger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.koerber.inventory.handler.BatchSnapshot;
+import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+
+/**
+ * In-memory stock of a single product. Batches are kept in handler order and their available
+ * quantities live in an {@link AtomicIntegerArray}, so deductions are lock-free compare-and-set
+ * loops over primitive slots. A deduction first reserves its quantity against a product-level
+ * total of the usable stock, so it only fails when that total is too low; once reserved, the
+ * batches are guaranteed to hold the quantity and it keeps taking until it has it all.
+ *
+ * <p>Striped stock splits the quantity of every batch over several cells, one per stripe, each on
+ * its own cache line. A thread deducts from the cells of its home stripe and takes from the other
+ * stripes' cells of the same batch only when its own cell runs dry, so concurrent deductions of a
+ * hot product mostly hit different cells. Batches are still taken in handler order. The cells work
+ * like those of a {@code LongAdder}, except that none goes below zero; {@link #rebalance()} evens
+ * them out again. A rebalance briefly holds a batch's quantity outside its cells, so batch totals
+ * are read under a sequence lock and never see that gap.
+ *
+ * <p>Handlers whose selection is not a prefix of their order, like FEWEST_BATCHES, get a selecting
+ * stock instead: every deduction asks the handler to select over the live quantities and takes
+ * those batches first, falling back to handler order for what concurrent deductions took from them
+ * in the meantime.
+ */
+public final class ProductStock {
+
+  private static final int NO_EXPIRY = Integer.MAX_VALUE;
+
+  /** Expiry of a batch that left the usable stock, before any date */
+  private static final int RETIRED = Integer.MIN_VALUE;
+
+  /** Ints per 64-byte cache line */
+  private static final int CELLS_PER_LINE = 16;
+
+  private static final AtomicInteger NEXT_PROBE = new AtomicInteger();
+
+  /** Home stripe seed of the current thread, handed out round-robin */
+  private static final ThreadLocal<Integer> PROBE =
+      ThreadLocal.withInitial(NEXT_PROBE::getAndIncrement);
+
+  private final Long productId;
+  private final long[] batchIds;
+  private final String[] batchNumbers;
+  /** Replaced as a whole when a batch is expired, so readers need no lock */
+  private volatile int[] expiryEpochDays;
+  private final int stripes;
+  private final int stride;
+
+  /** Cell of batch {@code i} in stripe {@code s} is at {@code s * stride + i} */
+  private final AtomicIntegerArray quantities;
+
+  /** Odd while a rebalance is moving quantity between the cells of a batch */
+  private final AtomicInteger rebalanceSequence = new AtomicInteger();
+
+  /**
+   * Quantity of the batches not retired yet, less what deductions reserved and did not take yet.
+   * Changes that retire batches or give quantity back hold the lock on this stock.
+   */
+  private final AtomicInteger unreserved = new AtomicInteger();
+
+  /** Batches expiring before this day have been retired */
+  private volatile int retiredBefore = Integer.MIN_VALUE;
+
+  /** Handler selecting the batches of each deduction, null to take them in handler order */
+  private final InventoryHandler selector;
+
+  /** Batches as loaded, for the selector; quantities are replaced by the live ones */
+  private final BatchSnapshot selectionSnapshot;
+
+  private ProductStock(
+      Long productId, List<InventoryBatch> sortedBatches, int stripes, InventoryHandler selector) {
+    int size = sortedBatches.size();
+    this.productId = productId;
+    this.batchIds = new long[size];
+    this.batchNumbers = new String[size];
+    int[] expiryEpochDays = new int[size];
+    this.stripes = stripes;
+    // Stripes start on separate cache lines, so threads of different stripes do not share one
+    this.stride =
+        stripes == 1 ? size : (size + CELLS_PER_LINE - 1) / CELLS_PER_LINE * CELLS_PER_LINE;
+    this.quantities = new AtomicIntegerArray(stride * stripes);
+
+    for (int i = 0; i < size; i++) {
+      InventoryBatch batch = sortedBatches.get(i);
+      batchIds[i] = batch.getId();
+      batchNumbers[i] = batch.getBatchNumber();
+      expiryEpochDays[i] =
+          batch.getExpiryDate() != null ? (int) batch.getExpiryDate().toEpochDay() : NO_EXPIRY;
+      spread(i, batch.getQuantity());
+      unreserved.addAndGet(batch.getQuantity());
+    }
+    this.expiryEpochDays = expiryEpochDays;
+    this.selector = selector;
+    this.selectionSnapshot = selector != null ? BatchSnapshot.of(sortedBatches) : null;
+  }
+
+  /**
+   * Build the stock of a product from its batches
+   *
+   * @param productId product ID
+   * @param sortedBatches available batches, already sorted by the product's handler
+   * @return product stock
+   */
+  public static ProductStock of(Long productId, List<InventoryBatch> sortedBatches) {
+    return new ProductStock(productId, sortedBatches, 1, null);
+  }
+
+  /**
+   * Build the striped stock of a product from its batches
+   *
+   * @param productId product ID
+   * @param sortedBatches available batches, already sorted by the product's handler
+   * @param stripes number of cells each batch quantity is split over
+   * @return product stock
+   */
+  public static ProductStock striped(
+      Long productId, List<InventoryBatch> sortedBatches, int stripes) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("stripes must be positive, got " + stripes);
+    }
+    return new ProductStock(productId, sortedBatches, stripes, null);
+  }
+
+  /**
+   * Build the stock of a product whose handler's selection is not a prefix of its order
+   *
+   * @param productId product ID
+   * @param sortedBatches available batches, already sorted by the product's handler
+   * @param handler the product's handler, asked for the batches of every deduction
+   * @return product stock
+   */
+  public static ProductStock selecting(
+      Long productId, List<InventoryBatch> sortedBatches, InventoryHandler handler) {
+    return new ProductStock(productId, sortedBatches, 1, handler);
+  }
+
+  /**
+   * Deduct quantity from non-expired batches in handler order, or from the handler's selection
+   * first in a selecting stock. The quantity is reserved against the usable total first, so the
+   * deduction fails only when the total, less what other deductions reserved, is too low. A
+   * reserved deduction scans the batches again when it finds too little, which happens while a
+   * rebalance moves quantity between cells or batches expire during it.
+   *
+   * @param quantity quantity to deduct
+   * @param todayEpochDay current date as epoch day
+   * @return allocations per batch, or {@code null} when stock is insufficient
+   */
+  public List<Allocation> deduct(int quantity, int todayEpochDay) {
+    if (todayEpochDay > retiredBefore) {
+      retireExpired(todayEpochDay);
+    }
+    int[] selected = null;
+    while (true) {
+      int available = unreserved.get();
+      if (available < quantity) {
+        return null;
+      }
+      if (!unreserved.compareAndSet(available, available - quantity)) {
+        continue;
+      }
+      if (selector != null && selected == null) {
+        selected = select(quantity, todayEpochDay);
+      }
+      List<Allocation> allocations = tryDeduct(quantity, todayEpochDay, selected);
+      if (allocations != null) {
+        return allocations;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /** Positions the selector picks from the live quantities of the usable batches */
+  private int[] select(int quantity, int todayEpochDay) {
+    int[] expiryEpochDays = this.expiryEpochDays;
+    int[] live = new int[batchIds.length];
+    for (int i = 0; i < live.length; i++) {
+      live[i] = expiryEpochDays[i] == RETIRED ? 0 : Math.max(quantityAt(i), 0);
+    }
+    int[] selected = new int[live.length];
+    int count =
+        selector.selectForDeduction(
+            selectionSnapshot.withQuantities(live), todayEpochDay, quantity, selected);
+    return Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * Take a reserved quantity, from the selected batches first when there are any; on a miss
+   * everything goes back, reservation included
+   */
+  private List<Allocation> tryDeduct(int quantity, int todayEpochDay, int[] selected) {
+    List<Allocation> allocations = new ArrayList<>();
+    int remaining = quantity;
+    int home = homeStripe();
+    int[] expiryEpochDays = this.expiryEpochDays;
+
+    boolean[] visited = null;
+    if (selected != null) {
+      visited = new boolean[batchIds.length];
+      for (int k = 0; k < selected.length && remaining > 0; k++) {
+        int i = selected[k];
+        visited[i] = true;
+        if (expiryEpochDays[i] >= todayEpochDay) {
+          remaining -= takeFromBatch(i, remaining, home, allocations);
+        }
+      }
+    }
+
+    for (int i = 0; i < batchIds.length && remaining > 0; i++) {
+      if (expiryEpochDays[i] >= todayEpochDay && (visited == null || !visited[i])) {
+        remaining -= takeFromBatch(i, remaining, home, allocations);
+      }
+    }
+
+    if (remaining > 0) {
+      // Quantity was between cells or its batch retired meanwhile: give back and look again
+      release(allocations);
+      unreserved.addAndGet(remaining);
+      return null;
+    }
+
+    return allocations;
+  }
+
+  /** Take up to {@code max} from a batch, its home stripe's cell first, and record the take */
+  private int takeFromBatch(int index, int max, int home, List<Allocation> allocations) {
+    int taken = 0;
+    for (int s = 0; s < stripes && taken < max; s++) {
+      taken += take((home + s) % stripes * stride + index, max - taken);
+    }
+    if (taken > 0) {
+      allocations.add(
+          new Allocation(index, batchIds[index], batchNumbers[index], taken, quantityAt(index)));
+    }
+    return taken;
+  }
+
+  /** Take up to {@code max} from a cell without taking it below zero */
+  private int take(int cell, int max) {
+    while (true) {
+      int current = quantities.get(cell);
+      if (current <= 0) {
+        return 0;
+      }
+      int taken = Math.min(current, max);
+      if (quantities.compareAndSet(cell, current, current - taken)) {
+        return taken;
+      }
+    }
+  }
+
+  /**
+   * Give back quantities taken by an earlier deduction. Quantity given back to a retired batch is
+   * kept there but does not become usable again.
+   *
+   * @param allocations allocations returned by {@link #deduct(int, int)}
+   */
+  public synchronized void release(List<Allocation> allocations) {
+    int home = homeStripe();
+    int[] expiryEpochDays = this.expiryEpochDays;
+    for (Allocation allocation : allocations) {
+      quantities.addAndGet(home * stride + allocation.index(), allocation.quantity());
+      if (expiryEpochDays[allocation.index()] != RETIRED) {
+        unreserved.addAndGet(allocation.quantity());
+      }
+    }
+  }
+
+  /**
+   * Even out the cells of every batch whose smallest cell holds less than half its share, so
+   * deductions keep finding stock in their home stripe. A batch's cells are emptied and refilled
+   * one after the other; a deduction meanwhile may miss that quantity and looks again, while
+   * readers of the batch total wait until the refill is done.
+   *
+   * @return number of batches rebalanced
+   */
+  public synchronized int rebalance() {
+    if (stripes == 1) {
+      return 0;
+    }
+    int rebalanced = 0;
+    for (int i = 0; i < batchIds.length; i++) {
+      long total = 0;
+      long smallest = Long.MAX_VALUE;
+      for (int s = 0; s < stripes; s++) {
+        int cell = quantities.get(s * stride + i);
+        total += cell;
+        smallest = Math.min(smallest, cell);
+      }
+      if (total < stripes || smallest * 2 * stripes >= total) {
+        continue;
+      }
+
+      rebalanceSequence.incrementAndGet();
+      try {
+        int drained = 0;
+        for (int s = 0; s < stripes; s++) {
+          drained += quantities.getAndSet(s * stride + i, 0);
+        }
+        for (int s = 0; s < stripes; s++) {
+          quantities.addAndGet(s * stride + i, share(drained, s));
+        }
+      } finally {
+        rebalanceSequence.incrementAndGet();
+      }
+      rebalanced++;
+    }
+    return rebalanced;
+  }
+
+  /**
+   * Sum of quantities of non-expired batches
+   *
+   * @param todayEpochDay current date as epoch day
+   * @return available quantity
+   */
+  public int availableQuantity(int todayEpochDay) {
+    int[] expiryEpochDays = this.expiryEpochDays;
+    int total = 0;
+    for (int i = 0; i < batchIds.length; i++) {
+      if (expiryEpochDays[i] >= todayEpochDay) {
+        total += Math.max(quantityAt(i), 0);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Stop deducting from a batch, e.g. once the expiry sweep moved it to EXPIRED. Its quantity
+   * stays, so quantity given back to it is still persisted.
+   *
+   * @param index position of the batch
+   */
+  synchronized void expire(int index) {
+    int[] expiryEpochDays = this.expiryEpochDays.clone();
+    retire(expiryEpochDays, index);
+    this.expiryEpochDays = expiryEpochDays;
+  }
+
+  /** Retire the batches that expired before a day, once per day */
+  private synchronized void retireExpired(int todayEpochDay) {
+    if (todayEpochDay <= retiredBefore) {
+      return;
+    }
+    int[] expiryEpochDays = this.expiryEpochDays.clone();
+    for (int i = 0; i < expiryEpochDays.length; i++) {
+      if (expiryEpochDays[i] < todayEpochDay) {
+        retire(expiryEpochDays, i);
+      }
+    }
+    this.expiryEpochDays = expiryEpochDays;
+    retiredBefore = todayEpochDay;
+  }
+
+  /** Take a batch's quantity out of the usable total; the caller holds the lock */
+  private void retire(int[] expiryEpochDays, int index) {
+    if (expiryEpochDays[index] != RETIRED) {
+      expiryEpochDays[index] = RETIRED;
+      unreserved.addAndGet(-quantityAt(index));
+    }
+  }
+
+  public Long getProductId() {
+    return productId;
+  }
+
+  public int getStripes() {
+    return stripes;
+  }
+
+  int size() {
+    return batchIds.length;
+  }
+
+  long batchIdAt(int index) {
+    return batchIds[index];
+  }
+
+  /** Quantity of a batch, summed over its cells; never taken while a rebalance moves it */
+  int quantityAt(int index) {
+    if (stripes == 1) {
+      return quantities.get(index);
+    }
+    while (true) {
+      int sequence = rebalanceSequence.get();
+      if ((sequence & 1) == 0) {
+        int quantity = 0;
+        for (int s = 0; s < stripes; s++) {
+          quantity += quantities.get(s * stride + index);
+        }
+        if (rebalanceSequence.get() == sequence) {
+          return quantity;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  int cellQuantity(int index, int stripe) {
+    return quantities.get(stripe * stride + index);
+  }
+
+  synchronized void setQuantityAt(int index, int quantity) {
+    int previous = quantityAt(index);
+    spread(index, quantity);
+    if (expiryEpochDays[index] != RETIRED) {
+      unreserved.addAndGet(quantity - previous);
+    }
+  }
+
+  private void spread(int index, int quantity) {
+    for (int s = 0; s < stripes; s++) {
+      quantities.set(s * stride + index, share(quantity, s));
+    }
+  }
+
+  /** Share of a quantity split evenly over the stripes, the remainder going to the first ones */
+  private int share(int quantity, int stripe) {
+    return quantity / stripes + (stripe < quantity % stripes ? 1 : 0);
+  }
+
+  private int homeStripe() {
+    return stripes == 1 ? 0 : Math.floorMod(PROBE.get(), stripes);
+  }
+
+  /** Quantity taken from one batch by a deduction */
+  public record Allocation(
+      int index, long batchId, String batchNumber, int quantity, int remainingQuantity) {}
+}
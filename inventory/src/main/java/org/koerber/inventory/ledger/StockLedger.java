@@ -0,0 +1,458 @@
+package org.koerber.inventory.ledger;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.factory.InventoryHandlerFactoryImpl;
+import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process stock ledger keyed by product ID. When enabled, deductions are applied to the ledger
+ * without locks and the changed batches are persisted asynchronously by {@link LedgerWriteBehind}.
+ * The database remains the source of record: the ledger is rebuilt from it on startup, products it
+ * has not seen are loaded on their first deduction, and products whose batches were written through
+ * JPA are reloaded with the next flush, see {@link LedgerReloadListener}.
+ *
+ * <p>In durable mode every change is also appended to the {@link LedgerJournal} and a deduction
+ * returns once its records are on disk. Changes of a product are then made under the product's
+ * lock, so they are journaled in the order they were made; on startup the journal is replayed over
+ * the quantities loaded from the database.
+ *
+ * <p>Products listed in {@code inventory.ledger.striped.product-codes} get striped stock, see
+ * {@link ProductStock}, so their deductions spread over several cells. Not in durable mode, where
+ * a product's changes are serialized by its lock anyway, nor for handlers whose selection is not a
+ * prefix of their order: those get a selecting stock, so the ledger deducts what they select.
+ */
+@Component
+@Slf4j
+public class StockLedger {
+
+  private final ProductRepository productRepository;
+  private final InventoryBatchRepository batchRepository;
+  private final InventoryHandlerFactoryImpl handlerFactory;
+  private final LedgerJournal journal;
+  private final boolean enabled;
+  private final Set<String> stripedProductCodes;
+  private final int stripes;
+
+  private final Map<Long, ProductStock> stocks = new ConcurrentHashMap<>();
+  private final Map<Long, Slot> slotsByBatchId = new ConcurrentHashMap<>();
+  private final Set<Long> dirtyBatchIds = ConcurrentHashMap.newKeySet();
+  // Quantity of each batch as last written, so flushes write the change since then
+  private final Map<Long, Integer> persistedQuantities = new ConcurrentHashMap<>();
+  private final Set<Long> reloadProductIds = ConcurrentHashMap.newKeySet();
+  // Bumped after every change of a product's stock, kept across reloads of the product
+  private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+  // Loads of a product are not interleaved, so a stock is never replaced while it is built
+  private final Object loadLock = new Object();
+
+  public StockLedger(
+      ProductRepository productRepository,
+      InventoryBatchRepository batchRepository,
+      InventoryHandlerFactoryImpl handlerFactory,
+      LedgerJournal journal,
+      @Value("${inventory.ledger.enabled:false}") boolean enabled,
+      @Value("${inventory.ledger.striped.product-codes:}") Set<String> stripedProductCodes,
+      @Value("${inventory.ledger.striped.stripes:0}") int stripes) {
+    this.productRepository = productRepository;
+    this.batchRepository = batchRepository;
+    this.handlerFactory = handlerFactory;
+    this.journal = journal;
+    this.enabled = enabled;
+    this.stripedProductCodes = stripedProductCodes;
+    this.stripes = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Rebuild the ledger from the database once the application is ready, then replay the journal
+   * in durable mode. Replayed quantities are written back to the database by the write-behind.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    if (!enabled) {
+      return;
+    }
+    productRepository.findAll().forEach(this::load);
+    log.info(
+        "Stock ledger rebuilt with {} products and {} batches",
+        stocks.size(),
+        slotsByBatchId.size());
+
+    if (journal.isEnabled()) {
+      journal.recover((productId, batchId, quantity) -> recoverQuantity(batchId, quantity));
+    }
+  }
+
+  /**
+   * Reload a single product from the database, e.g. after batches were received. Pending changes
+   * of the product must be flushed before calling this; {@link #requestReload(Long)} does so.
+   *
+   * @param product product to reload
+   */
+  public void load(Product product) {
+    synchronized (loadLock) {
+      replaceStock(product);
+    }
+  }
+
+  /**
+   * Reload a product with the next flush of the write-behind, once its pending changes are
+   * persisted. Deductions made between that flush and the reload are not carried over.
+   *
+   * @param productId product ID
+   */
+  public void requestReload(Long productId) {
+    if (enabled) {
+      reloadProductIds.add(productId);
+    }
+  }
+
+  /** Reload the products requested since the last call; pending changes must be flushed */
+  void reloadRequested() {
+    for (Long productId : reloadProductIds) {
+      reloadProductIds.remove(productId);
+      productRepository.findById(productId).ifPresent(this::load);
+    }
+  }
+
+  private void replaceStock(Product product) {
+    List<InventoryBatch> batches = batchRepository.findAvailableBatchViews(product.getId());
+    InventoryHandler handler = handlerFactory.getHandler(product.getHandlerType().name());
+    List<InventoryBatch> sortedBatches = handler.sortAndFilterBatches(batches);
+    ProductStock stock;
+    if (!handler.selectsPrefix()) {
+      stock = ProductStock.selecting(product.getId(), sortedBatches, handler);
+    } else if (!journal.isEnabled() && stripedProductCodes.contains(product.getProductCode())) {
+      stock = ProductStock.striped(product.getId(), sortedBatches, stripes);
+    } else {
+      stock = ProductStock.of(product.getId(), sortedBatches);
+    }
+
+    ProductStock previous = stocks.put(product.getId(), stock);
+    if (previous != null) {
+      for (int i = 0; i < previous.size(); i++) {
+        slotsByBatchId.remove(previous.batchIdAt(i));
+        persistedQuantities.remove(previous.batchIdAt(i));
+      }
+    }
+    for (int i = 0; i < stock.size(); i++) {
+      slotsByBatchId.put(stock.batchIdAt(i), new Slot(stock, i));
+      persistedQuantities.put(stock.batchIdAt(i), stock.quantityAt(i));
+    }
+    changed(product.getId());
+  }
+
+  /**
+   * Deduct quantity from the ledger of a product
+   *
+   * @param productId product ID
+   * @param quantity quantity to deduct
+   * @return allocations per batch, or {@code null} when stock is insufficient
+   */
+  public List<ProductStock.Allocation> deduct(Long productId, int quantity) {
+    ProductStock stock = stocks.get(productId);
+    if (stock == null) {
+      stock = loadMissing(productId);
+      if (stock == null) {
+        return null;
+      }
+    }
+
+    if (!journal.isEnabled()) {
+      List<ProductStock.Allocation> allocations = stock.deduct(quantity, today());
+      if (allocations != null) {
+        allocations.forEach(allocation -> dirtyBatchIds.add(allocation.batchId()));
+        changed(productId);
+      }
+      return allocations;
+    }
+
+    List<ProductStock.Allocation> allocations;
+    long sequence;
+    synchronized (stock) {
+      allocations = stock.deduct(quantity, today());
+      if (allocations == null) {
+        return null;
+      }
+      sequence = journalChanges(stock, allocations);
+    }
+    changed(productId);
+    journal.awaitDurable(sequence);
+    return allocations;
+  }
+
+  /**
+   * Give back quantities taken by an earlier ledger deduction, e.g. when a multi-line order fails
+   *
+   * @param productId product ID
+   * @param allocations allocations returned by {@link #deduct(Long, int)}
+   */
+  public void release(Long productId, List<ProductStock.Allocation> allocations) {
+    ProductStock stock = stocks.get(productId);
+    if (stock == null) {
+      return;
+    }
+    if (!journal.isEnabled()) {
+      stock.release(allocations);
+      allocations.forEach(allocation -> dirtyBatchIds.add(allocation.batchId()));
+      changed(productId);
+      return;
+    }
+
+    long sequence;
+    synchronized (stock) {
+      stock.release(allocations);
+      sequence = journalChanges(stock, allocations);
+    }
+    changed(productId);
+    journal.awaitDurable(sequence);
+  }
+
+  /**
+   * Whether the ledger holds the stock of a batch
+   *
+   * @param batchId batch ID
+   * @return true when the ledger tracks the batch
+   */
+  public boolean isTracked(Long batchId) {
+    return slotsByBatchId.containsKey(batchId);
+  }
+
+  /**
+   * Stop deducting from batches the expiry sweep moved to EXPIRED. The ledger already skips batches
+   * past their expiry date; this covers batches expired by other means too. They stay tracked, so
+   * changes already taken from or given back to them are still persisted.
+   *
+   * @param batchIds expired batches; untracked ones are ignored
+   */
+  public void expire(Collection<Long> batchIds) {
+    for (Long batchId : batchIds) {
+      Slot slot = slotsByBatchId.get(batchId);
+      if (slot != null) {
+        slot.stock().expire(slot.index());
+        changed(slot.stock().getProductId());
+      }
+    }
+  }
+
+  /**
+   * Give quantities back to ledger batches by batch ID, e.g. when a reservation is released
+   *
+   * @param quantitiesByBatchId quantity to give back per batch ID
+   * @return quantities of batches the ledger no longer tracks, to be restored in the database
+   */
+  public Map<Long, Integer> restore(Map<Long, Integer> quantitiesByBatchId) {
+    Map<Long, Integer> untracked = new HashMap<>();
+    long sequence = 0;
+    for (Map.Entry<Long, Integer> entry : quantitiesByBatchId.entrySet()) {
+      Slot slot = slotsByBatchId.get(entry.getKey());
+      if (slot == null) {
+        untracked.put(entry.getKey(), entry.getValue());
+        continue;
+      }
+      List<ProductStock.Allocation> allocations =
+          List.of(
+              new ProductStock.Allocation(
+                  slot.index(), entry.getKey(), null, entry.getValue(), 0));
+      if (!journal.isEnabled()) {
+        slot.stock().release(allocations);
+        dirtyBatchIds.add(entry.getKey());
+        changed(slot.stock().getProductId());
+        continue;
+      }
+      synchronized (slot.stock()) {
+        slot.stock().release(allocations);
+        sequence = journalChanges(slot.stock(), allocations);
+      }
+      changed(slot.stock().getProductId());
+    }
+    if (sequence > 0) {
+      journal.awaitDurable(sequence);
+    }
+    return untracked;
+  }
+
+  /**
+   * Available quantity of a product according to the ledger
+   *
+   * @param productId product ID
+   * @return available quantity, 0 when the product is not tracked
+   */
+  public int availableQuantity(Long productId) {
+    ProductStock stock = stocks.get(productId);
+    return stock == null ? 0 : stock.availableQuantity(today());
+  }
+
+  /**
+   * Version of a product's ledger stock. It grows with every deduction, release, expiry and reload
+   * of the product, each counted once it is applied, so it can tag quantities read from the ledger.
+   *
+   * @param productId product ID
+   * @return version, 0 until the product's stock first changes
+   */
+  public long version(Long productId) {
+    AtomicLong version = versions.get(productId);
+    return version == null ? 0 : version.get();
+  }
+
+  /**
+   * Even out the cells of striped products. Batch totals do not change and are never read while
+   * quantity moves between cells, so nothing has to be persisted.
+   *
+   * @return number of batches rebalanced
+   */
+  public int rebalanceStripes() {
+    int rebalanced = 0;
+    for (ProductStock stock : stocks.values()) {
+      rebalanced += stock.rebalance();
+    }
+    return rebalanced;
+  }
+
+  /**
+   * Overwrite batch quantities with the live ledger values, which may be ahead of the database
+   *
+   * @param batches batches loaded from the database
+   */
+  public void applyLiveQuantities(Collection<InventoryBatch> batches) {
+    for (InventoryBatch batch : batches) {
+      Slot slot = slotsByBatchId.get(batch.getId());
+      if (slot != null) {
+        int quantity = slot.stock().quantityAt(slot.index());
+        batch.setQuantity(quantity);
+        if (quantity == 0 && batch.getStatus() == BatchStatus.ACTIVE) {
+          batch.setStatus(BatchStatus.INACTIVE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Take the batches changed since the last call, with the change of their quantity since it was
+   * last taken. Batches whose quantity came back to the persisted value are left out.
+   *
+   * @return pending batch changes
+   */
+  synchronized List<PendingWrite> drainDirtyBatches() {
+    List<PendingWrite> writes = new ArrayList<>();
+    for (Long batchId : dirtyBatchIds) {
+      // Remove before reading so a concurrent deduction re-marks the batch for the next flush
+      dirtyBatchIds.remove(batchId);
+      Slot slot = slotsByBatchId.get(batchId);
+      if (slot != null) {
+        int quantity = slot.stock().quantityAt(slot.index());
+        Integer persisted = persistedQuantities.put(batchId, quantity);
+        int delta = quantity - (persisted == null ? 0 : persisted);
+        if (delta != 0) {
+          writes.add(new PendingWrite(batchId, slot.stock().getProductId(), delta));
+        }
+      }
+    }
+    return writes;
+  }
+
+  /**
+   * Current quantity of every tracked batch, for a journal snapshot
+   *
+   * @return batch quantities by product ID and batch ID
+   */
+  Map<Long, Map<Long, Integer>> quantities() {
+    Map<Long, Map<Long, Integer>> quantities = new HashMap<>();
+    stocks.forEach(
+        (productId, stock) -> {
+          Map<Long, Integer> batches = new HashMap<>();
+          for (int i = 0; i < stock.size(); i++) {
+            batches.put(stock.batchIdAt(i), stock.quantityAt(i));
+          }
+          quantities.put(productId, batches);
+        });
+    return quantities;
+  }
+
+  /**
+   * Give back changes that could not be persisted, so the next flush writes them again
+   *
+   * @param writes changes taken by {@link #drainDirtyBatches()}
+   */
+  synchronized void requeue(Collection<PendingWrite> writes) {
+    for (PendingWrite write : writes) {
+      persistedQuantities.computeIfPresent(
+          write.batchId(), (batchId, persisted) -> persisted - write.quantityDelta());
+      dirtyBatchIds.add(write.batchId());
+    }
+  }
+
+  int pendingWrites() {
+    return dirtyBatchIds.size();
+  }
+
+  /** Load a product the ledger has not seen yet, e.g. one created after startup */
+  private ProductStock loadMissing(Long productId) {
+    synchronized (loadLock) {
+      ProductStock stock = stocks.get(productId);
+      if (stock == null) {
+        productRepository.findById(productId).ifPresent(this::replaceStock);
+        stock = stocks.get(productId);
+      }
+      return stock;
+    }
+  }
+
+  /** Journal the new quantities of changed batches; the caller holds the product's lock */
+  private long journalChanges(ProductStock stock, List<ProductStock.Allocation> allocations) {
+    long sequence = 0;
+    for (ProductStock.Allocation allocation : allocations) {
+      sequence =
+          journal.append(
+              stock.getProductId(), allocation.batchId(), stock.quantityAt(allocation.index()));
+      dirtyBatchIds.add(allocation.batchId());
+    }
+    return sequence;
+  }
+
+  /**
+   * Apply a quantity replayed from the journal; batches no longer tracked are skipped. The
+   * persisted quantity stays the one loaded, so the next flush writes the difference.
+   */
+  private void recoverQuantity(long batchId, int quantity) {
+    Slot slot = slotsByBatchId.get(batchId);
+    if (slot != null) {
+      slot.stock().setQuantityAt(slot.index(), quantity);
+      dirtyBatchIds.add(batchId);
+      changed(slot.stock().getProductId());
+    }
+  }
+
+  private void changed(Long productId) {
+    versions.computeIfAbsent(productId, id -> new AtomicLong()).incrementAndGet();
+  }
+
+  private int today() {
+    return (int) LocalDate.now().toEpochDay();
+  }
+
+  private record Slot(ProductStock stock, int index) {}
+
+  /** Change of a batch's ledger quantity that still has to be persisted */
+  record PendingWrite(long batchId, Long productId, int quantityDelta) {}
+}
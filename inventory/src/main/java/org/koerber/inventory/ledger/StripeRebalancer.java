@@ -0,0 +1,29 @@
+package org.koerber.inventory.ledger;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evens out the cells of striped products in the background. Deductions drain the cells of busy
+ * stripes first; without rebalancing they would steal from their neighbours more and more often.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StripeRebalancer {
+
+  private final StockLedger stockLedger;
+
+  @Scheduled(fixedDelayString = "${inventory.ledger.striped.rebalance-interval-ms:1000}")
+  public void rebalance() {
+    if (!stockLedger.isEnabled()) {
+      return;
+    }
+    int rebalanced = stockLedger.rebalanceStripes();
+    if (rebalanced > 0) {
+      log.debug("Rebalanced the stripes of {} batches", rebalanced);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package org.koerber.inventory.mailbox;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.cache.ProductCache;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.exception.ProductNotFoundException;
+import org.koerber.inventory.ledger.StockLedger;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.service.InventoryService;
+import org.koerber.inventory.service.InventoryService.DeductionOutcome;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Routes inventory updates through a serial mailbox per product. Only one worker drains a mailbox
+ * at a time; it takes what queued up, at most {@code max-group-size} requests, and applies it as
+ * one group with {@link InventoryService#updateInventoryGroup}. Requests arriving while a group
+ * commits form the next one, so a hot product pays one transaction per group rather than one per
+ * order, and its batch rows are no longer fought over by concurrent orders. Mailboxes share a
+ * fixed pool of workers; a mailbox applies one group per turn and then queues behind the other
+ * mailboxes, so a hot product cannot keep a worker to itself. Callers wait at most {@code
+ * timeout-ms} for their group.
+ *
+ * <p>If a group fails as a whole, e.g. because a batch was changed outside the mailbox, its
+ * requests are retried one by one, so each caller gets the answer it would have got on its own.
+ * Not used in ledger mode, where deductions take no row locks.
+ */
+@Component
+@Slf4j
+public class DeductionMailbox {
+
+  private final InventoryService inventoryService;
+  private final ProductCache productCache;
+  private final boolean enabled;
+  private final int maxGroupSize;
+  private final long windowMillis;
+  private final long timeoutMillis;
+  private final ExecutorService workers;
+
+  private final Map<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+  public DeductionMailbox(
+      InventoryService inventoryService,
+      ProductCache productCache,
+      StockLedger stockLedger,
+      @Value("${inventory.mailbox.enabled:false}") boolean enabled,
+      @Value("${inventory.mailbox.workers:4}") int workers,
+      @Value("${inventory.mailbox.max-group-size:256}") int maxGroupSize,
+      @Value("${inventory.mailbox.window-ms:1}") long windowMillis,
+      @Value("${inventory.mailbox.timeout-ms:5000}") long timeoutMillis) {
+    this.inventoryService = inventoryService;
+    this.productCache = productCache;
+    this.enabled = enabled && !stockLedger.isEnabled();
+    this.maxGroupSize = maxGroupSize;
+    this.windowMillis = windowMillis;
+    this.timeoutMillis = timeoutMillis;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.workers =
+        this.enabled
+            ? Executors.newFixedThreadPool(
+                workers,
+                runnable -> {
+                  Thread thread =
+                      new Thread(runnable, "deduction-mailbox-" + threadCount.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Queue an update in its product's mailbox and wait until the group it joined is applied
+   *
+   * @param request update request
+   * @return response to this request alone
+   * @throws IllegalStateException if the group was not applied within the timeout
+   */
+  public InventoryUpdateResponse deduct(InventoryUpdateRequest request) {
+    // Resolved up front, so only known products get a mailbox
+    Product product =
+        productCache
+            .findByProductCode(request.getProductCode())
+            .orElseThrow(
+                () ->
+                    new ProductNotFoundException(
+                        "Product not found with ID: " + request.getProductCode()));
+
+    Mailbox mailbox =
+        mailboxes.computeIfAbsent(product.getId(), id -> new Mailbox(product.getProductCode()));
+    Pending pending = new Pending(request, new CompletableFuture<>());
+    mailbox.queue.add(pending);
+    schedule(mailbox);
+
+    try {
+      return pending.result().get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(
+          "Inventory update for product " + request.getProductCode() + " failed", e.getCause());
+    } catch (TimeoutException e) {
+      throw abandon(mailbox, pending, "was not applied within " + timeoutMillis + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw abandon(mailbox, pending, "was interrupted");
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    if (workers != null) {
+      workers.shutdown();
+      workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Give up waiting for a request. One still queued is taken out and never applied; one already
+   * taken may still be applied, and retrying it with the same order ID replays its outcome.
+   */
+  private static IllegalStateException abandon(Mailbox mailbox, Pending pending, String reason) {
+    String outcome = mailbox.queue.remove(pending) ? "" : ", its outcome is unknown";
+    return new IllegalStateException(
+        "Inventory update for product " + mailbox.productCode + " " + reason + outcome);
+  }
+
+  private void schedule(Mailbox mailbox) {
+    if (mailbox.scheduled.compareAndSet(false, true)) {
+      submit(mailbox, true);
+    }
+  }
+
+  /** Give the scheduled mailbox a turn on the pool, after the turns queued before it */
+  private void submit(Mailbox mailbox, boolean firstTurn) {
+    try {
+      workers.execute(() -> drain(mailbox, firstTurn));
+    } catch (RejectedExecutionException e) {
+      // Shutting down: nobody will drain what is left
+      mailbox.scheduled.set(false);
+      failUnanswered(mailbox.productCode, mailbox.take(Integer.MAX_VALUE));
+    }
+  }
+
+  private void drain(Mailbox mailbox, boolean firstTurn) {
+    try {
+      if (firstTurn && windowMillis > 0) {
+        // Let requests arriving together join the first group
+        Thread.sleep(windowMillis);
+      }
+      List<Pending> group = mailbox.take(maxGroupSize);
+      if (!group.isEmpty()) {
+        apply(mailbox.productCode, group);
+      }
+    } catch (InterruptedException e) {
+      // Shutting down: nobody will drain what is left
+      Thread.currentThread().interrupt();
+      mailbox.scheduled.set(false);
+      failUnanswered(mailbox.productCode, mailbox.take(Integer.MAX_VALUE));
+      return;
+    } catch (RuntimeException | Error e) {
+      endTurn(mailbox);
+      throw e;
+    }
+    endTurn(mailbox);
+  }
+
+  private void endTurn(Mailbox mailbox) {
+    if (!mailbox.queue.isEmpty()) {
+      // Still scheduled: the next group waits behind the mailboxes already waiting for a worker
+      submit(mailbox, false);
+      return;
+    }
+    mailbox.scheduled.set(false);
+    // A request queued after the check but before the flag was cleared found it still set
+    if (!mailbox.queue.isEmpty()) {
+      schedule(mailbox);
+    }
+  }
+
+  private void apply(String productCode, List<Pending> group) {
+    try {
+      if (group.size() == 1) {
+        applyAlone(group.get(0));
+        return;
+      }
+
+      List<DeductionOutcome> outcomes;
+      try {
+        outcomes =
+            inventoryService.updateInventoryGroup(
+                productCode, group.stream().map(Pending::request).toList());
+      } catch (RuntimeException e) {
+        log.warn(
+            "Group of {} updates for product {} failed, applying them one by one: {}",
+            group.size(),
+            productCode,
+            e.getMessage());
+        group.forEach(this::applyAlone);
+        return;
+      }
+
+      for (int i = 0; i < group.size(); i++) {
+        DeductionOutcome outcome = outcomes.get(i);
+        if (outcome.failure() != null) {
+          group.get(i).result().completeExceptionally(outcome.failure());
+        } else {
+          group.get(i).result().complete(outcome.response());
+        }
+      }
+    } finally {
+      // No caller may be left waiting, whatever went wrong above
+      failUnanswered(productCode, group);
+    }
+  }
+
+  private static void failUnanswered(String productCode, List<Pending> group) {
+    for (Pending pending : group) {
+      if (!pending.result().isDone()) {
+        pending
+            .result()
+            .completeExceptionally(
+                new IllegalStateException(
+                    "Inventory update for product " + productCode + " was not applied"));
+      }
+    }
+  }
+
+  private void applyAlone(Pending pending) {
+    try {
+      pending.result().complete(inventoryService.updateInventory(pending.request()));
+    } catch (RuntimeException e) {
+      pending.result().completeExceptionally(e);
+    }
+  }
+
+  private static final class Mailbox {
+
+    private final String productCode;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private Mailbox(String productCode) {
+      this.productCode = productCode;
+    }
+
+    private List<Pending> take(int max) {
+      List<Pending> group = new ArrayList<>();
+      Pending pending;
+      while (group.size() < max && (pending = queue.poll()) != null) {
+        group.add(pending);
+      }
+      return group;
+    }
+  }
+
+  private record Pending(
+      InventoryUpdateRequest request, CompletableFuture<InventoryUpdateResponse> result) {}
+}
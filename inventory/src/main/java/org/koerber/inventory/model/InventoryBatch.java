@@ -8,13 +8,28 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.ledger.LedgerReloadListener;
 
-/** Inventory batch Entity. */
+/**
+ * Inventory batch Entity. The indexes follow the access paths: available batches and stock totals
+ * of a product (covered by product, status and quantity), keyset pages and streams of a product's
+ * batches, and the expiry sweep over active batches.
+ */
 @Entity
-@Table(name = "inventory_batches")
+@DynamicUpdate
+@EntityListeners(LedgerReloadListener.class)
+@Table(
+    name = "inventory_batches",
+    indexes = {
+      @Index(name = "idx_batches_product_status_qty", columnList = "product_id, status, quantity"),
+      @Index(name = "idx_batches_product_id", columnList = "product_id, id"),
+      @Index(name = "idx_batches_status_expiry", columnList = "status, expiry_date")
+    })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,7 +37,13 @@ import org.koerber.inventory.enums.BatchStatus;
 public class InventoryBatch {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Pooled sequence so inserts can be batched; starts above the IDs used by data.sql
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_batches_seq")
+  @SequenceGenerator(
+      name = "inventory_batches_seq",
+      sequenceName = "inventory_batches_seq",
+      allocationSize = 50,
+      initialValue = 1000)
   private Long id;
 
   @ManyToOne(fetch = FetchType.LAZY)
@@ -52,16 +73,60 @@ public class InventoryBatch {
   @Builder.Default
   private BatchStatus status = BatchStatus.ACTIVE;
 
+  /**
+   * Optimistic lock version. Incremented by JPA on entity updates and by every SQL statement that
+   * writes the row, so a writer holding an older copy of the batch fails instead of overwriting it.
+   * Null until the batch is first saved, which is how Spring Data tells new batches apart.
+   */
+  @Version
+  @Column(name = "version", nullable = false)
+  @ColumnDefault("0")
+  private Long version;
+
   @CreationTimestamp private LocalDateTime createdAt;
   @UpdateTimestamp private LocalDateTime updatedAt;
 
+  /**
+   * Read view with only the columns the handlers and {@code BatchDTO} use. Built by projection
+   * queries in {@code InventoryBatchRepository}; such instances are never managed and have no
+   * product.
+   */
+  public InventoryBatch(
+      Long id,
+      String batchNumber,
+      Integer quantity,
+      LocalDate expiryDate,
+      LocalDate manufacturingDate,
+      String supplierName,
+      BatchStatus status,
+      LocalDateTime createdAt) {
+    this.id = id;
+    this.batchNumber = batchNumber;
+    this.quantity = quantity;
+    this.expiryDate = expiryDate;
+    this.manufacturingDate = manufacturingDate;
+    this.supplierName = supplierName;
+    this.status = status;
+    this.createdAt = createdAt;
+  }
+
   /** Check if the batch is expired */
   public boolean isExpired() {
-    return expiryDate != null && expiryDate.isBefore(LocalDate.now());
+    return isExpired(LocalDate.now());
+  }
+
+  /** Check if the batch is expired on the given date */
+  public boolean isExpired(LocalDate today) {
+    return expiryDate != null && expiryDate.isBefore(today);
   }
 
   /** Check if the batch is active and has stock */
   public boolean isAvailable() {
-    return BatchStatus.ACTIVE.equals(status) && quantity > 0 && !isExpired();
+    return isAvailable(LocalDate.now());
+  }
+
+  /** Check if the batch is active and has stock on the given date */
+  public boolean isAvailable(LocalDate today) {
+    return BatchStatus.ACTIVE.equals(status) && quantity > 0 && !isExpired(today);
   }
 }
@@ -0,0 +1,53 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * Processed order Entity. Records the response of every inventory update by order ID, so a retried
+ * update is answered with the same response instead of deducting again.
+ */
+@Entity
+@Table(
+    name = "processed_orders",
+    indexes = @Index(name = "idx_processed_orders_processed_at", columnList = "processed_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessedOrder {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "processed_orders_seq")
+  @SequenceGenerator(
+      name = "processed_orders_seq",
+      sequenceName = "processed_orders_seq",
+      allocationSize = 50)
+  private Long id;
+
+  /** Unique, so concurrent updates for the same order cannot both be recorded */
+  @Column(name = "order_id", unique = true, nullable = false)
+  private String orderId;
+
+  /** Null for a multi-line batch update */
+  @Column(name = "product_code", length = 50)
+  private String productCode;
+
+  /** Units deducted, summed over all lines of a batch update */
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+
+  /** The InventoryUpdateResponse as JSON, or the BatchInventoryUpdateResponse of a batch update */
+  @Lob
+  @Column(name = "response", nullable = false)
+  private String response;
+
+  @CreationTimestamp
+  @Column(name = "processed_at")
+  private LocalDateTime processedAt;
+}
@@ -6,22 +6,35 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.koerber.inventory.cache.ProductCacheInvalidator;
+import org.koerber.inventory.enums.AllocationPolicy;
 import org.koerber.inventory.enums.HandlerType;
 import org.koerber.inventory.enums.ProductCategory;
+import org.koerber.inventory.ledger.LedgerReloadListener;
 
 /** Product Entity Each product can have multiple batches. */
 @Entity
+@DynamicUpdate
 @Table(name = "products")
+@EntityListeners({ProductCacheInvalidator.class, LedgerReloadListener.class})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Product {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Pooled sequence so inserts can be batched; starts above the IDs used by data.sql
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+  @SequenceGenerator(
+      name = "products_seq",
+      sequenceName = "products_seq",
+      allocationSize = 50,
+      initialValue = 1000)
   private Long id;
 
   @Column(name = "product_code", unique = true, nullable = false, length = 50)
@@ -45,6 +58,32 @@ public class Product {
   @Builder.Default
   private HandlerType handlerType = HandlerType.STANDARD;
 
+  /**
+   * How concurrent deductions claim batches. SKIP_LOCKED trades strict handler order across
+   * concurrent orders for throughput on hot products; each order alone still follows it.
+   */
+  @Enumerated(EnumType.STRING)
+  @Column(name = "allocation_policy", nullable = false, length = 20)
+  @ColumnDefault("'STRICT'")
+  @Builder.Default
+  private AllocationPolicy allocationPolicy = AllocationPolicy.STRICT;
+
+  /**
+   * Quantity over active, non-expired batches. Maintained in SQL together with every deduction and
+   * repaired by the reconciliation job; never written through JPA, so a cached or detached product
+   * may hold an old value. Read it with {@code ProductRepository#findStockCounterById}.
+   */
+  @Column(name = "available_quantity", nullable = false, insertable = false, updatable = false)
+  @ColumnDefault("0")
+  @Builder.Default
+  private Integer availableQuantity = 0;
+
+  /** Incremented with every change of {@link #availableQuantity}, maintained the same way */
+  @Column(name = "stock_version", nullable = false, insertable = false, updatable = false)
+  @ColumnDefault("0")
+  @Builder.Default
+  private Long stockVersion = 0L;
+
   @CreationTimestamp private LocalDateTime createdAt;
   @UpdateTimestamp private LocalDateTime updatedAt;
 }
@@ -0,0 +1,26 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Quantity a reservation holds on one batch */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservedBatch {
+
+  @Column(name = "batch_id", nullable = false)
+  private Long batchId;
+
+  @Column(name = "batch_number", length = 100)
+  private String batchNumber;
+
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+}
@@ -0,0 +1,26 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Quantity of one batch in a stock snapshot */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SnapshotQuantity {
+
+  @Column(name = "batch_id", nullable = false)
+  private Long batchId;
+
+  @Column(name = "product_id", nullable = false)
+  private Long productId;
+
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+}
@@ -0,0 +1,54 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.koerber.inventory.enums.MovementType;
+
+/**
+ * Stock movement Entity, an append-only event that changed a batch. The quantity of a batch is the
+ * sum of its movement deltas; {@code inventory_batches.quantity} is the projection of these events,
+ * updated in the same transaction as each movement is recorded.
+ */
+@Entity
+@Table(
+    name = "stock_movements",
+    indexes = {
+      @Index(name = "idx_movements_product_time", columnList = "product_id, occurred_at"),
+      @Index(name = "idx_movements_batch_id", columnList = "batch_id"),
+      @Index(name = "idx_movements_time", columnList = "occurred_at")
+    })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockMovement {
+
+  @Id
+  // Rows are inserted with plain JDBC batches, so the database assigns the ID
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "batch_id", nullable = false)
+  private Long batchId;
+
+  @Column(name = "product_id", nullable = false)
+  private Long productId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "type", nullable = false, length = 20)
+  private MovementType type;
+
+  /** Change of the batch quantity, negative when stock left the batch */
+  @Column(name = "quantity_delta", nullable = false)
+  private Integer quantityDelta;
+
+  @Column(name = "order_id")
+  private String orderId;
+
+  @Column(name = "occurred_at", nullable = false)
+  private LocalDateTime occurredAt;
+}
@@ -0,0 +1,72 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.koerber.inventory.enums.ReservationStatus;
+
+/**
+ * Stock reservation Entity. The reserved quantity is taken from the batches when the reservation
+ * is made, and given back to the same batches when it is released or expires.
+ */
+@Entity
+@Table(
+    name = "stock_reservations",
+    indexes = {
+      @Index(name = "idx_reservations_status", columnList = "status, expires_at"),
+      @Index(name = "idx_reservations_order_id", columnList = "order_id")
+    })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockReservation {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservations_seq")
+  @SequenceGenerator(
+      name = "stock_reservations_seq",
+      sequenceName = "stock_reservations_seq",
+      allocationSize = 50)
+  private Long id;
+
+  @Column(name = "reservation_id", unique = true, nullable = false, length = 36)
+  private String reservationId;
+
+  @Column(name = "order_id", nullable = false)
+  private String orderId;
+
+  @Column(name = "product_id", nullable = false)
+  private Long productId;
+
+  @Column(name = "product_code", nullable = false, length = 50)
+  private String productCode;
+
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "status", nullable = false)
+  @Builder.Default
+  private ReservationStatus status = ReservationStatus.HELD;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @ElementCollection(fetch = FetchType.EAGER)
+  @CollectionTable(
+      name = "stock_reservation_batches",
+      joinColumns = @JoinColumn(name = "stock_reservation_id"))
+  @Builder.Default
+  private List<ReservedBatch> batches = new ArrayList<>();
+
+  @CreationTimestamp private LocalDateTime createdAt;
+  @UpdateTimestamp private LocalDateTime updatedAt;
+}
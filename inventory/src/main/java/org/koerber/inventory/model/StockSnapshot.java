@@ -0,0 +1,46 @@
+package org.koerber.inventory.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * Stock snapshot Entity: the quantity of every batch after all movements that occurred before
+ * {@code asOf}. As-of queries start from the nearest snapshot and replay only the movements after
+ * it.
+ */
+@Entity
+@Table(
+    name = "stock_snapshots",
+    indexes = @Index(name = "idx_snapshots_as_of", columnList = "as_of"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockSnapshot {
+
+  @Id
+  // Rows are inserted with plain JDBC, so the database assigns the ID
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "as_of", nullable = false)
+  private LocalDateTime asOf;
+
+  @ElementCollection
+  @CollectionTable(
+      name = "stock_snapshot_quantities",
+      joinColumns = @JoinColumn(name = "snapshot_id"),
+      indexes =
+          @Index(name = "idx_snapshot_quantities_product", columnList = "snapshot_id, product_id"))
+  @Builder.Default
+  private List<SnapshotQuantity> quantities = new ArrayList<>();
+
+  @CreationTimestamp private LocalDateTime createdAt;
+}
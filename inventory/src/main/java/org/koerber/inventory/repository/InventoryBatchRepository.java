@@ -1,15 +1,26 @@
 package org.koerber.inventory.repository;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
 import org.koerber.inventory.model.InventoryBatch;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-/** Repository for InventoryBatch entity */
+/**
+ * Repository for InventoryBatch entity. Availability queries filter on {@code status = 'ACTIVE'}
+ * alone: {@code BatchExpirySweeper} moves expired batches to EXPIRED at day rollover, and handlers
+ * still check expiry in memory for the moments in between.
+ */
 @Repository
-public interface InventoryBatchRepository extends JpaRepository<InventoryBatch, Long> {
+public interface InventoryBatchRepository
+    extends JpaRepository<InventoryBatch, Long>, InventoryBatchRepositoryCustom {
 
   /**
    * Find all batches for a product
@@ -20,18 +31,108 @@ public interface InventoryBatchRepository extends JpaRepository<InventoryBatch,
   List<InventoryBatch> findByProductId(Long productId);
 
   /**
-   * Find active non-expired batches for a product
+   * Find all batches for several products
+   *
+   * @param productIds product IDs
+   * @return list of batches
+   */
+  List<InventoryBatch> findByProductIdIn(Collection<Long> productIds);
+
+  /**
+   * Find all batches for a product as unmanaged read views holding only the columns the handlers
+   * and {@code BatchDTO} use. No persistence context entries, snapshots or product proxies.
+   *
+   * @param productId product ID
+   * @return list of batch views
+   */
+  @Query(
+      "SELECT new org.koerber.inventory.model.InventoryBatch(b.id, b.batchNumber, b.quantity, "
+          + "b.expiryDate, b.manufacturingDate, b.supplierName, b.status, b.createdAt) "
+          + "FROM InventoryBatch b WHERE b.product.id = :productId")
+  List<InventoryBatch> findBatchViewsByProductId(@Param("productId") Long productId);
+
+  /**
+   * Find active batches with stock for a product as unmanaged read views. Quantities are changed
+   * through {@link #deductQuantities(List)}.
    *
    * @param productId product ID
-   * @return list of active non-expired batches
+   * @return list of active batch views
    */
+  @Query(
+      "SELECT new org.koerber.inventory.model.InventoryBatch(b.id, b.batchNumber, b.quantity, "
+          + "b.expiryDate, b.manufacturingDate, b.supplierName, b.status, b.createdAt) "
+          + "FROM InventoryBatch b WHERE b.product.id = :productId "
+          + "AND b.status = 'ACTIVE' "
+          + "AND b.quantity > 0")
+  List<InventoryBatch> findAvailableBatchViews(@Param("productId") Long productId);
+
+  /**
+   * Aggregate total and available quantity per product. Products without batches are left out.
+   *
+   * @param productIds product IDs
+   * @return totals per product
+   */
+  @Query(
+      "SELECT new org.koerber.inventory.repository.StockTotals(b.product.id, SUM(b.quantity), "
+          + "SUM(CASE WHEN b.status = 'ACTIVE' AND b.quantity > 0 THEN b.quantity ELSE 0 END)) "
+          + "FROM InventoryBatch b WHERE b.product.id IN :productIds GROUP BY b.product.id")
+  List<StockTotals> findStockTotalsByProductIds(@Param("productIds") Collection<Long> productIds);
+
+  /**
+   * Find one page of a product's batches after a batch ID, in batch ID order
+   *
+   * @param productId product ID
+   * @param afterBatchId last batch ID of the previous page, 0 for the first page
+   * @param limit page size
+   * @return batches with an ID greater than {@code afterBatchId}
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+  List<InventoryBatch> findByProductIdAndIdGreaterThanOrderByIdAsc(
+      Long productId, Long afterBatchId, Limit limit);
+
+  /**
+   * Stream all batches of a product in batch ID order. Rows are fetched from the cursor in chunks;
+   * the caller must consume the stream inside a transaction, close it, and detach each batch once
+   * it is written so the persistence context does not grow with the batch count.
+   *
+   * @param productId product ID
+   * @return stream of batches
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500")
+  })
+  @Query("SELECT b FROM InventoryBatch b WHERE b.product.id = :productId ORDER BY b.id")
+  Stream<InventoryBatch> streamByProductId(@Param("productId") Long productId);
+
+  /**
+   * Find active batches with stock for a product. Loaded read-only: quantities are changed through
+   * {@link #deductQuantities(List)}, never through dirty checking.
+   *
+   * @param productId product ID
+   * @return list of active batches
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
   @Query(
       "SELECT b FROM InventoryBatch b WHERE b.product.id = :productId "
           + "AND b.status = 'ACTIVE' "
-          + "AND (b.expiryDate IS NULL OR b.expiryDate >= CURRENT_DATE) "
           + "AND b.quantity > 0")
   List<InventoryBatch> findAvailableBatches(@Param("productId") Long productId);
 
+  /**
+   * Find active batches with stock for several products, loaded read-only
+   *
+   * @param productIds product IDs
+   * @return list of active batches
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+  @Query(
+      "SELECT b FROM InventoryBatch b WHERE b.product.id IN :productIds "
+          + "AND b.status = 'ACTIVE' "
+          + "AND b.quantity > 0")
+  List<InventoryBatch> findAvailableBatchesByProductIds(
+      @Param("productIds") Collection<Long> productIds);
+
   /**
    * Calculate total available quantity for a product
    *
@@ -42,7 +143,6 @@ public interface InventoryBatchRepository extends JpaRepository<InventoryBatch,
       "SELECT COALESCE(SUM(b.quantity), 0) FROM InventoryBatch b "
           + "WHERE b.product.id = :productId "
           + "AND b.status = 'ACTIVE' "
-          + "AND (b.expiryDate IS NULL OR b.expiryDate >= CURRENT_DATE) "
           + "AND b.quantity > 0")
   Integer calculateTotalAvailableQuantity(@Param("productId") Long productId);
 }
@@ -0,0 +1,52 @@
+package org.koerber.inventory.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/** Custom JDBC-level operations on inventory batches */
+public interface InventoryBatchRepositoryCustom {
+
+  /**
+   * Apply conditional deductions with a single JDBC batch. A deduction only applies when its batch
+   * is still active and holds enough stock; the batch becomes INACTIVE once it reaches zero.
+   *
+   * @param deductions deductions to apply, in the order the rows should be locked
+   * @return number of updated rows per deduction, 0 where the batch no longer had enough stock
+   */
+  int[] deductQuantities(List<StockDeduction> deductions);
+
+  /**
+   * Lock those of the given batches that are still active and hold stock, skipping batches another
+   * transaction has locked ({@code FOR UPDATE SKIP LOCKED}). The locks are held until the
+   * surrounding transaction ends.
+   *
+   * @param batchIds batches to lock
+   * @return current quantity per locked batch; skipped and depleted batches are left out
+   */
+  Map<Long, Integer> lockAvailableSkippingLocked(List<Long> batchIds);
+
+  /**
+   * Give quantities back to batches with a single JDBC batch, e.g. when a reservation is released.
+   * A batch that was depleted to INACTIVE becomes ACTIVE again; EXPIRED batches stay expired.
+   *
+   * @param restorations quantities to add back, in the order the rows should be locked
+   */
+  void restoreQuantities(List<StockDeduction> restorations);
+
+  /**
+   * Move the next chunk of active batches that expired before {@code today} to EXPIRED, with one
+   * set-based update over the chunk's ID range. Call repeatedly until an empty list comes back.
+   *
+   * @param today first date on which a batch is still usable
+   * @param chunkSize maximum number of batches to expire
+   * @return expired batches, in batch ID order
+   */
+  List<ExpiredBatch> expireBatches(LocalDate today, int chunkSize);
+
+  /** Quantity to deduct from, or give back to, one batch */
+  record StockDeduction(Long batchId, int quantity) {}
+
+  /** Batch moved to EXPIRED by {@link #expireBatches(LocalDate, int)} */
+  record ExpiredBatch(Long batchId, Long productId) {}
+}
@@ -0,0 +1,114 @@
+package org.koerber.inventory.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/** JDBC implementation of {@link InventoryBatchRepositoryCustom} */
+@Repository
+@RequiredArgsConstructor
+public class InventoryBatchRepositoryCustomImpl implements InventoryBatchRepositoryCustom {
+
+  private static final String DEDUCT_SQL =
+      "UPDATE inventory_batches SET quantity = quantity - ?, "
+          + "status = CASE WHEN quantity = ? THEN 'INACTIVE' ELSE status END, "
+          + "version = version + 1, updated_at = CURRENT_TIMESTAMP "
+          + "WHERE id = ? AND status = 'ACTIVE' AND quantity >= ?";
+
+  private static final String RESTORE_SQL =
+      "UPDATE inventory_batches SET quantity = quantity + ?, "
+          + "status = CASE WHEN status = 'INACTIVE' AND quantity = 0 THEN 'ACTIVE' "
+          + "ELSE status END, "
+          + "version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+
+  /** Formatted with one placeholder per batch ID */
+  private static final String LOCK_SKIP_LOCKED_SQL =
+      "SELECT id, quantity FROM inventory_batches WHERE id IN (%s) "
+          + "AND status = 'ACTIVE' AND quantity > 0 FOR UPDATE SKIP LOCKED";
+
+  private static final String FIND_EXPIRED_SQL =
+      "SELECT id, product_id FROM inventory_batches "
+          + "WHERE status = 'ACTIVE' AND expiry_date < ? ORDER BY id LIMIT ?";
+
+  private static final String EXPIRE_SQL =
+      "UPDATE inventory_batches SET status = 'EXPIRED', version = version + 1, "
+          + "updated_at = CURRENT_TIMESTAMP "
+          + "WHERE id BETWEEN ? AND ? AND status = 'ACTIVE' AND expiry_date < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Override
+  public int[] deductQuantities(List<StockDeduction> deductions) {
+    if (deductions.isEmpty()) {
+      return new int[0];
+    }
+
+    int[][] counts =
+        jdbcTemplate.batchUpdate(
+            DEDUCT_SQL,
+            deductions,
+            deductions.size(),
+            (ps, deduction) -> {
+              ps.setInt(1, deduction.quantity());
+              ps.setInt(2, deduction.quantity());
+              ps.setLong(3, deduction.batchId());
+              ps.setInt(4, deduction.quantity());
+            });
+    return counts[0];
+  }
+
+  @Override
+  public Map<Long, Integer> lockAvailableSkippingLocked(List<Long> batchIds) {
+    if (batchIds.isEmpty()) {
+      return Map.of();
+    }
+
+    Map<Long, Integer> quantities = new HashMap<>();
+    RowCallbackHandler collect = rs -> quantities.put(rs.getLong("id"), rs.getInt("quantity"));
+    jdbcTemplate.query(
+        String.format(
+            LOCK_SKIP_LOCKED_SQL, String.join(", ", Collections.nCopies(batchIds.size(), "?"))),
+        collect,
+        batchIds.toArray());
+    return quantities;
+  }
+
+  @Override
+  public void restoreQuantities(List<StockDeduction> restorations) {
+    if (restorations.isEmpty()) {
+      return;
+    }
+    jdbcTemplate.batchUpdate(
+        RESTORE_SQL,
+        restorations,
+        restorations.size(),
+        (ps, restoration) -> {
+          ps.setInt(1, restoration.quantity());
+          ps.setLong(2, restoration.batchId());
+        });
+  }
+
+  @Override
+  public List<ExpiredBatch> expireBatches(LocalDate today, int chunkSize) {
+    Date cutoff = Date.valueOf(today);
+    List<ExpiredBatch> chunk =
+        jdbcTemplate.query(
+            FIND_EXPIRED_SQL,
+            (rs, rowNum) -> new ExpiredBatch(rs.getLong("id"), rs.getLong("product_id")),
+            cutoff,
+            chunkSize);
+    if (!chunk.isEmpty()) {
+      // The range holds no other expired active batches, or they would have been in the chunk
+      jdbcTemplate.update(
+          EXPIRE_SQL, chunk.get(0).batchId(), chunk.get(chunk.size() - 1).batchId(), cutoff);
+    }
+    return chunk;
+  }
+}
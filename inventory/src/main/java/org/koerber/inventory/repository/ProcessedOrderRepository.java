@@ -0,0 +1,33 @@
+package org.koerber.inventory.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import org.koerber.inventory.model.ProcessedOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** Repository for ProcessedOrder entity */
+@Repository
+public interface ProcessedOrderRepository extends JpaRepository<ProcessedOrder, Long> {
+
+  /**
+   * Find processed order by order ID
+   *
+   * @param orderId order ID of the inventory update
+   * @return Optional of ProcessedOrder
+   */
+  Optional<ProcessedOrder> findByOrderId(String orderId);
+
+  /**
+   * Delete processed orders recorded before a cutoff
+   *
+   * @param cutoff processing time before which records are deleted
+   * @return number of deleted records
+   */
+  @Modifying
+  @Query("DELETE FROM ProcessedOrder p WHERE p.processedAt < :cutoff")
+  int deleteProcessedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
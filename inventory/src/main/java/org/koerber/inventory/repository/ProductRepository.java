@@ -1,13 +1,18 @@
 package org.koerber.inventory.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.koerber.inventory.model.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /** Repository for Product entity */
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository
+    extends JpaRepository<Product, Long>, ProductRepositoryCustom {
 
   /**
    * Find product by product code
@@ -16,4 +21,23 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
    * @return Optional of Product
    */
   Optional<Product> findByProductCode(String productCode);
+
+  /**
+   * Find products by product codes
+   *
+   * @param productCodes unique product codes
+   * @return products found, in no particular order
+   */
+  List<Product> findByProductCodeIn(Collection<String> productCodes);
+
+  /**
+   * Read the maintained stock counter of a product by primary key, without loading the product
+   *
+   * @param productId product ID
+   * @return Optional of the counter
+   */
+  @Query(
+      "SELECT new org.koerber.inventory.repository.StockCounter("
+          + "p.id, p.availableQuantity, p.stockVersion) FROM Product p WHERE p.id = :productId")
+  Optional<StockCounter> findStockCounterById(@Param("productId") Long productId);
 }
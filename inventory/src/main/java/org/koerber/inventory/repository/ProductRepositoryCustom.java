@@ -0,0 +1,31 @@
+package org.koerber.inventory.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/** Set-based maintenance of the stock counters on {@code products} */
+public interface ProductRepositoryCustom {
+
+  /**
+   * Add to the available quantity of products and increment their stock version. Rows are
+   * updated in product ID order, so concurrent transactions lock them in the same order.
+   *
+   * @param deltas quantity change per product ID, negative for deductions
+   * @return available quantity per product ID after the change, as this transaction commits it
+   */
+  Map<Long, Integer> adjustAvailableQuantities(Map<Long, Integer> deltas);
+
+  /**
+   * Recompute the available quantity of products from their batches and increment their version
+   *
+   * @param productIds product IDs
+   */
+  void recalculateAvailableQuantities(Collection<Long> productIds);
+
+  /**
+   * Recompute the available quantity of every product whose counter drifted from its batches
+   *
+   * @return number of products repaired
+   */
+  int reconcileAvailableQuantities();
+}
@@ -0,0 +1,86 @@
+package org.koerber.inventory.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/** JDBC implementation of {@link ProductRepositoryCustom} */
+@Repository
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+  /** Same filter as {@link InventoryBatchRepository#findAvailableBatches(Long)} */
+  private static final String AVAILABLE_QUANTITY_SQL =
+      "(SELECT COALESCE(SUM(b.quantity), 0) FROM inventory_batches b "
+          + "WHERE b.product_id = products.id AND b.status = 'ACTIVE' AND b.quantity > 0)";
+
+  private static final String ADJUST_SQL =
+      "UPDATE products SET available_quantity = available_quantity + ?, "
+          + "stock_version = stock_version + 1 WHERE id = ?";
+
+  /** Formatted with one placeholder per product ID */
+  private static final String FIND_AVAILABLE_SQL =
+      "SELECT id, available_quantity FROM products WHERE id IN (%s)";
+
+  private static final String RECALCULATE_SQL =
+      "UPDATE products SET available_quantity = "
+          + AVAILABLE_QUANTITY_SQL
+          + ", stock_version = stock_version + 1 WHERE id = ?";
+
+  private static final String RECONCILE_SQL =
+      "UPDATE products SET available_quantity = "
+          + AVAILABLE_QUANTITY_SQL
+          + ", stock_version = stock_version + 1 WHERE available_quantity <> "
+          + AVAILABLE_QUANTITY_SQL;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Override
+  public Map<Long, Integer> adjustAvailableQuantities(Map<Long, Integer> deltas) {
+    if (deltas.isEmpty()) {
+      return Map.of();
+    }
+    List<Map.Entry<Long, Integer>> rows = new ArrayList<>(new TreeMap<>(deltas).entrySet());
+    jdbcTemplate.batchUpdate(
+        ADJUST_SQL,
+        rows,
+        rows.size(),
+        (ps, row) -> {
+          ps.setInt(1, row.getValue());
+          ps.setLong(2, row.getKey());
+        });
+
+    // The UPDATE holds the rows, so no other transaction can change them before this one commits
+    Map<Long, Integer> quantities = new HashMap<>();
+    RowCallbackHandler collect =
+        rs -> quantities.put(rs.getLong("id"), rs.getInt("available_quantity"));
+    jdbcTemplate.query(
+        String.format(FIND_AVAILABLE_SQL, String.join(", ", Collections.nCopies(rows.size(), "?"))),
+        collect,
+        deltas.keySet().toArray());
+    return quantities;
+  }
+
+  @Override
+  public void recalculateAvailableQuantities(Collection<Long> productIds) {
+    if (productIds.isEmpty()) {
+      return;
+    }
+    List<Long> sortedIds = productIds.stream().distinct().sorted().toList();
+    jdbcTemplate.batchUpdate(
+        RECALCULATE_SQL, sortedIds, sortedIds.size(), (ps, productId) -> ps.setLong(1, productId));
+  }
+
+  @Override
+  public int reconcileAvailableQuantities() {
+    return jdbcTemplate.update(RECONCILE_SQL);
+  }
+}
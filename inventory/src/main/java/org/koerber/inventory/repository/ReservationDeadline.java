@@ -0,0 +1,6 @@
+package org.koerber.inventory.repository;
+
+import java.time.LocalDateTime;
+
+/** Expiry time of a held reservation, enough to schedule it without loading its batches */
+public record ReservationDeadline(String reservationId, LocalDateTime expiresAt) {}
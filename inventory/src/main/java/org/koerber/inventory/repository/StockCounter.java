@@ -0,0 +1,10 @@
+package org.koerber.inventory.repository;
+
+/**
+ * Maintained stock counter of one product, read by primary key
+ *
+ * @param productId product ID
+ * @param availableQuantity quantity over active, non-expired batches
+ * @param stockVersion incremented with every change of the available quantity
+ */
+public record StockCounter(Long productId, Integer availableQuantity, Long stockVersion) {}
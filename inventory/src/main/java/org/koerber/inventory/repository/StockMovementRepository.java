@@ -0,0 +1,10 @@
+package org.koerber.inventory.repository;
+
+import org.koerber.inventory.model.StockMovement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/** Repository for StockMovement entity and the stock snapshots built from it */
+@Repository
+public interface StockMovementRepository
+    extends JpaRepository<StockMovement, Long>, StockMovementRepositoryCustom {}
@@ -0,0 +1,81 @@
+package org.koerber.inventory.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.koerber.inventory.enums.MovementType;
+
+/** JDBC-level operations on stock movements and snapshots */
+public interface StockMovementRepositoryCustom {
+
+  /**
+   * Append movements with a single JDBC batch
+   *
+   * @param movements movements to append
+   */
+  void append(List<NewMovement> movements);
+
+  /**
+   * Record a RECEIVED movement for every batch that has none, e.g. batches loaded by seed data. Its
+   * quantity is the current quantity less the movements already recorded for the batch, so it does
+   * not matter whether other startup jobs wrote movements first.
+   *
+   * @param occurredAt time of the movements
+   * @return number of batches received
+   */
+  int appendOpeningBalances(LocalDateTime occurredAt);
+
+  /**
+   * Count movements in a time range
+   *
+   * @param from inclusive lower bound, or null for no bound
+   * @param to exclusive upper bound
+   * @return number of movements
+   */
+  long countMovements(LocalDateTime from, LocalDateTime to);
+
+  /**
+   * Find the latest snapshot taken as of a time
+   *
+   * @param asOf time the snapshot must not be after
+   * @return latest snapshot at or before {@code asOf}
+   */
+  Optional<SnapshotRef> findLatestSnapshot(LocalDateTime asOf);
+
+  /**
+   * Fold the movements since the latest snapshot into a new snapshot, set-based
+   *
+   * @param asOf the snapshot covers the movements that occurred before this time
+   * @return new snapshot
+   */
+  SnapshotRef createSnapshot(LocalDateTime asOf);
+
+  /**
+   * Delete all but the latest snapshots
+   *
+   * @param retained number of snapshots to keep
+   * @return number of deleted snapshots
+   */
+  int deleteOldSnapshots(int retained);
+
+  /**
+   * Quantities of a product's batches as of a time: the nearest snapshot plus the movements after
+   * it. Batches without movements up to then are omitted.
+   *
+   * @param productId product ID
+   * @param snapshot snapshot to start from, or null to replay all movements
+   * @param asOf point in time, inclusive
+   * @return batch quantities in batch ID order
+   */
+  List<BatchQuantity> findQuantitiesAsOf(Long productId, SnapshotRef snapshot, LocalDateTime asOf);
+
+  /** Movement to append */
+  record NewMovement(
+      Long batchId, Long productId, MovementType type, int quantityDelta, String orderId) {}
+
+  /** Snapshot ID and the time it covers */
+  record SnapshotRef(Long id, LocalDateTime asOf) {}
+
+  /** Quantity of a batch at a point in time */
+  record BatchQuantity(Long batchId, String batchNumber, int quantity) {}
+}
@@ -0,0 +1,204 @@
+package org.koerber.inventory.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+/** JDBC implementation of {@link StockMovementRepositoryCustom} */
+@Repository
+@RequiredArgsConstructor
+public class StockMovementRepositoryCustomImpl implements StockMovementRepositoryCustom {
+
+  private static final String APPEND_SQL =
+      "INSERT INTO stock_movements "
+          + "(batch_id, product_id, type, quantity_delta, order_id, occurred_at) "
+          + "VALUES (?, ?, ?, ?, ?, ?)";
+
+  /**
+   * The balance is what the batch held before the movements already recorded for it, dated no later
+   * than the first of them, so batches swept or flushed before this ran still replay to their
+   * current quantity
+   */
+  private static final String APPEND_OPENING_BALANCES_SQL =
+      "INSERT INTO stock_movements "
+          + "(batch_id, product_id, type, quantity_delta, order_id, occurred_at) "
+          + "SELECT b.id, b.product_id, 'RECEIVED', "
+          + "b.quantity - COALESCE(SUM(m.quantity_delta), 0), NULL, "
+          + "COALESCE(MIN(m.occurred_at), ?) "
+          + "FROM inventory_batches b LEFT JOIN stock_movements m ON m.batch_id = b.id "
+          + "WHERE NOT EXISTS (SELECT 1 FROM stock_movements r "
+          + "WHERE r.batch_id = b.id AND r.type = 'RECEIVED') "
+          + "GROUP BY b.id, b.product_id, b.quantity";
+
+  private static final String COUNT_BEFORE_SQL =
+      "SELECT COUNT(*) FROM stock_movements WHERE occurred_at < ?";
+
+  private static final String COUNT_BETWEEN_SQL =
+      "SELECT COUNT(*) FROM stock_movements WHERE occurred_at >= ? AND occurred_at < ?";
+
+  private static final String LATEST_SNAPSHOT_SQL =
+      "SELECT id, as_of FROM stock_snapshots WHERE as_of <= ? ORDER BY as_of DESC LIMIT 1";
+
+  private static final String INSERT_SNAPSHOT_SQL =
+      "INSERT INTO stock_snapshots (as_of, created_at) VALUES (?, CURRENT_TIMESTAMP)";
+
+  /** Previous snapshot plus the movements after it, up to the new snapshot's time */
+  private static final String FOLD_SNAPSHOT_SQL =
+      "INSERT INTO stock_snapshot_quantities (snapshot_id, batch_id, product_id, quantity) "
+          + "SELECT ?, batch_id, product_id, SUM(quantity) FROM ("
+          + "SELECT batch_id, product_id, quantity FROM stock_snapshot_quantities "
+          + "WHERE snapshot_id = ? "
+          + "UNION ALL SELECT batch_id, product_id, quantity_delta FROM stock_movements "
+          + "WHERE occurred_at >= ? AND occurred_at < ?"
+          + ") t GROUP BY batch_id, product_id";
+
+  private static final String FIRST_SNAPSHOT_SQL =
+      "INSERT INTO stock_snapshot_quantities (snapshot_id, batch_id, product_id, quantity) "
+          + "SELECT ?, batch_id, product_id, SUM(quantity_delta) FROM stock_movements "
+          + "WHERE occurred_at < ? GROUP BY batch_id, product_id";
+
+  private static final String OLD_SNAPSHOTS_SQL =
+      "SELECT id FROM stock_snapshots ORDER BY as_of DESC OFFSET ? ROWS";
+
+  private static final String QUANTITIES_AS_OF_SNAPSHOT_SQL =
+      "SELECT t.batch_id, b.batch_number, SUM(t.quantity) AS quantity FROM ("
+          + "SELECT batch_id, quantity FROM stock_snapshot_quantities "
+          + "WHERE snapshot_id = ? AND product_id = ? "
+          + "UNION ALL SELECT batch_id, quantity_delta FROM stock_movements "
+          + "WHERE product_id = ? AND occurred_at >= ? AND occurred_at <= ?"
+          + ") t JOIN inventory_batches b ON b.id = t.batch_id "
+          + "GROUP BY t.batch_id, b.batch_number ORDER BY t.batch_id";
+
+  private static final String QUANTITIES_AS_OF_SQL =
+      "SELECT m.batch_id, b.batch_number, SUM(m.quantity_delta) AS quantity "
+          + "FROM stock_movements m JOIN inventory_batches b ON b.id = m.batch_id "
+          + "WHERE m.product_id = ? AND m.occurred_at <= ? "
+          + "GROUP BY m.batch_id, b.batch_number ORDER BY m.batch_id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Override
+  public void append(List<NewMovement> movements) {
+    if (movements.isEmpty()) {
+      return;
+    }
+    Timestamp occurredAt = Timestamp.valueOf(LocalDateTime.now());
+    jdbcTemplate.batchUpdate(
+        APPEND_SQL,
+        movements,
+        movements.size(),
+        (ps, movement) -> {
+          ps.setLong(1, movement.batchId());
+          ps.setLong(2, movement.productId());
+          ps.setString(3, movement.type().name());
+          ps.setInt(4, movement.quantityDelta());
+          ps.setString(5, movement.orderId());
+          ps.setTimestamp(6, occurredAt);
+        });
+  }
+
+  @Override
+  public int appendOpeningBalances(LocalDateTime occurredAt) {
+    return jdbcTemplate.update(APPEND_OPENING_BALANCES_SQL, Timestamp.valueOf(occurredAt));
+  }
+
+  @Override
+  public long countMovements(LocalDateTime from, LocalDateTime to) {
+    Long count =
+        from == null
+            ? jdbcTemplate.queryForObject(COUNT_BEFORE_SQL, Long.class, Timestamp.valueOf(to))
+            : jdbcTemplate.queryForObject(
+                COUNT_BETWEEN_SQL, Long.class, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    return count != null ? count : 0;
+  }
+
+  @Override
+  public Optional<SnapshotRef> findLatestSnapshot(LocalDateTime asOf) {
+    return jdbcTemplate
+        .query(
+            LATEST_SNAPSHOT_SQL,
+            (rs, rowNum) ->
+                new SnapshotRef(rs.getLong("id"), rs.getTimestamp("as_of").toLocalDateTime()),
+            Timestamp.valueOf(asOf))
+        .stream()
+        .findFirst();
+  }
+
+  @Override
+  public SnapshotRef createSnapshot(LocalDateTime asOf) {
+    SnapshotRef previous = findLatestSnapshot(asOf).orElse(null);
+
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    jdbcTemplate.update(
+        connection -> {
+          PreparedStatement ps =
+              connection.prepareStatement(INSERT_SNAPSHOT_SQL, new String[] {"id"});
+          ps.setTimestamp(1, Timestamp.valueOf(asOf));
+          return ps;
+        },
+        keyHolder);
+    long snapshotId = keyHolder.getKey().longValue();
+
+    if (previous == null) {
+      jdbcTemplate.update(FIRST_SNAPSHOT_SQL, snapshotId, Timestamp.valueOf(asOf));
+    } else {
+      jdbcTemplate.update(
+          FOLD_SNAPSHOT_SQL,
+          snapshotId,
+          previous.id(),
+          Timestamp.valueOf(previous.asOf()),
+          Timestamp.valueOf(asOf));
+    }
+    return new SnapshotRef(snapshotId, asOf);
+  }
+
+  @Override
+  public int deleteOldSnapshots(int retained) {
+    List<Long> snapshotIds = jdbcTemplate.queryForList(OLD_SNAPSHOTS_SQL, Long.class, retained);
+    if (snapshotIds.isEmpty()) {
+      return 0;
+    }
+    jdbcTemplate.batchUpdate(
+        "DELETE FROM stock_snapshot_quantities WHERE snapshot_id = ?",
+        snapshotIds,
+        snapshotIds.size(),
+        (ps, snapshotId) -> ps.setLong(1, snapshotId));
+    jdbcTemplate.batchUpdate(
+        "DELETE FROM stock_snapshots WHERE id = ?",
+        snapshotIds,
+        snapshotIds.size(),
+        (ps, snapshotId) -> ps.setLong(1, snapshotId));
+    return snapshotIds.size();
+  }
+
+  @Override
+  public List<BatchQuantity> findQuantitiesAsOf(
+      Long productId, SnapshotRef snapshot, LocalDateTime asOf) {
+    if (snapshot == null) {
+      return jdbcTemplate.query(
+          QUANTITIES_AS_OF_SQL, this::mapBatchQuantity, productId, Timestamp.valueOf(asOf));
+    }
+    return jdbcTemplate.query(
+        QUANTITIES_AS_OF_SNAPSHOT_SQL,
+        this::mapBatchQuantity,
+        snapshot.id(),
+        productId,
+        productId,
+        Timestamp.valueOf(snapshot.asOf()),
+        Timestamp.valueOf(asOf));
+  }
+
+  private BatchQuantity mapBatchQuantity(ResultSet rs, int rowNum) throws SQLException {
+    return new BatchQuantity(
+        rs.getLong("batch_id"), rs.getString("batch_number"), rs.getInt("quantity"));
+  }
+}
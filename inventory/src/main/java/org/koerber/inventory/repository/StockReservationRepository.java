@@ -0,0 +1,72 @@
+package org.koerber.inventory.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.koerber.inventory.enums.ReservationStatus;
+import org.koerber.inventory.model.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** Repository for StockReservation entity */
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+  /**
+   * Find reservation by reservation ID
+   *
+   * @param reservationId reservation ID handed out to the client
+   * @return Optional of StockReservation
+   */
+  Optional<StockReservation> findByReservationId(String reservationId);
+
+  /**
+   * Find the latest reservation of an order
+   *
+   * @param orderId order ID
+   * @return Optional of StockReservation
+   */
+  Optional<StockReservation> findFirstByOrderIdOrderByIdDesc(String orderId);
+
+  /**
+   * Find the deadlines of all held reservations, e.g. to schedule their expiry after a restart
+   *
+   * @return deadlines of held reservations
+   */
+  @Query(
+      "SELECT new org.koerber.inventory.repository.ReservationDeadline("
+          + "r.reservationId, r.expiresAt) FROM StockReservation r WHERE r.status = 'HELD'")
+  List<ReservationDeadline> findHeldDeadlines();
+
+  /**
+   * Move a held reservation to a final status. The status check makes this the single point where
+   * commit, release and expiry race: exactly one of them updates the row.
+   *
+   * @param reservationId reservation ID
+   * @param status COMMITTED or RELEASED
+   * @return 1 when the reservation was held, 0 otherwise
+   */
+  @Modifying
+  @Query(
+      "UPDATE StockReservation r SET r.status = :status, r.updatedAt = CURRENT_TIMESTAMP "
+          + "WHERE r.reservationId = :reservationId AND r.status = 'HELD'")
+  int finishHeld(
+      @Param("reservationId") String reservationId, @Param("status") ReservationStatus status);
+
+  /**
+   * Move a held reservation to EXPIRED once its deadline has passed
+   *
+   * @param reservationId reservation ID
+   * @param now current time
+   * @return 1 when the reservation was held and due, 0 otherwise
+   */
+  @Modifying
+  @Query(
+      "UPDATE StockReservation r SET r.status = 'EXPIRED', r.updatedAt = CURRENT_TIMESTAMP "
+          + "WHERE r.reservationId = :reservationId AND r.status = 'HELD' "
+          + "AND r.expiresAt <= :now")
+  int expireHeld(@Param("reservationId") String reservationId, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,16 @@
+package org.koerber.inventory.repository;
+
+/**
+ * Stock totals of one product, aggregated in SQL
+ *
+ * @param productId product ID
+ * @param totalQuantity quantity over all batches
+ * @param availableQuantity quantity over active, non-expired batches
+ */
+public record StockTotals(Long productId, Long totalQuantity, Long availableQuantity) {
+
+  /** Totals of a product without batches */
+  public static StockTotals empty(Long productId) {
+    return new StockTotals(productId, 0L, 0L);
+  }
+}
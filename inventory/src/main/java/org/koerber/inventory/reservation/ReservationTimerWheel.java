@@ -0,0 +1,103 @@
+package org.koerber.inventory.reservation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timer wheel for reservation deadlines. A deadline goes into the bucket of its tick, modulo
+ * the wheel size, so scheduling and cancelling are O(1) and each advance only looks at the buckets
+ * of the ticks that passed. Deadlines further away than one rotation share a bucket with nearer
+ * ones and are skipped until their round comes.
+ */
+public final class ReservationTimerWheel {
+
+  private final long tickMillis;
+  private final int mask;
+  private final List<List<Timeout>> buckets;
+  private final Map<String, Long> deadlines = new HashMap<>();
+  private long lastTick;
+
+  /**
+   * @param tickMillis time covered by one bucket
+   * @param wheelSize number of buckets, a power of two
+   * @param startMillis current time
+   */
+  public ReservationTimerWheel(long tickMillis, int wheelSize, long startMillis) {
+    if (tickMillis <= 0 || Integer.bitCount(wheelSize) != 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "tickMillis must be positive and wheelSize a power of two, got %d and %d",
+              tickMillis, wheelSize));
+    }
+    this.tickMillis = tickMillis;
+    this.mask = wheelSize - 1;
+    this.buckets = new ArrayList<>(wheelSize);
+    for (int i = 0; i < wheelSize; i++) {
+      buckets.add(new ArrayList<>());
+    }
+    this.lastTick = startMillis / tickMillis;
+  }
+
+  /**
+   * Schedule or reschedule the deadline of a reservation. Deadlines in the past fire on the next
+   * advance.
+   *
+   * @param reservationId reservation ID
+   * @param deadlineMillis deadline in epoch milliseconds
+   */
+  public synchronized void schedule(String reservationId, long deadlineMillis) {
+    long tick = Math.max(deadlineMillis / tickMillis, lastTick);
+    buckets.get((int) (tick & mask)).add(new Timeout(reservationId, deadlineMillis));
+    deadlines.put(reservationId, deadlineMillis);
+  }
+
+  /**
+   * Cancel the deadline of a reservation. Its bucket entry is dropped when the bucket is visited.
+   *
+   * @param reservationId reservation ID
+   */
+  public synchronized void cancel(String reservationId) {
+    deadlines.remove(reservationId);
+  }
+
+  /**
+   * Visit the buckets of all ticks up to now and take the reservations that are due
+   *
+   * @param nowMillis current time in epoch milliseconds
+   * @return IDs of reservations whose deadline passed, removed from the wheel
+   */
+  public synchronized List<String> advance(long nowMillis) {
+    long nowTick = nowMillis / tickMillis;
+    List<String> due = new ArrayList<>();
+    // The last visited bucket again, for deadlines scheduled in the past since; after a pause of
+    // more than one rotation every bucket is visited once
+    long fromTick = Math.max(lastTick, nowTick - mask);
+    for (long tick = fromTick; tick <= nowTick; tick++) {
+      Iterator<Timeout> timeouts = buckets.get((int) (tick & mask)).iterator();
+      while (timeouts.hasNext()) {
+        Timeout timeout = timeouts.next();
+        Long deadline = deadlines.get(timeout.reservationId());
+        if (deadline == null || deadline != timeout.deadlineMillis()) {
+          // Cancelled or rescheduled
+          timeouts.remove();
+        } else if (deadline <= nowMillis) {
+          timeouts.remove();
+          deadlines.remove(timeout.reservationId());
+          due.add(timeout.reservationId());
+        }
+      }
+    }
+    lastTick = Math.max(lastTick, nowTick);
+    return due;
+  }
+
+  /** Number of scheduled reservations */
+  public synchronized int size() {
+    return deadlines.size();
+  }
+
+  private record Timeout(String reservationId, long deadlineMillis) {}
+}
@@ -0,0 +1,94 @@
+package org.koerber.inventory.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.enums.MovementType;
+import org.koerber.inventory.ledger.StockLedger;
+import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustom.ExpiredBatch;
+import org.koerber.inventory.repository.ProductRepository;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom.NewMovement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves batches past their expiry date to EXPIRED, so availability queries can filter on status
+ * alone. Runs once at startup and then at day rollover, one transaction per chunk: each chunk is
+ * expired with a set-based update and the stock counters of its products are recalculated before
+ * it commits, together with an EXPIRED stock movement per batch. Committed batches are then no
+ * longer deducted from the ledger.
+ */
+@Component
+@Slf4j
+public class BatchExpirySweeper {
+
+  private final InventoryBatchRepository batchRepository;
+  private final ProductRepository productRepository;
+  private final StockMovementRepository movementRepository;
+  private final StockLedger stockLedger;
+  private final TransactionTemplate transactionTemplate;
+  private final int chunkSize;
+
+  public BatchExpirySweeper(
+      InventoryBatchRepository batchRepository,
+      ProductRepository productRepository,
+      StockMovementRepository movementRepository,
+      StockLedger stockLedger,
+      TransactionTemplate transactionTemplate,
+      @Value("${inventory.expiry-sweep.chunk-size:1000}") int chunkSize) {
+    this.batchRepository = batchRepository;
+    this.productRepository = productRepository;
+    this.movementRepository = movementRepository;
+    this.stockLedger = stockLedger;
+    this.transactionTemplate = transactionTemplate;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Expire every active batch whose expiry date lies before today
+   *
+   * @return number of batches moved to EXPIRED
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(cron = "${inventory.expiry-sweep.cron:0 0 0 * * *}")
+  public int sweep() {
+    LocalDate today = LocalDate.now();
+    int expired = 0;
+    List<ExpiredBatch> chunk;
+    do {
+      chunk = transactionTemplate.execute(status -> expireChunk(today));
+      if (stockLedger.isEnabled()) {
+        stockLedger.expire(chunk.stream().map(ExpiredBatch::batchId).toList());
+      }
+      expired += chunk.size();
+    } while (chunk.size() == chunkSize);
+
+    if (expired > 0) {
+      log.info("Moved {} batches that expired before {} to EXPIRED", expired, today);
+    } else {
+      log.debug("No batches expired before {}", today);
+    }
+    return expired;
+  }
+
+  private List<ExpiredBatch> expireChunk(LocalDate today) {
+    List<ExpiredBatch> chunk = batchRepository.expireBatches(today, chunkSize);
+    productRepository.recalculateAvailableQuantities(
+        chunk.stream().map(ExpiredBatch::productId).toList());
+    // Expiry changes availability, not quantity, so the movement carries no delta
+    movementRepository.append(
+        chunk.stream()
+            .map(
+                batch ->
+                    new NewMovement(
+                        batch.batchId(), batch.productId(), MovementType.EXPIRED, 0, null))
+            .toList());
+    return chunk;
+  }
+}
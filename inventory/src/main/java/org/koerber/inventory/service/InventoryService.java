@@ -1,8 +1,19 @@
 package org.koerber.inventory.service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.koerber.inventory.dto.BatchDTO;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.BatchPageResponse;
 import org.koerber.inventory.dto.InventoryResponse;
 import org.koerber.inventory.dto.InventoryUpdateRequest;
 import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.StockAsOfResponse;
+import org.koerber.inventory.dto.StockAvailabilityResponse;
 
 /** Service interface for inventory operations */
 public interface InventoryService {
@@ -15,6 +26,62 @@ public interface InventoryService {
    */
   InventoryResponse getInventoryByProduct(String productCode);
 
+  /**
+   * Get the entity tag of a product's current stock version. It changes whenever the product's
+   * stock changes, and is a primary key read: no batches are loaded. In ledger mode it also carries
+   * the product's ledger version, since live quantities run ahead of the stock counter.
+   *
+   * @param productCode product code
+   * @return unquoted strong entity tag
+   */
+  String getInventoryETag(String productCode);
+
+  /**
+   * Get a product's available quantity from its maintained stock counter, without reading batches
+   *
+   * @param productCode product code
+   * @return availability with low stock evaluation
+   */
+  StockAvailabilityResponse getAvailability(String productCode);
+
+  /**
+   * Get a product's batch quantities as they were at a point in time, replayed from the nearest
+   * stock snapshot taken at or before it plus the movements recorded since
+   *
+   * @param productCode product code
+   * @param asOf point in time, inclusive
+   * @return batch quantities at that time; batches without movements by then are left out
+   */
+  StockAsOfResponse getInventoryAsOf(String productCode, LocalDateTime asOf);
+
+  /**
+   * Get one page of a product's batches, all statuses included, ordered by batch ID
+   *
+   * @param productCode product code
+   * @param after batch ID the page starts after, null for the first page
+   * @param limit page size
+   * @return page of batches with the cursor of the next page
+   */
+  BatchPageResponse getBatchPage(String productCode, Long after, int limit);
+
+  /**
+   * Pass every batch of a product to a sink, in batch ID order, without holding them in memory
+   *
+   * @param productCode product code
+   * @param sink receives each batch as it is read
+   * @return number of batches passed to the sink
+   */
+  int streamBatches(String productCode, Consumer<BatchDTO> sink);
+
+  /**
+   * Get inventory details for several products at once. Products are resolved with one query and
+   * their batches with another; unknown product codes are left out of the result.
+   *
+   * @param productCodes product codes to look up
+   * @return inventory responses keyed by product code, in request order
+   */
+  Map<String, InventoryResponse> getInventoryByProducts(Collection<String> productCodes);
+
   /**
    * Update inventory by deducting quantity after an order is placed
    *
@@ -22,4 +89,47 @@ public interface InventoryService {
    * @return update response with deduction details
    */
   InventoryUpdateResponse updateInventory(InventoryUpdateRequest request);
+
+  /**
+   * Deduct inventory for several orders of one product in a single transaction: the batches are
+   * loaded once, the handler plans each order against the quantities the previous ones left, and
+   * all deductions are written with one JDBC batch. An order that cannot be served fails on its
+   * own; any other failure rolls back the whole group.
+   *
+   * @param productCode product code shared by all requests
+   * @param requests update requests, applied in order
+   * @return one outcome per request, in request order
+   */
+  List<DeductionOutcome> updateInventoryGroup(
+      String productCode, List<InventoryUpdateRequest> requests);
+
+  /**
+   * Deduct inventory for all lines of an order in a single transaction. Either every line is
+   * deducted or none is.
+   *
+   * @param request batch update request containing the order ID and its lines
+   * @return batch update response with per-line deduction details
+   */
+  BatchInventoryUpdateResponse updateInventoryBatch(BatchInventoryUpdateRequest request);
+
+  /**
+   * Give quantities back to the batches they were deducted from, e.g. when a reservation is
+   * released, and recalculate the product's stock counter
+   *
+   * @param productId product ID the batches belong to
+   * @param quantitiesByBatchId quantity to give back per batch ID
+   */
+  void restoreInventory(Long productId, Map<Long, Integer> quantitiesByBatchId);
+
+  /** Outcome of one request of a grouped update: its response, or the exception it failed with */
+  record DeductionOutcome(InventoryUpdateResponse response, RuntimeException failure) {
+
+    public static DeductionOutcome served(InventoryUpdateResponse response) {
+      return new DeductionOutcome(response, null);
+    }
+
+    public static DeductionOutcome failed(RuntimeException failure) {
+      return new DeductionOutcome(null, failure);
+    }
+  }
 }
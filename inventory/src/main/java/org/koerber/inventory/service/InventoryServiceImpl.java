@@ -1,26 +1,62 @@
 package org.koerber.inventory.service;
 
+import jakarta.persistence.EntityManager;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.cache.ProcessedOrderCache;
+import org.koerber.inventory.cache.ProductCache;
 import org.koerber.inventory.dto.BatchDTO;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.BatchPageResponse;
 import org.koerber.inventory.dto.InventoryResponse;
 import org.koerber.inventory.dto.InventoryUpdateRequest;
 import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.StockAsOfResponse;
+import org.koerber.inventory.dto.StockAvailabilityResponse;
+import org.koerber.inventory.enums.AllocationPolicy;
 import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.enums.MovementType;
+import org.koerber.inventory.exception.ConcurrentUpdateException;
 import org.koerber.inventory.exception.InsufficientStockException;
 import org.koerber.inventory.exception.ProductNotFoundException;
+import org.koerber.inventory.exception.StockConflictException;
 import org.koerber.inventory.factory.InventoryHandlerFactoryImpl;
 import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.ledger.ProductStock;
+import org.koerber.inventory.ledger.StockLedger;
 import org.koerber.inventory.model.InventoryBatch;
 import org.koerber.inventory.model.Product;
 import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustom;
 import org.koerber.inventory.repository.ProductRepository;
+import org.koerber.inventory.repository.StockCounter;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom;
+import org.koerber.inventory.repository.StockTotals;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /** Implementation of InventoryService */
 @Service
@@ -28,26 +64,206 @@ import org.springframework.transaction.annotation.Transactional;
 @RequiredArgsConstructor
 public class InventoryServiceImpl implements InventoryService {
 
+  /** Upper bound of product codes served by one bulk lookup */
+  static final int MAX_BULK_LOOKUP_SIZE = 500;
+
+  /** Upper bound of batches served by one page of the batch listing */
+  static final int MAX_BATCH_PAGE_SIZE = 1000;
+
+  private final EntityManager entityManager;
   private final ProductRepository productRepository;
+  private final ProductCache productCache;
   private final InventoryBatchRepository batchRepository;
   private final InventoryHandlerFactoryImpl handlerFactory;
+  private final StockLedger stockLedger;
+  private final ProcessedOrderCache processedOrderCache;
+  private final StockMovementRepository movementRepository;
 
   @Override
   @Transactional(readOnly = true)
   public InventoryResponse getInventoryByProduct(String productCode) {
     log.info("Getting inventory for product ID: {}", productCode);
 
-    Product product =
-        productRepository
-            .findByProductCode(productCode)
-            .orElseThrow(
-                () ->
-                    new ProductNotFoundException(
-                        "Product not found with productCode: " + productCode));
+    Product product = findProduct(productCode);
 
-    List<InventoryBatch> batches = batchRepository.findByProductId(product.getId());
+    List<InventoryBatch> batches = batchRepository.findBatchViewsByProductId(product.getId());
     log.debug("Found {} batches for product {}", batches.size(), productCode);
 
+    StockTotals totals;
+    if (stockLedger.isEnabled()) {
+      // The database lags behind the ledger's write-behind, so totals come from live quantities
+      stockLedger.applyLiveQuantities(batches);
+      totals = totalsOf(product.getId(), batches);
+    } else {
+      totals =
+          batchRepository.findStockTotalsByProductIds(List.of(product.getId())).stream()
+              .findFirst()
+              .orElse(StockTotals.empty(product.getId()));
+    }
+
+    return buildInventoryResponse(product, batches, totals);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public String getInventoryETag(String productCode) {
+    Product product = findProduct(productCode);
+    String etag = String.valueOf(findStockCounter(product).stockVersion());
+    // Ledger changes reach the stock counter only once they are flushed
+    return stockLedger.isEnabled() ? etag + "." + stockLedger.version(product.getId()) : etag;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public StockAvailabilityResponse getAvailability(String productCode) {
+    Product product = findProduct(productCode);
+    StockCounter counter = findStockCounter(product);
+
+    boolean lowStockWarning =
+        product.getMinimumStock() != null
+            && counter.availableQuantity() < product.getMinimumStock();
+
+    return StockAvailabilityResponse.builder()
+        .productCode(product.getProductCode())
+        .availableQuantity(counter.availableQuantity())
+        .minimumStock(product.getMinimumStock())
+        .lowStockWarning(lowStockWarning)
+        .stockVersion(counter.stockVersion())
+        .build();
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public StockAsOfResponse getInventoryAsOf(String productCode, LocalDateTime asOf) {
+    Product product = findProduct(productCode);
+
+    StockMovementRepositoryCustom.SnapshotRef snapshot =
+        movementRepository.findLatestSnapshot(asOf).orElse(null);
+    List<StockAsOfResponse.BatchQuantity> batches =
+        movementRepository.findQuantitiesAsOf(product.getId(), snapshot, asOf).stream()
+            .map(
+                batch ->
+                    StockAsOfResponse.BatchQuantity.builder()
+                        .batchId(batch.batchId())
+                        .batchNumber(batch.batchNumber())
+                        .quantity(batch.quantity())
+                        .build())
+            .collect(Collectors.toList());
+
+    return StockAsOfResponse.builder()
+        .productCode(product.getProductCode())
+        .asOf(asOf)
+        .snapshotAsOf(snapshot != null ? snapshot.asOf() : null)
+        .totalQuantity(
+            batches.stream().mapToInt(StockAsOfResponse.BatchQuantity::getQuantity).sum())
+        .batches(batches)
+        .build();
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public BatchPageResponse getBatchPage(String productCode, Long after, int limit) {
+    if (limit < 1 || limit > MAX_BATCH_PAGE_SIZE) {
+      throw new IllegalArgumentException(
+          String.format("limit must be between 1 and %d, got %d", MAX_BATCH_PAGE_SIZE, limit));
+    }
+    Product product = findProduct(productCode);
+
+    // One extra row tells whether another page follows
+    List<InventoryBatch> batches =
+        batchRepository.findByProductIdAndIdGreaterThanOrderByIdAsc(
+            product.getId(), after != null ? after : 0L, Limit.of(limit + 1));
+    boolean hasMore = batches.size() > limit;
+    List<InventoryBatch> page = hasMore ? batches.subList(0, limit) : batches;
+    if (stockLedger.isEnabled()) {
+      stockLedger.applyLiveQuantities(page);
+    }
+
+    return BatchPageResponse.builder()
+        .productCode(product.getProductCode())
+        .batches(page.stream().map(BatchDTO::convertToBatchDTO).collect(Collectors.toList()))
+        .limit(limit)
+        .nextAfter(hasMore ? page.get(page.size() - 1).getId() : null)
+        .build();
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public int streamBatches(String productCode, Consumer<BatchDTO> sink) {
+    Product product = findProduct(productCode);
+
+    int count = 0;
+    try (Stream<InventoryBatch> batches = batchRepository.streamByProductId(product.getId())) {
+      for (InventoryBatch batch : (Iterable<InventoryBatch>) batches::iterator) {
+        if (stockLedger.isEnabled()) {
+          stockLedger.applyLiveQuantities(List.of(batch));
+        }
+        sink.accept(BatchDTO.convertToBatchDTO(batch));
+        // Written batches are not needed anymore, keep the persistence context empty
+        entityManager.detach(batch);
+        count++;
+      }
+    }
+    log.debug("Streamed {} batches for product {}", count, productCode);
+    return count;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, InventoryResponse> getInventoryByProducts(Collection<String> productCodes) {
+    Set<String> uniqueCodes = new LinkedHashSet<>(productCodes);
+    if (uniqueCodes.size() > MAX_BULK_LOOKUP_SIZE) {
+      throw new IllegalArgumentException(
+          String.format(
+              "At most %d product codes can be looked up at once, got %d",
+              MAX_BULK_LOOKUP_SIZE, uniqueCodes.size()));
+    }
+    log.info("Getting inventory for {} products", uniqueCodes.size());
+
+    List<Product> products = productCache.findByProductCodeIn(uniqueCodes);
+    if (products.size() < uniqueCodes.size()) {
+      log.debug("{} product codes not found", uniqueCodes.size() - products.size());
+    }
+
+    List<Long> productIds = products.stream().map(Product::getId).collect(Collectors.toList());
+    List<InventoryBatch> batches =
+        productIds.isEmpty() ? List.of() : batchRepository.findByProductIdIn(productIds);
+    if (stockLedger.isEnabled()) {
+      stockLedger.applyLiveQuantities(batches);
+    }
+
+    // Product proxies are never initialised here: getId() is served from the foreign key
+    Map<Long, List<InventoryBatch>> batchesByProductId =
+        batches.stream().collect(Collectors.groupingBy(batch -> batch.getProduct().getId()));
+
+    // Runs on the request thread: the handlers are cheap next to the query, and fanning out to a
+    // shared pool would let one large lookup hold workers other requests need
+    Map<String, Product> productsByCode =
+        products.stream()
+            .collect(Collectors.toMap(Product::getProductCode, product -> product, (a, b) -> a));
+
+    // Answer in request order
+    Map<String, InventoryResponse> ordered = new LinkedHashMap<>();
+    for (String code : uniqueCodes) {
+      Product product = productsByCode.get(code);
+      if (product != null) {
+        ordered.put(
+            code,
+            buildInventoryResponse(
+                product, batchesByProductId.getOrDefault(product.getId(), List.of())));
+      }
+    }
+    return ordered;
+  }
+
+  /** Build the inventory response with totals summed over the given batches */
+  private InventoryResponse buildInventoryResponse(Product product, List<InventoryBatch> batches) {
+    return buildInventoryResponse(product, batches, totalsOf(product.getId(), batches));
+  }
+
+  /** Run the product's handler over its batches and build the inventory response */
+  private InventoryResponse buildInventoryResponse(
+      Product product, List<InventoryBatch> batches, StockTotals totals) {
     InventoryHandler handler = handlerFactory.getHandler(product.getHandlerType().name());
     log.debug("Using handler: {} for product {}", handler.getType(), product.getProductCode());
 
@@ -56,13 +272,8 @@ public class InventoryServiceImpl implements InventoryService {
     List<BatchDTO> batchDTOs =
         sortedBatches.stream().map(BatchDTO::convertToBatchDTO).collect(Collectors.toList());
 
-    int totalQuantity = batches.stream().mapToInt(InventoryBatch::getQuantity).sum();
-
-    int availableQuantity =
-        sortedBatches.stream()
-            .filter(InventoryBatch::isAvailable)
-            .mapToInt(InventoryBatch::getQuantity)
-            .sum();
+    int totalQuantity = totals.totalQuantity().intValue();
+    int availableQuantity = totals.availableQuantity().intValue();
 
     // Check low stock warning
     boolean lowStockWarning =
@@ -83,6 +294,20 @@ public class InventoryServiceImpl implements InventoryService {
         .build();
   }
 
+  /** Same totals as {@link InventoryBatchRepository#findStockTotalsByProductIds}, in memory */
+  private static StockTotals totalsOf(Long productId, List<InventoryBatch> batches) {
+    LocalDate today = LocalDate.now();
+    long totalQuantity = 0;
+    long availableQuantity = 0;
+    for (InventoryBatch batch : batches) {
+      totalQuantity += batch.getQuantity();
+      if (batch.isAvailable(today)) {
+        availableQuantity += batch.getQuantity();
+      }
+    }
+    return new StockTotals(productId, totalQuantity, availableQuantity);
+  }
+
   @Override
   @Transactional
   public InventoryUpdateResponse updateInventory(InventoryUpdateRequest request) {
@@ -92,56 +317,638 @@ public class InventoryServiceImpl implements InventoryService {
         request.getQuantityToDeduct(),
         request.getOrderId());
 
+    // A retried order is answered with its recorded response, without touching any batch
+    ProcessedOrderCache.ProcessedUpdate processed =
+        processedOrderCache.find(request.getOrderId()).orElse(null);
+    if (processed != null) {
+      return replay(processed, request);
+    }
+
     Product product =
-        productRepository
+        productCache
             .findByProductCode(request.getProductCode())
             .orElseThrow(
                 () ->
                     new ProductNotFoundException(
                         "Product not found with ID: " + request.getProductCode()));
 
-    List<InventoryBatch> availableBatches = batchRepository.findAvailableBatches(product.getId());
+    if (stockLedger.isEnabled()) {
+      // The write-behind recalculates the product's stock counter when it persists the batches
+      return updateInventoryFromLedger(product, request);
+    }
+
+    List<InventoryBatch> availableBatches =
+        batchRepository.findAvailableBatchViews(product.getId());
+
+    InventoryHandler handler = handlerFactory.getHandler(product.getHandlerType().name());
+
+    InventoryUpdateResponse response =
+        planDeduction(
+            product,
+            handler,
+            availableBatches,
+            request.getQuantityToDeduct(),
+            request.getOrderId(),
+            product.getAllocationPolicy() == AllocationPolicy.SKIP_LOCKED);
+
+    applyDeductions(product.getProductCode(), response.getBatchDeductions());
+    movementRepository.append(
+        deductedMovements(product.getId(), request.getOrderId(), response.getBatchDeductions()));
+    Map<Long, Integer> written =
+        productRepository.adjustAvailableQuantities(
+            Map.of(product.getId(), -request.getQuantityToDeduct()));
+    reportWrittenQuantity(written.get(product.getId()), List.of(response));
+    recordProcessed(request, response);
+
+    log.info(
+        "Inventory updated successfully. Remaining quantity: {}", response.getRemainingQuantity());
+    return response;
+  }
 
+  @Override
+  @Transactional
+  public List<DeductionOutcome> updateInventoryGroup(
+      String productCode, List<InventoryUpdateRequest> requests) {
+    if (stockLedger.isEnabled()) {
+      throw new IllegalStateException("Grouped updates are not used in ledger mode");
+    }
+    log.info("Updating inventory for {} orders of product {}", requests.size(), productCode);
+
+    Product product = findProduct(productCode);
     InventoryHandler handler = handlerFactory.getHandler(product.getHandlerType().name());
+    List<InventoryBatch> availableBatches =
+        batchRepository.findAvailableBatchViews(product.getId());
+
+    List<DeductionOutcome> outcomes = new ArrayList<>(requests.size());
+    Map<InventoryUpdateRequest, InventoryUpdateResponse> deducted = new LinkedHashMap<>();
+    Map<String, ProcessedOrderCache.ProcessedUpdate> processedInGroup = new HashMap<>();
+
+    for (InventoryUpdateRequest request : requests) {
+      try {
+        // An order queued twice within the group is answered like a retry
+        ProcessedOrderCache.ProcessedUpdate processed = processedInGroup.get(request.getOrderId());
+        if (processed == null) {
+          processed = processedOrderCache.find(request.getOrderId()).orElse(null);
+        }
+        if (processed != null) {
+          outcomes.add(DeductionOutcome.served(replay(processed, request)));
+          continue;
+        }
+
+        // Each order is planned against the quantities the previous ones left
+        InventoryUpdateResponse response =
+            planDeduction(
+                product,
+                handler,
+                availableBatches,
+                request.getQuantityToDeduct(),
+                request.getOrderId());
+        deducted.put(request, response);
+        processedInGroup.put(
+            request.getOrderId(),
+            new ProcessedOrderCache.ProcessedUpdate(
+                request.getProductCode(), request.getQuantityToDeduct(), response));
+        outcomes.add(DeductionOutcome.served(response));
+      } catch (InsufficientStockException | StockConflictException e) {
+        outcomes.add(DeductionOutcome.failed(e));
+      }
+    }
+
+    if (!deducted.isEmpty()) {
+      applyDeductions(
+          productCode,
+          mergeByBatch(
+              deducted.values().stream()
+                  .flatMap(response -> response.getBatchDeductions().stream())
+                  .collect(Collectors.toList())));
+      movementRepository.append(
+          deducted.values().stream()
+              .flatMap(
+                  response ->
+                      deductedMovements(
+                          product.getId(), response.getOrderId(), response.getBatchDeductions())
+                          .stream())
+              .collect(Collectors.toList()));
+      int groupQuantity =
+          deducted.keySet().stream().mapToInt(InventoryUpdateRequest::getQuantityToDeduct).sum();
+      Map<Long, Integer> written =
+          productRepository.adjustAvailableQuantities(Map.of(product.getId(), -groupQuantity));
+      reportWrittenQuantity(written.get(product.getId()), new ArrayList<>(deducted.values()));
+      try {
+        processedOrderCache.recordAll(deducted);
+      } catch (DataIntegrityViolationException e) {
+        throw new ConcurrentUpdateException(
+            productCode,
+            String.format(
+                "An order of the group for product %s is being processed concurrently",
+                productCode));
+      }
+    }
+
+    log.info(
+        "Inventory updated for {} of {} orders of product {}",
+        deducted.size(),
+        requests.size(),
+        productCode);
+    return outcomes;
+  }
+
+  @Override
+  @Transactional
+  public BatchInventoryUpdateResponse updateInventoryBatch(BatchInventoryUpdateRequest request) {
+    List<BatchInventoryUpdateRequest.Line> lines = request.getLines();
+    log.info("Updating inventory for order {} with {} lines", request.getOrderId(), lines.size());
+
+    // A retried order is answered with its recorded response, without touching any batch
+    ProcessedOrderCache.ProcessedBatchUpdate processed =
+        processedOrderCache.findBatch(request.getOrderId()).orElse(null);
+    if (processed != null) {
+      return replayBatch(processed, request);
+    }
+
+    Map<String, Product> productsByCode = findProductsByCode(lines);
+
+    // Lines are applied in product ID order so concurrent orders lock rows in the same order
+    List<Integer> lineOrder =
+        IntStream.range(0, lines.size())
+            .boxed()
+            .sorted(
+                Comparator.comparing(
+                    (Integer i) -> productsByCode.get(lines.get(i).getProductCode()).getId()))
+            .collect(Collectors.toList());
+
+    InventoryUpdateResponse[] results = new InventoryUpdateResponse[lines.size()];
+    Map<Long, List<ProductStock.Allocation>> taken = null;
+
+    if (stockLedger.isEnabled()) {
+      taken = updateInventoryBatchFromLedger(request, productsByCode, lineOrder, results);
+    } else {
+      Set<Long> productIds =
+          productsByCode.values().stream().map(Product::getId).collect(Collectors.toSet());
+      Map<Long, List<InventoryBatch>> batchesByProductId =
+          batchRepository.findAvailableBatchesByProductIds(productIds).stream()
+              .collect(Collectors.groupingBy(batch -> batch.getProduct().getId()));
+
+      List<InventoryUpdateResponse.BatchDeduction> allDeductions = new ArrayList<>();
+      List<StockMovementRepositoryCustom.NewMovement> movements = new ArrayList<>();
+      Map<Long, Integer> counterDeltas = new HashMap<>();
+      Map<Long, List<InventoryUpdateResponse>> responsesByProductId = new HashMap<>();
+
+      for (int index : lineOrder) {
+        BatchInventoryUpdateRequest.Line line = lines.get(index);
+        Product product = productsByCode.get(line.getProductCode());
+        InventoryHandler handler = handlerFactory.getHandler(product.getHandlerType().name());
 
-    List<InventoryBatch> sortedBatches = handler.sortAndFilterBatches(availableBatches);
+        results[index] =
+            planDeduction(
+                product,
+                handler,
+                batchesByProductId.getOrDefault(product.getId(), List.of()),
+                line.getQuantityToDeduct(),
+                request.getOrderId());
+        allDeductions.addAll(results[index].getBatchDeductions());
+        movements.addAll(
+            deductedMovements(
+                product.getId(), request.getOrderId(), results[index].getBatchDeductions()));
+        counterDeltas.merge(product.getId(), -line.getQuantityToDeduct(), Integer::sum);
+        responsesByProductId
+            .computeIfAbsent(product.getId(), productId -> new ArrayList<>())
+            .add(results[index]);
+      }
+
+      applyDeductions(null, allDeductions);
+      movementRepository.append(movements);
+      Map<Long, Integer> written = productRepository.adjustAvailableQuantities(counterDeltas);
+      responsesByProductId.forEach(
+          (productId, responses) -> reportWrittenQuantity(written.get(productId), responses));
+    }
+
+    BatchInventoryUpdateResponse response =
+        BatchInventoryUpdateResponse.builder()
+            .success(true)
+            .message("Inventory updated successfully")
+            .orderId(request.getOrderId())
+            .lines(Arrays.asList(results))
+            .timestamp(LocalDateTime.now())
+            .build();
+    if (taken == null || releaseOnRollback(taken)) {
+      recordProcessed(request, response);
+    } else {
+      try {
+        recordProcessed(request, response);
+      } catch (RuntimeException e) {
+        taken.forEach(stockLedger::release);
+        throw e;
+      }
+    }
+
+    log.info("Inventory updated successfully for order {}", request.getOrderId());
+    return response;
+  }
+
+  @Override
+  @Transactional
+  public void restoreInventory(Long productId, Map<Long, Integer> quantitiesByBatchId) {
+    log.info("Restoring {} batches of product {}", quantitiesByBatchId.size(), productId);
+
+    // The ledger takes back what it tracks once the transaction commits, so a release that rolls
+    // back gives nothing back; the write-behind recalculates the counter
+    Map<Long, Integer> untracked = quantitiesByBatchId;
+    if (stockLedger.isEnabled()) {
+      Map<Long, Integer> tracked = new HashMap<>();
+      untracked = new HashMap<>();
+      for (Map.Entry<Long, Integer> entry : quantitiesByBatchId.entrySet()) {
+        (stockLedger.isTracked(entry.getKey()) ? tracked : untracked)
+            .put(entry.getKey(), entry.getValue());
+      }
+      if (!tracked.isEmpty()) {
+        afterCommit(() -> restoreLedger(productId, tracked));
+      }
+    }
+    if (untracked.isEmpty()) {
+      return;
+    }
+
+    batchRepository.restoreQuantities(
+        untracked.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .map(
+                entry ->
+                    new InventoryBatchRepositoryCustom.StockDeduction(
+                        entry.getKey(), entry.getValue()))
+            .collect(Collectors.toList()));
+    movementRepository.append(
+        untracked.entrySet().stream()
+            .map(
+                entry ->
+                    new StockMovementRepositoryCustom.NewMovement(
+                        entry.getKey(), productId, MovementType.ADJUSTED, entry.getValue(), null))
+            .collect(Collectors.toList()));
+    // Recalculated rather than adjusted: quantity given back to an expired batch is not available
+    productRepository.recalculateAvailableQuantities(List.of(productId));
+  }
+
+  private void restoreLedger(Long productId, Map<Long, Integer> quantitiesByBatchId) {
+    Map<Long, Integer> untracked = stockLedger.restore(quantitiesByBatchId);
+    if (!untracked.isEmpty()) {
+      // Only reloading the product drops batches, and the ledger never reloads after startup
+      log.warn("Batches {} of product {} left the ledger, not restored", untracked, productId);
+    }
+  }
+
+  /** Run once the surrounding transaction committed, or right away without one */
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  private Product findProduct(String productCode) {
+    return productCache
+        .findByProductCode(productCode)
+        .orElseThrow(
+            () ->
+                new ProductNotFoundException("Product not found with productCode: " + productCode));
+  }
+
+  private StockCounter findStockCounter(Product product) {
+    return productRepository
+        .findStockCounterById(product.getId())
+        .orElseThrow(
+            () ->
+                new ProductNotFoundException(
+                    "Product not found with productCode: " + product.getProductCode()));
+  }
 
+  /** Resolve all products of a batch request with one query */
+  private Map<String, Product> findProductsByCode(List<BatchInventoryUpdateRequest.Line> lines) {
+    Set<String> productCodes =
+        lines.stream()
+            .map(BatchInventoryUpdateRequest.Line::getProductCode)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    Map<String, Product> productsByCode =
+        productCache.findByProductCodeIn(productCodes).stream()
+            .collect(Collectors.toMap(Product::getProductCode, product -> product));
+
+    for (String productCode : productCodes) {
+      if (!productsByCode.containsKey(productCode)) {
+        throw new ProductNotFoundException("Product not found with productCode: " + productCode);
+      }
+    }
+    return productsByCode;
+  }
+
+  /**
+   * Plan a deduction without writing anything. The handler picks batches with a top-k selection, so
+   * the full list is never sorted here. The planned quantities are applied to the in-memory
+   * batches, so a later line for the same product sees them; the batches are read-only entities or
+   * unmanaged views, so these changes are never flushed.
+   */
+  private InventoryUpdateResponse planDeduction(
+      Product product,
+      InventoryHandler handler,
+      List<InventoryBatch> availableBatches,
+      Integer quantityToDeduct,
+      String orderId) {
+    return planDeduction(product, handler, availableBatches, quantityToDeduct, orderId, false);
+  }
+
+  /**
+   * Plan a deduction, optionally claiming the batches first
+   *
+   * @param skipLocked lock the batches to deduct from, skipping those held by concurrent orders,
+   *     and plan against their current quantities; only for orders applied on their own
+   */
+  private InventoryUpdateResponse planDeduction(
+      Product product,
+      InventoryHandler handler,
+      List<InventoryBatch> availableBatches,
+      Integer quantityToDeduct,
+      String orderId,
+      boolean skipLocked) {
+
+    LocalDate today = LocalDate.now();
     int totalAvailable =
-        sortedBatches.stream()
-            .filter(InventoryBatch::isAvailable)
+        availableBatches.stream()
+            .filter(batch -> batch.isAvailable(today))
             .mapToInt(InventoryBatch::getQuantity)
             .sum();
 
-    if (totalAvailable < request.getQuantityToDeduct()) {
+    if (totalAvailable < quantityToDeduct) {
       String message =
           String.format(
               "Insufficient stock for product %s: requested=%d, available=%d",
-              request.getProductCode(), request.getQuantityToDeduct(), totalAvailable);
+              product.getProductCode(), quantityToDeduct, totalAvailable);
       throw new InsufficientStockException(message);
     }
 
+    // Locked batches carry their current quantities, and the handler selects among them
     List<InventoryBatch> selectedBatches =
-        handler.selectBatchesForDeduction(sortedBatches, request.getQuantityToDeduct());
+        handler.selectTopBatchesForDeduction(
+            skipLocked
+                ? lockSkippingLocked(product, handler, availableBatches, quantityToDeduct)
+                : availableBatches,
+            quantityToDeduct);
 
     List<InventoryUpdateResponse.BatchDeduction> batchDeductions =
-        deductFromBatches(selectedBatches, request.getQuantityToDeduct());
+        deductFromBatches(selectedBatches, quantityToDeduct);
+
+    return InventoryUpdateResponse.builder()
+        .success(true)
+        .message("Inventory updated successfully")
+        .productCode(product.getProductCode())
+        .orderId(orderId)
+        .quantityDeducted(quantityToDeduct)
+        .remainingQuantity(totalAvailable - quantityToDeduct)
+        .batchDeductions(batchDeductions)
+        .timestamp(LocalDateTime.now())
+        .build();
+  }
+
+  /**
+   * Lock batches until they cover the quantity, skipping batches that concurrent orders of the
+   * product hold, so those orders take different batches in parallel instead of queueing on the
+   * first one. The batches the handler would select come first, then the rest in handler order, so
+   * a handler whose selection is not a prefix of its order, like FEWEST_BATCHES, still gets its
+   * choice when nothing is held. Candidates are locked a few at a time, just enough to cover the
+   * rest by their last read quantity, so an order locks little more than it takes.
+   *
+   * @return locked batches, carrying their current quantity
+   */
+  private List<InventoryBatch> lockSkippingLocked(
+      Product product,
+      InventoryHandler handler,
+      List<InventoryBatch> availableBatches,
+      int quantityToDeduct) {
+    List<InventoryBatch> candidates =
+        new ArrayList<>(handler.selectTopBatchesForDeduction(availableBatches, quantityToDeduct));
+    Set<Long> preferredIds =
+        candidates.stream().map(InventoryBatch::getId).collect(Collectors.toSet());
+    for (InventoryBatch batch : handler.sortAndFilterBatches(availableBatches)) {
+      if (!preferredIds.contains(batch.getId())) {
+        candidates.add(batch);
+      }
+    }
+
+    List<InventoryBatch> locked = new ArrayList<>();
+    int lockedQuantity = 0;
+    int next = 0;
+    while (lockedQuantity < quantityToDeduct && next < candidates.size()) {
+      List<InventoryBatch> window = new ArrayList<>();
+      int windowQuantity = 0;
+      while (next < candidates.size() && lockedQuantity + windowQuantity < quantityToDeduct) {
+        InventoryBatch candidate = candidates.get(next++);
+        window.add(candidate);
+        windowQuantity += candidate.getQuantity();
+      }
+
+      Map<Long, Integer> lockedQuantities =
+          batchRepository.lockAvailableSkippingLocked(
+              window.stream().map(InventoryBatch::getId).toList());
+      for (InventoryBatch candidate : window) {
+        Integer quantity = lockedQuantities.get(candidate.getId());
+        if (quantity != null) {
+          candidate.setQuantity(quantity);
+          locked.add(candidate);
+          lockedQuantity += quantity;
+        }
+      }
+    }
+
+    if (lockedQuantity < quantityToDeduct) {
+      // Waiting for the held batches while holding others could deadlock; retry from scratch
+      throw new ConcurrentUpdateException(
+          product.getProductCode(),
+          String.format(
+              "Only %d of %d of product %s could be locked, the rest is held by concurrent orders",
+              lockedQuantity, quantityToDeduct, product.getProductCode()));
+    }
+    return locked;
+  }
+
+  /** Deduct against the in-memory ledger; batches are persisted later by the write-behind */
+  private InventoryUpdateResponse updateInventoryFromLedger(
+      Product product, InventoryUpdateRequest request) {
+
+    List<ProductStock.Allocation> allocations =
+        stockLedger.deduct(product.getId(), request.getQuantityToDeduct());
+
+    if (allocations == null) {
+      throw insufficientLedgerStock(product, request.getQuantityToDeduct());
+    }
+
+    InventoryUpdateResponse response =
+        buildLedgerResponse(
+            product, request.getQuantityToDeduct(), request.getOrderId(), allocations);
+    if (releaseOnRollback(Map.of(product.getId(), allocations))) {
+      recordProcessed(request, response);
+    } else {
+      try {
+        recordProcessed(request, response);
+      } catch (RuntimeException e) {
+        stockLedger.release(product.getId(), allocations);
+        throw e;
+      }
+    }
+
+    log.info(
+        "Inventory updated in ledger. Remaining quantity: {}", response.getRemainingQuantity());
+    return response;
+  }
+
+  /** Answer a repeated order with the response it got the first time */
+  private InventoryUpdateResponse replay(
+      ProcessedOrderCache.ProcessedUpdate processed, InventoryUpdateRequest request) {
+    if (!processed.matches(request)) {
+      throw new StockConflictException(
+          String.format(
+              "Order %s was already processed for %d of product %s",
+              request.getOrderId(), processed.quantity(), processed.productCode()));
+    }
+    log.info("Order {} was already processed, replaying its response", request.getOrderId());
+    return processed.response();
+  }
+
+  /** Answer a repeated multi-line order with the response it got the first time */
+  private BatchInventoryUpdateResponse replayBatch(
+      ProcessedOrderCache.ProcessedBatchUpdate processed, BatchInventoryUpdateRequest request) {
+    if (!processed.matches(request)) {
+      throw new StockConflictException(
+          String.format("Order %s was already processed for other lines", request.getOrderId()));
+    }
+    log.info("Order {} was already processed, replaying its response", request.getOrderId());
+    return processed.response();
+  }
+
+  /**
+   * Record the order in the update's transaction. A concurrent update for the same order fails on
+   * the unique order ID and rolls back; retrying it replays the update that won.
+   */
+  private void recordProcessed(InventoryUpdateRequest request, InventoryUpdateResponse response) {
+    try {
+      processedOrderCache.record(request, response);
+    } catch (DataIntegrityViolationException e) {
+      throw new ConcurrentUpdateException(
+          request.getProductCode(),
+          String.format("Order %s is being processed concurrently", request.getOrderId()));
+    }
+  }
+
+  /** Record a multi-line order in the update's transaction, like a single product update */
+  private void recordProcessed(
+      BatchInventoryUpdateRequest request, BatchInventoryUpdateResponse response) {
+    try {
+      processedOrderCache.recordBatch(request, response);
+    } catch (DataIntegrityViolationException e) {
+      throw new ConcurrentUpdateException(
+          null, String.format("Order %s is being processed concurrently", request.getOrderId()));
+    }
+  }
+
+  /**
+   * Deduct all lines against the ledger, giving everything back if one line cannot be served
+   *
+   * @return allocations taken, by product ID, which the caller gives back if the update fails
+   */
+  private Map<Long, List<ProductStock.Allocation>> updateInventoryBatchFromLedger(
+      BatchInventoryUpdateRequest request,
+      Map<String, Product> productsByCode,
+      List<Integer> lineOrder,
+      InventoryUpdateResponse[] results) {
+
+    Map<Long, List<ProductStock.Allocation>> taken = new LinkedHashMap<>();
+
+    for (int index : lineOrder) {
+      BatchInventoryUpdateRequest.Line line = request.getLines().get(index);
+      Product product = productsByCode.get(line.getProductCode());
 
-    int remainingQuantity = batchRepository.calculateTotalAvailableQuantity(product.getId());
+      List<ProductStock.Allocation> allocations =
+          stockLedger.deduct(product.getId(), line.getQuantityToDeduct());
+
+      if (allocations == null) {
+        taken.forEach(stockLedger::release);
+        throw insufficientLedgerStock(product, line.getQuantityToDeduct());
+      }
+
+      taken.computeIfAbsent(product.getId(), id -> new ArrayList<>()).addAll(allocations);
+      results[index] =
+          buildLedgerResponse(
+              product, line.getQuantityToDeduct(), request.getOrderId(), allocations);
+    }
+    return taken;
+  }
+
+  /**
+   * Give ledger allocations back if the surrounding transaction rolls back. The ledger is not part
+   * of the transaction, so a caller failing after the deduction, e.g. a reservation that cannot be
+   * saved, would otherwise keep the stock taken.
+   *
+   * @return false without transaction synchronization, when the caller has to give them back
+   */
+  private boolean releaseOnRollback(Map<Long, List<ProductStock.Allocation>> taken) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return false;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            if (status == STATUS_ROLLED_BACK) {
+              taken.forEach(stockLedger::release);
+            }
+          }
+        });
+    return true;
+  }
+
+  private InsufficientStockException insufficientLedgerStock(Product product, int quantity) {
+    return new InsufficientStockException(
+        String.format(
+            "Insufficient stock for product %s: requested=%d, available=%d",
+            product.getProductCode(), quantity, stockLedger.availableQuantity(product.getId())));
+  }
+
+  private InventoryUpdateResponse buildLedgerResponse(
+      Product product, int quantity, String orderId, List<ProductStock.Allocation> allocations) {
+
+    List<InventoryUpdateResponse.BatchDeduction> batchDeductions =
+        allocations.stream()
+            .map(
+                allocation ->
+                    InventoryUpdateResponse.BatchDeduction.builder()
+                        .batchId(allocation.batchId())
+                        .batchNumber(allocation.batchNumber())
+                        .quantityDeducted(allocation.quantity())
+                        .remainingQuantity(allocation.remainingQuantity())
+                        .newStatus(
+                            allocation.remainingQuantity() == 0
+                                ? BatchStatus.INACTIVE.name()
+                                : BatchStatus.ACTIVE.name())
+                        .build())
+            .collect(Collectors.toList());
 
-    log.info("Inventory updated successfully. Remaining quantity: {}", remainingQuantity);
     return InventoryUpdateResponse.builder()
         .success(true)
         .message("Inventory updated successfully")
-        .productCode(request.getProductCode())
-        .orderId(request.getOrderId())
-        .quantityDeducted(request.getQuantityToDeduct())
-        .remainingQuantity(remainingQuantity)
+        .productCode(product.getProductCode())
+        .orderId(orderId)
+        .quantityDeducted(quantity)
+        .remainingQuantity(stockLedger.availableQuantity(product.getId()))
         .batchDeductions(batchDeductions)
         .timestamp(LocalDateTime.now())
         .build();
   }
 
-  /** Deduct quantities from selected batches */
+  /** Split the quantity over the selected batches, in selection order */
   private List<InventoryUpdateResponse.BatchDeduction> deductFromBatches(
       List<InventoryBatch> batches, Integer totalQuantityToDeduct) {
 
@@ -155,19 +962,17 @@ public class InventoryServiceImpl implements InventoryService {
 
       int batchQuantity = batch.getQuantity();
       int deductFromThisBatch = Math.min(batchQuantity, remainingToDeduct);
+      int remainingInBatch = batchQuantity - deductFromThisBatch;
+      batch.setQuantity(remainingInBatch);
 
-      batch.setQuantity(batchQuantity - deductFromThisBatch);
+      BatchStatus newStatus = remainingInBatch == 0 ? BatchStatus.INACTIVE : BatchStatus.ACTIVE;
 
-      BatchStatus newStatus = batch.getQuantity() == 0 ? BatchStatus.INACTIVE : BatchStatus.ACTIVE;
-      batch.setStatus(newStatus);
-
-      batchRepository.save(batch);
       deductions.add(
           InventoryUpdateResponse.BatchDeduction.builder()
               .batchId(batch.getId())
               .batchNumber(batch.getBatchNumber())
               .quantityDeducted(deductFromThisBatch)
-              .remainingQuantity(batch.getQuantity())
+              .remainingQuantity(remainingInBatch)
               .newStatus(newStatus.name())
               .build());
 
@@ -176,9 +981,91 @@ public class InventoryServiceImpl implements InventoryService {
           "Deducted {} from batch {}. Remaining in batch: {}",
           deductFromThisBatch,
           batch.getBatchNumber(),
-          batch.getQuantity());
+          remainingInBatch);
     }
 
     return deductions;
   }
+
+  /**
+   * Write planned deductions as conditional UPDATEs in one JDBC batch. A batch that no longer holds
+   * enough stock aborts the whole transaction, so concurrent orders can never oversell.
+   *
+   * @param productCode product the batches belong to, null when they belong to several
+   */
+  private void applyDeductions(
+      String productCode, List<InventoryUpdateResponse.BatchDeduction> deductions) {
+    int[] updatedRows =
+        batchRepository.deductQuantities(
+            deductions.stream()
+                .map(
+                    deduction ->
+                        new InventoryBatchRepositoryCustom.StockDeduction(
+                            deduction.getBatchId(), deduction.getQuantityDeducted()))
+                .collect(Collectors.toList()));
+
+    for (int i = 0; i < updatedRows.length; i++) {
+      if (updatedRows[i] == 0) {
+        InventoryUpdateResponse.BatchDeduction deduction = deductions.get(i);
+        throw new ConcurrentUpdateException(
+            productCode,
+            String.format(
+                "Batch %s was modified concurrently, could not deduct %d",
+                deduction.getBatchNumber(), deduction.getQuantityDeducted()));
+      }
+    }
+  }
+
+  /**
+   * Report the available quantity the product counter was written with. Plans are made from batch
+   * views read without locks, so another order may have changed the product's stock in between;
+   * each response is moved by the counter's difference to the last plan.
+   *
+   * @param written counter value after this transaction's adjustment, or null if not known
+   * @param responses responses of one product, in the order they were planned
+   */
+  private static void reportWrittenQuantity(
+      Integer written, List<InventoryUpdateResponse> responses) {
+    if (written == null || responses.isEmpty()) {
+      return;
+    }
+    int shift = written - responses.get(responses.size() - 1).getRemainingQuantity();
+    responses.forEach(
+        response -> response.setRemainingQuantity(response.getRemainingQuantity() + shift));
+  }
+
+  /** One deduction per batch, in batch ID order, so a batch shared by orders is written once */
+  private static List<InventoryUpdateResponse.BatchDeduction> mergeByBatch(
+      List<InventoryUpdateResponse.BatchDeduction> deductions) {
+    Map<Long, InventoryUpdateResponse.BatchDeduction> merged = new TreeMap<>();
+    for (InventoryUpdateResponse.BatchDeduction deduction : deductions) {
+      merged.merge(
+          deduction.getBatchId(),
+          deduction,
+          (earlier, later) ->
+              InventoryUpdateResponse.BatchDeduction.builder()
+                  .batchId(later.getBatchId())
+                  .batchNumber(later.getBatchNumber())
+                  .quantityDeducted(earlier.getQuantityDeducted() + later.getQuantityDeducted())
+                  .remainingQuantity(later.getRemainingQuantity())
+                  .newStatus(later.getNewStatus())
+                  .build());
+    }
+    return new ArrayList<>(merged.values());
+  }
+
+  /** Movements recording planned deductions, written in the same transaction as the batches */
+  private List<StockMovementRepositoryCustom.NewMovement> deductedMovements(
+      Long productId, String orderId, List<InventoryUpdateResponse.BatchDeduction> deductions) {
+    return deductions.stream()
+        .map(
+            deduction ->
+                new StockMovementRepositoryCustom.NewMovement(
+                    deduction.getBatchId(),
+                    productId,
+                    MovementType.DEDUCTED,
+                    -deduction.getQuantityDeducted(),
+                    orderId))
+        .collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,33 @@
+package org.koerber.inventory.service;
+
+import org.koerber.inventory.dto.ReservationRequest;
+import org.koerber.inventory.dto.ReservationResponse;
+
+/** Service interface for two-phase stock reservations */
+public interface ReservationService {
+
+  /**
+   * Hold stock for an order. The quantity is taken from the batches the product's handler selects
+   * and is no longer available to others until the reservation is released or expires.
+   *
+   * @param request reservation request containing product code, quantity, order ID and TTL
+   * @return reservation with its ID, deadline and held batches
+   */
+  ReservationResponse reserve(ReservationRequest request);
+
+  /**
+   * Make a held reservation final; the held stock stays deducted
+   *
+   * @param reservationId reservation ID
+   * @return committed reservation
+   */
+  ReservationResponse commit(String reservationId);
+
+  /**
+   * Give the stock of a held reservation back to its batches
+   *
+   * @param reservationId reservation ID
+   * @return released reservation
+   */
+  ReservationResponse release(String reservationId);
+}
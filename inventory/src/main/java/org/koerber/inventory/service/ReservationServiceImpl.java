@@ -0,0 +1,309 @@
+package org.koerber.inventory.service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.cache.ProcessedOrderCache;
+import org.koerber.inventory.cache.ProductCache;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.ReservationRequest;
+import org.koerber.inventory.dto.ReservationResponse;
+import org.koerber.inventory.enums.ReservationStatus;
+import org.koerber.inventory.exception.ProductNotFoundException;
+import org.koerber.inventory.exception.ReservationNotFoundException;
+import org.koerber.inventory.exception.StockConflictException;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.model.ReservedBatch;
+import org.koerber.inventory.model.StockReservation;
+import org.koerber.inventory.repository.ReservationDeadline;
+import org.koerber.inventory.repository.StockReservationRepository;
+import org.koerber.inventory.reservation.ReservationTimerWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Implementation of ReservationService. Reserving deducts through {@link InventoryService}, so
+ * held stock is simply not available; releasing and expiry give it back to the same batches. Held
+ * reservations are persisted in {@code stock_reservations} and their deadlines are kept in a
+ * {@link ReservationTimerWheel}, rebuilt from the table on startup. Each instance expires the
+ * reservations it created or found at startup.
+ */
+@Service
+@Slf4j
+public class ReservationServiceImpl implements ReservationService {
+
+  private final InventoryService inventoryService;
+  private final ProductCache productCache;
+  private final ProcessedOrderCache processedOrderCache;
+  private final StockReservationRepository reservationRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final Clock clock;
+  private final int defaultTtlSeconds;
+  private final int maxTtlSeconds;
+  private final ReservationTimerWheel timerWheel;
+
+  @Autowired
+  public ReservationServiceImpl(
+      InventoryService inventoryService,
+      ProductCache productCache,
+      ProcessedOrderCache processedOrderCache,
+      StockReservationRepository reservationRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${inventory.reservation.default-ttl-seconds:300}") int defaultTtlSeconds,
+      @Value("${inventory.reservation.max-ttl-seconds:3600}") int maxTtlSeconds,
+      @Value("${inventory.reservation.tick-ms:1000}") long tickMillis,
+      @Value("${inventory.reservation.wheel-size:512}") int wheelSize) {
+    this(
+        inventoryService,
+        productCache,
+        processedOrderCache,
+        reservationRepository,
+        transactionTemplate,
+        Clock.systemDefaultZone(),
+        defaultTtlSeconds,
+        maxTtlSeconds,
+        tickMillis,
+        wheelSize);
+  }
+
+  ReservationServiceImpl(
+      InventoryService inventoryService,
+      ProductCache productCache,
+      ProcessedOrderCache processedOrderCache,
+      StockReservationRepository reservationRepository,
+      TransactionTemplate transactionTemplate,
+      Clock clock,
+      int defaultTtlSeconds,
+      int maxTtlSeconds,
+      long tickMillis,
+      int wheelSize) {
+    this.inventoryService = inventoryService;
+    this.productCache = productCache;
+    this.processedOrderCache = processedOrderCache;
+    this.reservationRepository = reservationRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.clock = clock;
+    this.defaultTtlSeconds = defaultTtlSeconds;
+    this.maxTtlSeconds = maxTtlSeconds;
+    this.timerWheel = new ReservationTimerWheel(tickMillis, wheelSize, clock.millis());
+  }
+
+  @Override
+  @Transactional
+  public ReservationResponse reserve(ReservationRequest request) {
+    int ttlSeconds =
+        request.getTtlSeconds() != null ? request.getTtlSeconds() : defaultTtlSeconds;
+    if (ttlSeconds < 1 || ttlSeconds > maxTtlSeconds) {
+      throw new IllegalArgumentException(
+          String.format("ttlSeconds must be between 1 and %d, got %d", maxTtlSeconds, ttlSeconds));
+    }
+    log.info(
+        "Reserving {} of product {} for order {}",
+        request.getQuantity(),
+        request.getProductCode(),
+        request.getOrderId());
+
+    // A retried reservation gets the one already made for the order, whatever its status now
+    StockReservation existing =
+        reservationRepository.findFirstByOrderIdOrderByIdDesc(request.getOrderId()).orElse(null);
+    if (existing != null) {
+      if (!existing.getProductCode().equals(request.getProductCode())
+          || !existing.getQuantity().equals(request.getQuantity())) {
+        throw new StockConflictException(
+            String.format(
+                "Order %s already reserved %d of product %s",
+                request.getOrderId(), existing.getQuantity(), existing.getProductCode()));
+      }
+      return toResponse(existing, null);
+    }
+    // Deducted by an inventory update rather than a reservation: replaying that deduction would
+    // hold nothing, and releasing the reservation would add stock that was never taken
+    if (processedOrderCache.contains(request.getOrderId())) {
+      throw new StockConflictException(
+          String.format(
+              "Order %s was already deducted by an inventory update", request.getOrderId()));
+    }
+
+    Product product =
+        productCache
+            .findByProductCode(request.getProductCode())
+            .orElseThrow(
+                () ->
+                    new ProductNotFoundException(
+                        "Product not found with productCode: " + request.getProductCode()));
+
+    InventoryUpdateResponse deduction =
+        inventoryService.updateInventory(
+            InventoryUpdateRequest.builder()
+                .productCode(product.getProductCode())
+                .quantityToDeduct(request.getQuantity())
+                .orderId(request.getOrderId())
+                .build());
+
+    StockReservation reservation =
+        reservationRepository.save(
+            StockReservation.builder()
+                .reservationId(UUID.randomUUID().toString())
+                .orderId(request.getOrderId())
+                .productId(product.getId())
+                .productCode(product.getProductCode())
+                .quantity(request.getQuantity())
+                .expiresAt(LocalDateTime.now(clock).plusSeconds(ttlSeconds))
+                .batches(
+                    deduction.getBatchDeductions().stream()
+                        .map(
+                            batch ->
+                                ReservedBatch.builder()
+                                    .batchId(batch.getBatchId())
+                                    .batchNumber(batch.getBatchNumber())
+                                    .quantity(batch.getQuantityDeducted())
+                                    .build())
+                        .collect(Collectors.toList()))
+                .build());
+
+    String reservationId = reservation.getReservationId();
+    long deadlineMillis = toMillis(reservation.getExpiresAt());
+    afterCommit(() -> timerWheel.schedule(reservationId, deadlineMillis));
+
+    log.info("Reservation {} held until {}", reservationId, reservation.getExpiresAt());
+    return toResponse(reservation, deduction.getRemainingQuantity());
+  }
+
+  @Override
+  @Transactional
+  public ReservationResponse commit(String reservationId) {
+    if (reservationRepository.finishHeld(reservationId, ReservationStatus.COMMITTED) == 0) {
+      throw notHeld(reservationId);
+    }
+    afterCommit(() -> timerWheel.cancel(reservationId));
+
+    log.info("Reservation {} committed", reservationId);
+    return toResponse(findReservation(reservationId), null);
+  }
+
+  @Override
+  @Transactional
+  public ReservationResponse release(String reservationId) {
+    if (reservationRepository.finishHeld(reservationId, ReservationStatus.RELEASED) == 0) {
+      throw notHeld(reservationId);
+    }
+    StockReservation reservation = findReservation(reservationId);
+    restore(reservation);
+    afterCommit(() -> timerWheel.cancel(reservationId));
+
+    log.info("Reservation {} released", reservationId);
+    return toResponse(reservation, null);
+  }
+
+  /** Schedule the held reservations found in the table, e.g. after a restart */
+  @EventListener(ApplicationReadyEvent.class)
+  public void scheduleHeldReservations() {
+    List<ReservationDeadline> deadlines = reservationRepository.findHeldDeadlines();
+    deadlines.forEach(
+        deadline -> timerWheel.schedule(deadline.reservationId(), toMillis(deadline.expiresAt())));
+    log.info("Scheduled expiry of {} held reservations", deadlines.size());
+  }
+
+  /** Expire the reservations whose deadline passed, one transaction each */
+  @Scheduled(fixedDelayString = "${inventory.reservation.tick-ms:1000}")
+  public void expireDue() {
+    for (String reservationId : timerWheel.advance(clock.millis())) {
+      try {
+        transactionTemplate.executeWithoutResult(status -> expire(reservationId));
+      } catch (RuntimeException e) {
+        log.error("Failed to expire reservation {}: {}", reservationId, e.getMessage());
+        // Retried on the next tick
+        timerWheel.schedule(reservationId, clock.millis());
+      }
+    }
+  }
+
+  private void expire(String reservationId) {
+    if (reservationRepository.expireHeld(reservationId, LocalDateTime.now(clock)) == 0) {
+      // Committed or released in the meantime
+      return;
+    }
+    restore(findReservation(reservationId));
+    log.info("Reservation {} expired", reservationId);
+  }
+
+  private void restore(StockReservation reservation) {
+    Map<Long, Integer> quantitiesByBatchId = new LinkedHashMap<>();
+    reservation
+        .getBatches()
+        .forEach(
+            batch ->
+                quantitiesByBatchId.merge(batch.getBatchId(), batch.getQuantity(), Integer::sum));
+    inventoryService.restoreInventory(reservation.getProductId(), quantitiesByBatchId);
+  }
+
+  private StockReservation findReservation(String reservationId) {
+    return reservationRepository
+        .findByReservationId(reservationId)
+        .orElseThrow(
+            () -> new ReservationNotFoundException("Reservation not found: " + reservationId));
+  }
+
+  /** Not found, or no longer held because it was committed, released or expired */
+  private RuntimeException notHeld(String reservationId) {
+    StockReservation reservation = findReservation(reservationId);
+    return new StockConflictException(
+        String.format("Reservation %s is already %s", reservationId, reservation.getStatus()));
+  }
+
+  /** Run once the surrounding transaction committed, or right away without one */
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  private long toMillis(LocalDateTime dateTime) {
+    return dateTime.atZone(clock.getZone()).toInstant().toEpochMilli();
+  }
+
+  private static ReservationResponse toResponse(
+      StockReservation reservation, Integer remainingQuantity) {
+    return ReservationResponse.builder()
+        .reservationId(reservation.getReservationId())
+        .orderId(reservation.getOrderId())
+        .productCode(reservation.getProductCode())
+        .quantity(reservation.getQuantity())
+        .status(reservation.getStatus().name())
+        .expiresAt(reservation.getExpiresAt())
+        .remainingQuantity(remainingQuantity)
+        .batches(
+            reservation.getBatches().stream()
+                .map(
+                    batch ->
+                        ReservationResponse.ReservedBatch.builder()
+                            .batchId(batch.getBatchId())
+                            .batchNumber(batch.getBatchNumber())
+                            .quantity(batch.getQuantity())
+                            .build())
+                .collect(Collectors.toList()))
+        .build();
+  }
+}
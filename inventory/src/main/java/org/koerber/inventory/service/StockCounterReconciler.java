@@ -0,0 +1,35 @@
+package org.koerber.inventory.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.repository.ProductRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repairs drift between the maintained stock counters on products and their batches. Drift comes
+ * from batches written outside the service, such as seed data; expiry is accounted for by {@link
+ * BatchExpirySweeper}. Runs once at startup and then on a fixed schedule.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockCounterReconciler {
+
+  private final ProductRepository productRepository;
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(cron = "${inventory.stock-counter.reconcile-cron:0 */10 * * * *}")
+  @Transactional
+  public void reconcile() {
+    int repaired = productRepository.reconcileAvailableQuantities();
+    if (repaired > 0) {
+      log.warn("Repaired drifted stock counters of {} products", repaired);
+    } else {
+      log.debug("Stock counters are consistent with batches");
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.koerber.inventory.service;
+
+import java.time.LocalDateTime;
+import lombok.extern.slf4j.Slf4j;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom.SnapshotRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Folds stock movements into snapshots of every batch's quantity, so an as-of query replays at
+ * most {@code snapshot-every} movements on top of the nearest snapshot. A snapshot is taken once
+ * that many movements were recorded since the previous one; only the newest {@code
+ * retained-snapshots} are kept.
+ *
+ * <p>Snapshots are cut at a time {@code settle-seconds} in the past rather than now: movements are
+ * stamped before their transaction commits, and one still committing must not land behind a
+ * snapshot that already covers its time.
+ */
+@Component
+@Slf4j
+public class StockSnapshotter {
+
+  private final StockMovementRepository movementRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final long snapshotEvery;
+  private final long settleSeconds;
+  private final int retainedSnapshots;
+
+  public StockSnapshotter(
+      StockMovementRepository movementRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${inventory.stock-movements.snapshot-every:100000}") long snapshotEvery,
+      @Value("${inventory.stock-movements.settle-seconds:60}") long settleSeconds,
+      @Value("${inventory.stock-movements.retained-snapshots:10}") int retainedSnapshots) {
+    this.movementRepository = movementRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.snapshotEvery = snapshotEvery;
+    this.settleSeconds = settleSeconds;
+    this.retainedSnapshots = retainedSnapshots;
+  }
+
+  /**
+   * Record the opening balance of batches never received, such as seed data, so replaying
+   * movements accounts for every batch
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void recordOpeningBalances() {
+    Integer recorded =
+        transactionTemplate.execute(
+            status -> movementRepository.appendOpeningBalances(LocalDateTime.now()));
+    if (recorded != null && recorded > 0) {
+      log.info("Recorded opening balances of {} batches as stock movements", recorded);
+    }
+  }
+
+  /**
+   * Take a snapshot if enough movements were recorded since the previous one
+   *
+   * @return the new snapshot, null if none was due
+   */
+  @Scheduled(fixedDelayString = "${inventory.stock-movements.check-interval-ms:60000}")
+  public SnapshotRef snapshotIfDue() {
+    LocalDateTime asOf = LocalDateTime.now().minusSeconds(settleSeconds);
+    return transactionTemplate.execute(
+        status -> {
+          LocalDateTime previous =
+              movementRepository.findLatestSnapshot(asOf).map(SnapshotRef::asOf).orElse(null);
+          long movements = movementRepository.countMovements(previous, asOf);
+          if (movements < snapshotEvery) {
+            log.debug("{} stock movements since the last snapshot, none due", movements);
+            return null;
+          }
+
+          SnapshotRef snapshot = movementRepository.createSnapshot(asOf);
+          int deleted = movementRepository.deleteOldSnapshots(retainedSnapshots);
+          log.info(
+              "Stock snapshot {} taken as of {} over {} movements, {} old snapshots deleted",
+              snapshot.id(),
+              asOf,
+              movements,
+              deleted);
+          return snapshot;
+        });
+  }
+}
@@ -0,0 +1,167 @@
+package org.koerber.inventory.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.model.ProcessedOrder;
+import org.koerber.inventory.repository.ProcessedOrderRepository;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.databind.json.JsonMapper;
+
+@ExtendWith(MockitoExtension.class)
+class ProcessedOrderCacheTest {
+
+  @Mock private ProcessedOrderRepository processedOrderRepository;
+
+  private final JsonMapper jsonMapper = JsonMapper.builder().build();
+  private ProcessedOrderCache processedOrderCache;
+
+  @BeforeEach
+  void setUp() {
+    processedOrderCache = new ProcessedOrderCache(processedOrderRepository, jsonMapper, 1, 7);
+  }
+
+  @Test
+  void record_StoresResponseAndServesRepeatsFromMemory() {
+    InventoryUpdateRequest request = request("ORDER-1");
+    InventoryUpdateResponse response = response("ORDER-1");
+
+    processedOrderCache.record(request, response);
+
+    ArgumentCaptor<ProcessedOrder> saved = ArgumentCaptor.forClass(ProcessedOrder.class);
+    verify(processedOrderRepository).saveAndFlush(saved.capture());
+    assertThat(saved.getValue().getOrderId()).isEqualTo("ORDER-1");
+    assertThat(saved.getValue().getQuantity()).isEqualTo(5);
+
+    assertThat(processedOrderCache.find("ORDER-1"))
+        .hasValueSatisfying(update -> assertThat(update.response()).isSameAs(response));
+    verify(processedOrderRepository, never()).findByOrderId(anyString());
+  }
+
+  @Test
+  void find_EvictedOrderIsReadBackFromTable() {
+    InventoryUpdateResponse response = response("ORDER-1");
+    processedOrderCache.record(request("ORDER-1"), response);
+    ArgumentCaptor<ProcessedOrder> saved = ArgumentCaptor.forClass(ProcessedOrder.class);
+    verify(processedOrderRepository).saveAndFlush(saved.capture());
+    // Evicts ORDER-1, the cache holds one entry
+    processedOrderCache.record(request("ORDER-2"), response("ORDER-2"));
+    when(processedOrderRepository.findByOrderId("ORDER-1"))
+        .thenReturn(Optional.of(saved.getValue()));
+
+    Optional<ProcessedOrderCache.ProcessedUpdate> found = processedOrderCache.find("ORDER-1");
+
+    assertThat(found).isPresent();
+    assertThat(found.get().matches(request("ORDER-1"))).isTrue();
+    assertThat(found.get().response()).isEqualTo(response);
+  }
+
+  @Test
+  void find_UnknownOrder() {
+    when(processedOrderRepository.findByOrderId("ORDER-9")).thenReturn(Optional.empty());
+
+    assertThat(processedOrderCache.find("ORDER-9")).isEmpty();
+  }
+
+  @Test
+  void findBatch_BatchRecordIsReadBackFromTable() {
+    BatchInventoryUpdateRequest request =
+        BatchInventoryUpdateRequest.builder()
+            .orderId("ORDER-1")
+            .lines(
+                List.of(
+                    new BatchInventoryUpdateRequest.Line("PROD-001", 5),
+                    new BatchInventoryUpdateRequest.Line("PROD-002", 3)))
+            .build();
+    BatchInventoryUpdateResponse response =
+        BatchInventoryUpdateResponse.builder()
+            .success(true)
+            .orderId("ORDER-1")
+            .lines(List.of(response("ORDER-1"), response("ORDER-1", "PROD-002", 3)))
+            .build();
+    processedOrderCache.recordBatch(request, response);
+    ArgumentCaptor<ProcessedOrder> saved = ArgumentCaptor.forClass(ProcessedOrder.class);
+    verify(processedOrderRepository).saveAndFlush(saved.capture());
+    assertThat(saved.getValue().getProductCode()).isNull();
+    assertThat(saved.getValue().getQuantity()).isEqualTo(8);
+    // Evicts ORDER-1, the cache holds one entry
+    processedOrderCache.record(request("ORDER-2"), response("ORDER-2"));
+    when(processedOrderRepository.findByOrderId("ORDER-1"))
+        .thenReturn(Optional.of(saved.getValue()));
+
+    Optional<ProcessedOrderCache.ProcessedBatchUpdate> found =
+        processedOrderCache.findBatch("ORDER-1");
+
+    assertThat(found).isPresent();
+    assertThat(found.get().matches(request)).isTrue();
+    assertThat(found.get().response()).isEqualTo(response);
+    assertThat(processedOrderCache.find("ORDER-1")).isEmpty();
+    assertThat(processedOrderCache.contains("ORDER-1")).isTrue();
+  }
+
+  @Test
+  void purge_EvictsCachedEntriesOlderThanRetention() {
+    ProcessedOrder order =
+        ProcessedOrder.builder()
+            .orderId("ORDER-1")
+            .productCode("PROD-001")
+            .quantity(5)
+            .response(jsonMapper.writeValueAsString(response("ORDER-1")))
+            .processedAt(LocalDateTime.now().minusDays(8))
+            .build();
+    when(processedOrderRepository.findByOrderId("ORDER-1")).thenReturn(Optional.of(order));
+    assertThat(processedOrderCache.find("ORDER-1")).isPresent();
+
+    processedOrderCache.purge();
+    when(processedOrderRepository.findByOrderId("ORDER-1")).thenReturn(Optional.empty());
+
+    assertThat(processedOrderCache.find("ORDER-1")).isEmpty();
+    verify(processedOrderRepository, times(2)).findByOrderId("ORDER-1");
+  }
+
+  private static InventoryUpdateRequest request(String orderId) {
+    return InventoryUpdateRequest.builder()
+        .productCode("PROD-001")
+        .quantityToDeduct(5)
+        .orderId(orderId)
+        .build();
+  }
+
+  private static InventoryUpdateResponse response(String orderId) {
+    return response(orderId, "PROD-001", 5);
+  }
+
+  private static InventoryUpdateResponse response(
+      String orderId, String productCode, int quantity) {
+    return InventoryUpdateResponse.builder()
+        .success(true)
+        .message("Inventory updated successfully")
+        .productCode(productCode)
+        .orderId(orderId)
+        .quantityDeducted(quantity)
+        .remainingQuantity(95)
+        .batchDeductions(
+            List.of(
+                InventoryUpdateResponse.BatchDeduction.builder()
+                    .batchId(1L)
+                    .batchNumber("BATCH-001")
+                    .quantityDeducted(quantity)
+                    .remainingQuantity(95)
+                    .newStatus("ACTIVE")
+                    .build()))
+        .timestamp(LocalDateTime.of(2026, 1, 1, 12, 0))
+        .build();
+  }
+}
@@ -0,0 +1,104 @@
+package org.koerber.inventory.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.repository.ProductRepository;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ProductCacheTest {
+
+  @Mock private ProductRepository productRepository;
+
+  private final AtomicLong now = new AtomicLong();
+  private ProductCache productCache;
+
+  @BeforeEach
+  void setUp() {
+    productCache = new ProductCache(productRepository, 2, 60, false, now::get);
+  }
+
+  @Test
+  void findByProductCode_LoadsOnceThenHits() {
+    Product product = product(1L, "PROD-001");
+    when(productRepository.findByProductCode("PROD-001")).thenReturn(Optional.of(product));
+
+    assertThat(productCache.findByProductCode("PROD-001")).contains(product);
+    assertThat(productCache.findByProductCode("PROD-001")).contains(product);
+
+    verify(productRepository, times(1)).findByProductCode("PROD-001");
+    assertThat(productCache.stats()).isEqualTo(new ProductCache.CacheStats(1, 1, 0, 1));
+  }
+
+  @Test
+  void findByProductCode_ExpiresAfterTtl() {
+    when(productRepository.findByProductCode("PROD-001"))
+        .thenReturn(Optional.of(product(1L, "PROD-001")));
+
+    productCache.findByProductCode("PROD-001");
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+    productCache.findByProductCode("PROD-001");
+
+    verify(productRepository, times(2)).findByProductCode("PROD-001");
+    assertThat(productCache.stats().evictions()).isEqualTo(1);
+  }
+
+  @Test
+  void findByProductCodeIn_LoadsOnlyMissesAndEvictsLeastRecentlyUsed() {
+    Product first = product(1L, "PROD-001");
+    Product second = product(2L, "PROD-002");
+    Product third = product(3L, "PROD-003");
+    when(productRepository.findByProductCode("PROD-001")).thenReturn(Optional.of(first));
+    when(productRepository.findByProductCodeIn(Set.of("PROD-002", "PROD-003")))
+        .thenReturn(List.of(second, third));
+
+    productCache.findByProductCode("PROD-001");
+    assertThat(productCache.findByProductCodeIn(List.of("PROD-001", "PROD-002", "PROD-003")))
+        .containsExactlyInAnyOrder(first, second, third);
+
+    // PROD-001 was used first and is the one evicted by the size bound
+    assertThat(productCache.stats().size()).isEqualTo(2);
+    assertThat(productCache.stats().evictions()).isEqualTo(1);
+  }
+
+  @Test
+  void invalidate_DropsEntryEvenAfterProductCodeChange() {
+    Product product = product(1L, "PROD-001");
+    when(productRepository.findByProductCode("PROD-001")).thenReturn(Optional.of(product));
+    productCache.findByProductCode("PROD-001");
+
+    productCache.invalidate(product(1L, "PROD-001-NEW"));
+    productCache.findByProductCode("PROD-001");
+
+    verify(productRepository, times(2)).findByProductCode("PROD-001");
+  }
+
+  @Test
+  void findByProductCode_ReturnsCopiesCallersCannotChangeTheCacheThrough() {
+    Product product = product(1L, "PROD-001");
+    when(productRepository.findByProductCode("PROD-001")).thenReturn(Optional.of(product));
+
+    productCache.findByProductCode("PROD-001").orElseThrow().setName("Changed");
+    product.setMinimumStock(99);
+
+    Product cached = productCache.findByProductCode("PROD-001").orElseThrow();
+    assertThat(cached).isNotSameAs(product);
+    assertThat(cached.getName()).isEqualTo("Product 1");
+    assertThat(cached.getMinimumStock()).isNull();
+  }
+
+  private Product product(Long id, String productCode) {
+    return Product.builder().id(id).productCode(productCode).name("Product " + id).build();
+  }
+}
@@ -0,0 +1,109 @@
+package org.koerber.inventory.contention;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.dto.ContentionResponse;
+import org.koerber.inventory.exception.ConcurrentUpdateException;
+import org.koerber.inventory.exception.InsufficientStockException;
+import org.koerber.inventory.exception.ProductNotFoundException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+class ConflictRetrierTest {
+
+  private ContentionStats contentionStats;
+  private ConflictRetrier retrier;
+
+  @BeforeEach
+  void setUp() {
+    contentionStats = new ContentionStats();
+    retrier = new ConflictRetrier(contentionStats, 3, 0, 0);
+  }
+
+  @Test
+  void execute_RetriesConflictUntilUpdateSucceeds() {
+    AtomicInteger calls = new AtomicInteger();
+
+    String result =
+        retrier.execute(
+            "PROD-001",
+            () -> {
+              if (calls.incrementAndGet() < 3) {
+                throw new ConcurrentUpdateException("PROD-001", "Batch was modified concurrently");
+              }
+              return "deducted";
+            });
+
+    assertThat(result).isEqualTo("deducted");
+    assertThat(calls).hasValue(3);
+    ContentionResponse contention = contentionStats.get("PROD-001");
+    assertThat(contention.getAttempts()).isEqualTo(3);
+    assertThat(contention.getConflicts()).isEqualTo(2);
+    assertThat(contention.getRetries()).isEqualTo(2);
+    assertThat(contention.getExhausted()).isZero();
+  }
+
+  @Test
+  void execute_RethrowsLastConflictOnceAttemptsAreUsedUp() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                retrier.execute(
+                    List.of("PROD-001", "PROD-002"),
+                    () -> {
+                      calls.incrementAndGet();
+                      throw new ObjectOptimisticLockingFailureException("InventoryBatch", 1L);
+                    }))
+        .isInstanceOf(ConcurrentUpdateException.class)
+        .hasCauseInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+    assertThat(calls).hasValue(3);
+    // Without a contended product the conflict counts against every product of the update
+    for (String productCode : List.of("PROD-001", "PROD-002")) {
+      ContentionResponse contention = contentionStats.get(productCode);
+      assertThat(contention.getConflicts()).isEqualTo(3);
+      assertThat(contention.getRetries()).isEqualTo(2);
+      assertThat(contention.getExhausted()).isEqualTo(1);
+      assertThat(contention.getConflictRate()).isEqualTo(1.0);
+    }
+  }
+
+  @Test
+  void execute_DoesNotRetryOtherFailuresButCountsTheirAttempt() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                retrier.execute(
+                    "PROD-001",
+                    () -> {
+                      calls.incrementAndGet();
+                      throw new InsufficientStockException("Insufficient stock");
+                    }))
+        .isInstanceOf(InsufficientStockException.class);
+
+    assertThat(calls).hasValue(1);
+    ContentionResponse contention = contentionStats.get("PROD-001");
+    assertThat(contention.getAttempts()).isEqualTo(1);
+    assertThat(contention.getConflicts()).isZero();
+  }
+
+  @Test
+  void execute_DoesNotCountUnknownProducts() {
+    assertThatThrownBy(
+            () ->
+                retrier.execute(
+                    "NO-SUCH-PRODUCT",
+                    () -> {
+                      throw new ProductNotFoundException("Product not found");
+                    }))
+        .isInstanceOf(ProductNotFoundException.class);
+
+    assertThat(contentionStats.get("NO-SUCH-PRODUCT").getAttempts()).isZero();
+  }
+}
@@ -0,0 +1,223 @@
+package org.koerber.inventory.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.model.InventoryBatch;
+
+class InventoryHandlerTest {
+
+  private final StandardInventoryHandler standardHandler = new StandardInventoryHandler();
+  private final FIFOInventoryHandler fifoHandler = new FIFOInventoryHandler();
+  private final FewestBatchesInventoryHandler fewestBatchesHandler =
+      new FewestBatchesInventoryHandler();
+
+  @Test
+  void standardHandler_OrdersByExpiryDateAndSkipsExpired() {
+    List<InventoryBatch> batches =
+        List.of(
+            batch(1L, 10, LocalDate.now().plusDays(30), LocalDate.now().minusDays(5)),
+            batch(2L, 10, null, LocalDate.now().minusDays(50)),
+            batch(3L, 10, LocalDate.now().plusDays(1), LocalDate.now().minusDays(20)),
+            batch(4L, 10, LocalDate.now().minusDays(1), LocalDate.now().minusDays(90)));
+
+    assertThat(ids(standardHandler.sortAndFilterBatches(batches))).containsExactly(3L, 1L, 2L);
+  }
+
+  @Test
+  void selectTopBatchesForDeduction_StopsOnceQuantityIsCovered() {
+    List<InventoryBatch> batches = new ArrayList<>();
+    for (long id = 1; id <= 1_000; id++) {
+      batches.add(batch(id, 10, LocalDate.now().plusDays(1_000 - id), null));
+    }
+
+    List<InventoryBatch> selected = standardHandler.selectTopBatchesForDeduction(batches, 25);
+
+    assertThat(ids(selected)).containsExactly(1_000L, 999L, 998L);
+    assertThat(selected)
+        .isEqualTo(
+            standardHandler.selectBatchesForDeduction(
+                standardHandler.sortAndFilterBatches(batches), 25));
+  }
+
+  @Test
+  void fifoHandler_OrdersByManufacturingThenCreationDate() {
+    LocalDate mfg = LocalDate.now().minusMonths(2);
+    InventoryBatch newer = batch(1L, 10, null, mfg);
+    newer.setCreatedAt(LocalDateTime.now());
+    InventoryBatch older = batch(2L, 10, null, mfg);
+    older.setCreatedAt(LocalDateTime.now().minusDays(1));
+    InventoryBatch oldest = batch(3L, 10, null, mfg.minusMonths(1));
+    InventoryBatch inactive = batch(4L, 10, null, mfg.minusMonths(6));
+    inactive.setStatus(BatchStatus.INACTIVE);
+    // Still ACTIVE until the expiry sweep runs
+    InventoryBatch expired = batch(5L, 10, LocalDate.now().minusDays(1), mfg.minusMonths(3));
+
+    List<InventoryBatch> batches = List.of(newer, older, oldest, inactive, expired);
+
+    assertThat(ids(fifoHandler.sortAndFilterBatches(batches))).containsExactly(3L, 2L, 1L);
+  }
+
+  @Test
+  void fifoHandler_OrdersLongRunsOfOneManufacturingDateByCreationDate() {
+    // One manufacturing date for every batch, created in reverse id order
+    LocalDate mfg = LocalDate.now().minusMonths(2);
+    LocalDateTime created = LocalDateTime.now();
+    List<InventoryBatch> batches = new ArrayList<>();
+    for (long id = 1; id <= 5_000; id++) {
+      InventoryBatch batch = batch(id, 10, null, mfg);
+      batch.setCreatedAt(created.minusSeconds(id));
+      batches.add(batch);
+    }
+
+    List<Long> sortedIds = ids(fifoHandler.sortAndFilterBatches(batches));
+
+    assertThat(sortedIds).hasSize(5_000).startsWith(5_000L, 4_999L).endsWith(2L, 1L);
+  }
+
+  @Test
+  void fewestBatchesHandler_TakesFewestBatchesExpiringSoonest() {
+    List<InventoryBatch> batches =
+        List.of(
+            batch(1L, 10, LocalDate.now().plusDays(1), null),
+            batch(2L, 10, LocalDate.now().plusDays(2), null),
+            batch(3L, 60, LocalDate.now().plusDays(3), null),
+            batch(4L, 50, LocalDate.now().plusDays(4), null),
+            batch(5L, 80, LocalDate.now().plusDays(10), null),
+            batch(6L, 100, LocalDate.now().minusDays(1), null));
+
+    // Two batches are needed; 3 and 4 expire sooner than any other pair covering 100
+    assertThat(ids(fewestBatchesHandler.selectTopBatchesForDeduction(batches, 100)))
+        .containsExactly(3L, 4L);
+    assertThat(ids(standardHandler.selectTopBatchesForDeduction(batches, 100)))
+        .containsExactly(1L, 2L, 3L, 4L);
+    // Short of stock, every usable batch is selected
+    assertThat(ids(fewestBatchesHandler.selectTopBatchesForDeduction(batches, 1_000)))
+        .containsExactly(1L, 2L, 3L, 4L, 5L);
+  }
+
+  @Test
+  void fewestBatchesHandler_MatchesExhaustiveSearchOnSmallInputs() {
+    int today = BatchSnapshot.today();
+    // Few distinct values, so quantities and expiry dates tie often; null means no expiry
+    Integer[] expiryOffsets = {-3, -1, 0, 1, 1, 2, 5, null};
+    Random random = new Random(20_251_018L);
+
+    for (int instance = 0; instance < 2_000; instance++) {
+      int size = 1 + random.nextInt(9);
+      List<InventoryBatch> batches = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        Integer offset = expiryOffsets[random.nextInt(expiryOffsets.length)];
+        InventoryBatch batch =
+            batch(
+                (long) i,
+                random.nextInt(7),
+                offset != null ? LocalDate.ofEpochDay(today + offset) : null,
+                null);
+        if (random.nextInt(10) == 0) {
+          batch.setStatus(BatchStatus.INACTIVE);
+        }
+        batches.add(batch);
+      }
+      BatchSnapshot snapshot = BatchSnapshot.of(batches);
+      int requiredQuantity = 1 + random.nextInt(25);
+      int[] selected = new int[snapshot.size()];
+
+      int count =
+          fewestBatchesHandler.selectForDeduction(snapshot, today, requiredQuantity, selected);
+
+      assertThat(Arrays.copyOf(selected, count))
+          .as("batches %s, quantity %d", batches, requiredQuantity)
+          .containsExactly(fewestBatchesBySearch(snapshot, today, requiredQuantity));
+    }
+  }
+
+  @Test
+  void snapshotEvaluation_UsesOneResolvedDate() {
+    int today = BatchSnapshot.today();
+    List<InventoryBatch> batches =
+        List.of(
+            batch(1L, 10, LocalDate.ofEpochDay(today + 3), null),
+            batch(2L, 10, LocalDate.ofEpochDay(today), null),
+            batch(3L, 0, LocalDate.ofEpochDay(today + 1), null),
+            batch(4L, 10, LocalDate.ofEpochDay(today - 1), null));
+    BatchSnapshot snapshot = BatchSnapshot.of(batches);
+    int[] positions = new int[snapshot.size()];
+
+    assertThat(standardHandler.sortAndFilter(snapshot, today, positions)).isEqualTo(2);
+    assertThat(positions).startsWith(1, 0);
+
+    // Evaluated as of two days ago, batch 4 is not expired yet
+    assertThat(standardHandler.selectForDeduction(snapshot, today - 2, 15, positions))
+        .isEqualTo(2);
+    assertThat(positions).startsWith(3, 1);
+  }
+
+  /**
+   * Fewest usable batches covering the quantity, by trying every subset. Among subsets of that size
+   * the one whose batches come first in expiry order wins; without one, every usable batch.
+   */
+  private static int[] fewestBatchesBySearch(
+      BatchSnapshot snapshot, int today, int requiredQuantity) {
+    int[] usable =
+        IntStream.range(0, snapshot.size())
+            .filter(position -> snapshot.isAvailable(position, today))
+            .boxed()
+            .sorted(
+                Comparator.<Integer>comparingInt(snapshot::expiryEpochDay)
+                    .thenComparingInt(position -> position))
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+    int[] best = null;
+    for (int subset = 1; subset < 1 << usable.length; subset++) {
+      int members = subset;
+      int[] candidate =
+          IntStream.range(0, usable.length)
+              .filter(k -> (members >> k & 1) == 1)
+              .map(k -> usable[k])
+              .toArray();
+      int covered = Arrays.stream(candidate).map(snapshot::quantity).sum();
+      if (covered < requiredQuantity) {
+        continue;
+      }
+      if (best == null
+          || candidate.length < best.length
+          || (candidate.length == best.length
+              && Arrays.compare(ranks(usable, candidate), ranks(usable, best)) < 0)) {
+        best = candidate;
+      }
+    }
+    return best != null ? best : usable;
+  }
+
+  private static int[] ranks(int[] order, int[] positions) {
+    List<Integer> ordered = Arrays.stream(order).boxed().toList();
+    return Arrays.stream(positions).map(ordered::indexOf).toArray();
+  }
+
+  private InventoryBatch batch(
+      Long id, int quantity, LocalDate expiryDate, LocalDate manufacturingDate) {
+    return InventoryBatch.builder()
+        .id(id)
+        .batchNumber("BATCH-" + id)
+        .quantity(quantity)
+        .expiryDate(expiryDate)
+        .manufacturingDate(manufacturingDate)
+        .status(BatchStatus.ACTIVE)
+        .build();
+  }
+
+  private List<Long> ids(List<InventoryBatch> batches) {
+    return batches.stream().map(InventoryBatch::getId).toList();
+  }
+}
@@ -0,0 +1,92 @@
+package org.koerber.inventory.ledger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerJournalTest {
+
+  private static final int SEGMENT_RECORDS = 4;
+
+  @TempDir Path directory;
+
+  @Test
+  void recover_ReplaysLatestQuantityOfEveryBatchAcrossSegments() {
+    LedgerJournal journal = open(new HashMap<>());
+    long sequence = 0;
+    for (int i = 0; i < 10; i++) {
+      sequence = journal.append(1L, i % 3, 100 - i);
+    }
+    journal.awaitDurable(sequence);
+
+    Map<Long, Integer> recovered = new HashMap<>();
+    LedgerJournal reopened = open(recovered);
+
+    assertThat(recovered).isEqualTo(Map.of(0L, 91, 1L, 93, 2L, 92));
+    assertThat(reopened.append(1L, 0L, 90)).isEqualTo(11);
+  }
+
+  @Test
+  void writeSnapshot_RecoveryStartsFromSnapshotAndCoveredSegmentsAreDeleted() throws IOException {
+    LedgerJournal journal = open(new HashMap<>());
+    for (int i = 0; i < 9; i++) {
+      journal.append(1L, 1L, 50 - i);
+    }
+    journal.writeSnapshot(journal.lastSequence(), Map.of(1L, Map.of(1L, 42, 2L, 7)));
+    journal.awaitDurable(journal.append(1L, 2L, 6));
+
+    Map<Long, Integer> recovered = new HashMap<>();
+    open(recovered);
+
+    assertThat(recovered).isEqualTo(Map.of(1L, 42, 2L, 6));
+    assertThat(files(".log")).hasSize(1);
+    assertThat(files(".bin")).hasSize(1);
+  }
+
+  @Test
+  void recover_StopsAtTornRecordAndOverwritesIt() throws IOException {
+    LedgerJournal journal = open(new HashMap<>());
+    journal.append(1L, 1L, 10);
+    journal.append(1L, 2L, 20);
+    journal.awaitDurable(journal.append(1L, 3L, 30));
+    corruptRecord(files(".log").get(0), 2);
+
+    Map<Long, Integer> recovered = new HashMap<>();
+    LedgerJournal reopened = open(recovered);
+    assertThat(recovered).isEqualTo(Map.of(1L, 10, 2L, 20));
+
+    reopened.awaitDurable(reopened.append(1L, 4L, 40));
+    Map<Long, Integer> again = new HashMap<>();
+    open(again);
+    assertThat(again).isEqualTo(Map.of(1L, 10, 2L, 20, 4L, 40));
+  }
+
+  private LedgerJournal open(Map<Long, Integer> recovered) {
+    LedgerJournal journal = new LedgerJournal(true, directory.toString(), SEGMENT_RECORDS);
+    journal.recover((productId, batchId, quantity) -> recovered.put(batchId, quantity));
+    return journal;
+  }
+
+  private List<Path> files(String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(suffix)).sorted().toList();
+    }
+  }
+
+  private static void corruptRecord(Path segment, int index) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {1}), index * LedgerJournal.RECORD_SIZE + 20L);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package org.koerber.inventory.ledger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.handler.FewestBatchesInventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+
+class ProductStockTest {
+
+  private int today;
+  private ProductStock stock;
+
+  @BeforeEach
+  void setUp() {
+    today = (int) LocalDate.now().toEpochDay();
+    stock =
+        ProductStock.of(
+            1L,
+            List.of(
+                batch(1L, "EXPIRED", 50, LocalDate.now().minusDays(1)),
+                batch(2L, "BATCH-A", 30, LocalDate.now().plusDays(10)),
+                batch(3L, "BATCH-B", 20, null)));
+  }
+
+  @Test
+  void deduct_SkipsExpiredBatchesAndFollowsHandlerOrder() {
+    List<ProductStock.Allocation> allocations = stock.deduct(40, today);
+
+    assertThat(allocations).hasSize(2);
+    assertThat(allocations.get(0).batchNumber()).isEqualTo("BATCH-A");
+    assertThat(allocations.get(0).quantity()).isEqualTo(30);
+    assertThat(allocations.get(0).remainingQuantity()).isZero();
+    assertThat(allocations.get(1).batchNumber()).isEqualTo("BATCH-B");
+    assertThat(allocations.get(1).quantity()).isEqualTo(10);
+    assertThat(stock.availableQuantity(today)).isEqualTo(10);
+  }
+
+  @Test
+  void deduct_WhenInsufficient_LeavesStockUntouched() {
+    assertThat(stock.deduct(51, today)).isNull();
+    assertThat(stock.availableQuantity(today)).isEqualTo(50);
+  }
+
+  @Test
+  void expire_StopsDeductionsButKeepsQuantityForReleases() {
+    List<ProductStock.Allocation> allocations = stock.deduct(5, today);
+    stock.expire(1);
+
+    assertThat(stock.availableQuantity(today)).isEqualTo(20);
+    assertThat(stock.deduct(21, today)).isNull();
+    stock.release(allocations);
+    assertThat(stock.quantityAt(1)).isEqualTo(30);
+    assertThat(stock.availableQuantity(today)).isEqualTo(20);
+  }
+
+  @Test
+  void deduct_ConcurrentCallersNeverOversell() throws InterruptedException {
+    AtomicInteger deducted = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 200; i++) {
+      executor.submit(
+          () -> {
+            if (stock.deduct(1, today) != null) {
+              deducted.incrementAndGet();
+            }
+          });
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(deducted.get()).isEqualTo(50);
+    assertThat(stock.availableQuantity(today)).isZero();
+  }
+
+  @Test
+  void deduct_ConcurrentCallersThatFitTogetherAllSucceed() throws Exception {
+    // Every deduction spans two batches, so concurrent ones keep meeting on the same batch
+    for (int round = 0; round < 50; round++) {
+      ProductStock small =
+          ProductStock.of(
+              1L,
+              LongStream.rangeClosed(1, 60)
+                  .mapToObj(id -> batch(id, "BATCH-" + id, 2, null))
+                  .toList());
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<List<ProductStock.Allocation>>> deductions = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        deductions.add(executor.submit(() -> small.deduct(3, today)));
+      }
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+      for (Future<List<ProductStock.Allocation>> deduction : deductions) {
+        assertThat(deduction.get()).isNotNull();
+      }
+      assertThat(small.availableQuantity(today)).isZero();
+      assertThat(small.deduct(1, today)).isNull();
+    }
+  }
+
+  @Test
+  void deduct_StripedStockTakesBatchesInHandlerOrderAcrossStripes() {
+    ProductStock striped =
+        ProductStock.striped(
+            1L,
+            List.of(batch(2L, "BATCH-A", 40, null), batch(3L, "BATCH-B", 40, null)),
+            4);
+
+    List<ProductStock.Allocation> allocations = striped.deduct(30, today);
+
+    // The home cell holds 10, the rest comes from the other stripes' cells of BATCH-A
+    assertThat(allocations).hasSize(1);
+    assertThat(allocations.get(0).batchNumber()).isEqualTo("BATCH-A");
+    assertThat(allocations.get(0).quantity()).isEqualTo(30);
+    assertThat(allocations.get(0).remainingQuantity()).isEqualTo(10);
+    assertThat(striped.availableQuantity(today)).isEqualTo(50);
+  }
+
+  @Test
+  void rebalance_EvensOutDrainedCells() {
+    ProductStock striped = ProductStock.striped(1L, List.of(batch(2L, "BATCH-A", 40, null)), 4);
+    striped.deduct(30, today);
+
+    assertThat(striped.rebalance()).isEqualTo(1);
+
+    assertThat(IntStream.range(0, 4).map(stripe -> striped.cellQuantity(0, stripe)))
+        .containsExactly(3, 3, 2, 2);
+    assertThat(striped.rebalance()).isZero();
+  }
+
+  @Test
+  void deduct_StripedConcurrentCallersNeverOversell() throws InterruptedException {
+    ProductStock striped =
+        ProductStock.striped(
+            1L,
+            List.of(batch(2L, "BATCH-A", 30, null), batch(3L, "BATCH-B", 20, null)),
+            8);
+    AtomicInteger deducted = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 200; i++) {
+      executor.submit(
+          () -> {
+            if (striped.deduct(1, today) != null) {
+              deducted.incrementAndGet();
+            }
+          });
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(deducted.get()).isEqualTo(50);
+    assertThat(striped.availableQuantity(today)).isZero();
+  }
+
+  @Test
+  void deduct_SelectingStockTakesTheHandlersSelection() {
+    List<InventoryBatch> batches = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      batches.add(batch(id, "SMALL-" + id, 10, LocalDate.now().plusDays(id)));
+    }
+    batches.add(batch(4L, "LARGE", 30, LocalDate.now().plusDays(4)));
+    batches.forEach(batch -> batch.setStatus(BatchStatus.ACTIVE));
+    ProductStock selecting =
+        ProductStock.selecting(1L, batches, new FewestBatchesInventoryHandler());
+
+    List<ProductStock.Allocation> allocations = selecting.deduct(30, today);
+
+    // Expiry order would take the three small batches
+    assertThat(allocations)
+        .singleElement()
+        .satisfies(
+            allocation -> {
+              assertThat(allocation.batchNumber()).isEqualTo("LARGE");
+              assertThat(allocation.quantity()).isEqualTo(30);
+            });
+    assertThat(selecting.deduct(25, today))
+        .extracting(ProductStock.Allocation::batchNumber)
+        .containsExactly("SMALL-1", "SMALL-2", "SMALL-3");
+  }
+
+  private InventoryBatch batch(Long id, String batchNumber, int quantity, LocalDate expiryDate) {
+    return InventoryBatch.builder()
+        .id(id)
+        .batchNumber(batchNumber)
+        .quantity(quantity)
+        .expiryDate(expiryDate)
+        .build();
+  }
+}
@@ -0,0 +1,211 @@
+package org.koerber.inventory.ledger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.enums.BatchStatus;
+import org.koerber.inventory.enums.HandlerType;
+import org.koerber.inventory.factory.InventoryHandlerFactoryImpl;
+import org.koerber.inventory.handler.StandardInventoryHandler;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.ProductRepository;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class StockLedgerTest {
+
+  @Mock private ProductRepository productRepository;
+
+  @Mock private InventoryBatchRepository batchRepository;
+
+  @Mock private InventoryHandlerFactoryImpl handlerFactory;
+
+  @Mock private LedgerJournal journal;
+
+  @Test
+  void drainDirtyBatches_NeverSeesQuantityARebalanceIsMoving() throws Exception {
+    Product product =
+        Product.builder().id(1L).productCode("HOT-001").handlerType(HandlerType.STANDARD).build();
+    InventoryBatch batch =
+        InventoryBatch.builder()
+            .id(10L)
+            .batchNumber("HOT-BATCH")
+            .quantity(400)
+            .status(BatchStatus.ACTIVE)
+            .build();
+    when(batchRepository.findAvailableBatchViews(1L)).thenReturn(List.of(batch));
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(new StandardInventoryHandler());
+    StockLedger ledger =
+        new StockLedger(
+            productRepository,
+            batchRepository,
+            handlerFactory,
+            journal,
+            true,
+            Set.of("HOT-001"),
+            4);
+    ledger.load(product);
+
+    AtomicBoolean stop = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    // Taking 250 empties the home cell and spills into others; giving it back refills only the
+    // home cell, so every round leaves the cells uneven for the rebalancer
+    Future<?> mover =
+        executor.submit(
+            () -> {
+              while (!stop.get()) {
+                List<ProductStock.Allocation> allocations = ledger.deduct(1L, 250);
+                if (allocations != null) {
+                  ledger.release(1L, allocations);
+                }
+              }
+            });
+    Future<?> rebalancer =
+        executor.submit(
+            () -> {
+              while (!stop.get()) {
+                ledger.rebalanceStripes();
+              }
+            });
+
+    // Applies the drained changes the way the write-behind does
+    int persisted = 400;
+    int lowest = Integer.MAX_VALUE;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+    while (System.nanoTime() < deadline) {
+      for (StockLedger.PendingWrite write : ledger.drainDirtyBatches()) {
+        persisted += write.quantityDelta();
+        lowest = Math.min(lowest, persisted);
+      }
+    }
+    stop.set(true);
+    mover.get(5, TimeUnit.SECONDS);
+    rebalancer.get(5, TimeUnit.SECONDS);
+    executor.shutdown();
+    for (StockLedger.PendingWrite write : ledger.drainDirtyBatches()) {
+      persisted += write.quantityDelta();
+    }
+
+    // At most one deduction of 250 is in flight at any time
+    assertThat(lowest).isGreaterThanOrEqualTo(150);
+    assertThat(persisted).isEqualTo(400);
+  }
+
+  @Test
+  void drainDirtyBatches_ReturnsChangeSinceLastDrainAndAgainAfterRequeue() {
+    Product product =
+        Product.builder().id(1L).productCode("PROD-001").handlerType(HandlerType.STANDARD).build();
+    InventoryBatch batch =
+        InventoryBatch.builder()
+            .id(10L)
+            .batchNumber("BATCH-001")
+            .quantity(400)
+            .status(BatchStatus.ACTIVE)
+            .build();
+    when(batchRepository.findAvailableBatchViews(1L)).thenReturn(List.of(batch));
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(new StandardInventoryHandler());
+    StockLedger ledger =
+        new StockLedger(
+            productRepository, batchRepository, handlerFactory, journal, true, Set.of(), 4);
+    ledger.load(product);
+
+    ledger.deduct(1L, 30);
+    List<StockLedger.PendingWrite> writes = ledger.drainDirtyBatches();
+    assertThat(writes).containsExactly(new StockLedger.PendingWrite(10L, 1L, -30));
+
+    // A failed flush gives the change back, and it is written with the next one
+    ledger.requeue(writes);
+    ledger.deduct(1L, 20);
+    assertThat(ledger.drainDirtyBatches())
+        .containsExactly(new StockLedger.PendingWrite(10L, 1L, -50));
+
+    // Deducted and given back before a flush leaves nothing to write
+    List<ProductStock.Allocation> allocations = ledger.deduct(1L, 10);
+    ledger.release(1L, allocations);
+    assertThat(ledger.drainDirtyBatches()).isEmpty();
+  }
+
+  @Test
+  void deduct_LoadsProductCreatedAfterStartupAndReloadPicksUpReceivedBatches() {
+    Product product =
+        Product.builder().id(2L).productCode("NEW-001").handlerType(HandlerType.STANDARD).build();
+    InventoryBatch first =
+        InventoryBatch.builder()
+            .id(20L)
+            .batchNumber("NEW-BATCH-1")
+            .quantity(10)
+            .status(BatchStatus.ACTIVE)
+            .build();
+    InventoryBatch received =
+        InventoryBatch.builder()
+            .id(21L)
+            .batchNumber("NEW-BATCH-2")
+            .quantity(15)
+            .status(BatchStatus.ACTIVE)
+            .build();
+    when(productRepository.findById(2L)).thenReturn(Optional.of(product));
+    when(batchRepository.findAvailableBatchViews(2L))
+        .thenReturn(List.of(first))
+        .thenReturn(List.of(first, received));
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(new StandardInventoryHandler());
+    StockLedger ledger =
+        new StockLedger(
+            productRepository, batchRepository, handlerFactory, journal, true, Set.of(), 4);
+
+    assertThat(ledger.deduct(2L, 10)).isNotNull();
+    assertThat(ledger.deduct(2L, 5)).isNull();
+
+    ledger.requestReload(2L);
+    ledger.reloadRequested();
+
+    assertThat(ledger.isTracked(21L)).isTrue();
+    assertThat(ledger.deduct(2L, 5)).isNotNull();
+  }
+
+  @Test
+  void version_GrowsWithEveryChangeAndSurvivesReload() {
+    Product product =
+        Product.builder().id(3L).productCode("VER-001").handlerType(HandlerType.STANDARD).build();
+    InventoryBatch batch =
+        InventoryBatch.builder()
+            .id(30L)
+            .batchNumber("VER-BATCH-1")
+            .quantity(10)
+            .status(BatchStatus.ACTIVE)
+            .build();
+    when(productRepository.findById(3L)).thenReturn(Optional.of(product));
+    when(batchRepository.findAvailableBatchViews(3L)).thenReturn(List.of(batch));
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(new StandardInventoryHandler());
+    StockLedger ledger =
+        new StockLedger(
+            productRepository, batchRepository, handlerFactory, journal, true, Set.of(), 4);
+
+    List<ProductStock.Allocation> allocations = ledger.deduct(3L, 4);
+    long afterDeduction = ledger.version(3L);
+    assertThat(afterDeduction).isPositive();
+
+    assertThat(ledger.deduct(3L, 20)).isNull();
+    assertThat(ledger.version(3L)).isEqualTo(afterDeduction);
+
+    ledger.release(3L, allocations);
+    long afterRelease = ledger.version(3L);
+    assertThat(afterRelease).isGreaterThan(afterDeduction);
+
+    ledger.requestReload(3L);
+    ledger.reloadRequested();
+    assertThat(ledger.version(3L)).isGreaterThan(afterRelease);
+  }
+}
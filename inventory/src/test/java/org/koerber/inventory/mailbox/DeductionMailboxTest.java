@@ -0,0 +1,174 @@
+package org.koerber.inventory.mailbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.cache.ProductCache;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.exception.InsufficientStockException;
+import org.koerber.inventory.exception.StockConflictException;
+import org.koerber.inventory.ledger.StockLedger;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.service.InventoryService;
+import org.koerber.inventory.service.InventoryService.DeductionOutcome;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class DeductionMailboxTest {
+
+  /** Long enough for all test requests to queue before the first group is taken */
+  private static final long WINDOW_MILLIS = 300;
+
+  @Mock private InventoryService inventoryService;
+
+  @Mock private ProductCache productCache;
+
+  @Mock private StockLedger stockLedger;
+
+  private DeductionMailbox mailbox;
+  private ExecutorService callers;
+
+  @BeforeEach
+  void setUp() {
+    mailbox =
+        new DeductionMailbox(
+            inventoryService, productCache, stockLedger, true, 2, 256, WINDOW_MILLIS, 5_000);
+    callers = Executors.newFixedThreadPool(4);
+    when(productCache.findByProductCode("PROD-001"))
+        .thenReturn(Optional.of(Product.builder().id(1L).productCode("PROD-001").build()));
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    callers.shutdownNow();
+    mailbox.shutdown();
+  }
+
+  @Test
+  void deduct_AppliesConcurrentRequestsAsOneGroup() {
+    when(inventoryService.updateInventoryGroup(eq("PROD-001"), anyList()))
+        .thenAnswer(
+            invocation -> {
+              List<InventoryUpdateRequest> requests = invocation.getArgument(1);
+              return requests.stream()
+                  .map(
+                      request ->
+                          request.getQuantityToDeduct() > 5
+                              ? DeductionOutcome.failed(new InsufficientStockException("short"))
+                              : DeductionOutcome.served(response(request)))
+                  .toList();
+            });
+
+    CompletableFuture<InventoryUpdateResponse> first = submit("ORDER-1", 1);
+    CompletableFuture<InventoryUpdateResponse> second = submit("ORDER-2", 2);
+    CompletableFuture<InventoryUpdateResponse> shortage = submit("ORDER-3", 9);
+
+    assertThat(first.join().getOrderId()).isEqualTo("ORDER-1");
+    assertThat(second.join().getOrderId()).isEqualTo("ORDER-2");
+    assertThatThrownBy(shortage::join).hasCauseInstanceOf(InsufficientStockException.class);
+    verify(inventoryService, times(1)).updateInventoryGroup(eq("PROD-001"), anyList());
+    verify(inventoryService, never()).updateInventory(any());
+  }
+
+  @Test
+  void deduct_WhenGroupFails_AppliesRequestsOneByOne() {
+    when(inventoryService.updateInventoryGroup(eq("PROD-001"), anyList()))
+        .thenThrow(new StockConflictException("Batch BATCH-001 was modified concurrently"));
+    when(inventoryService.updateInventory(any()))
+        .thenAnswer(invocation -> response(invocation.getArgument(0)));
+
+    CompletableFuture<InventoryUpdateResponse> first = submit("ORDER-1", 1);
+    CompletableFuture<InventoryUpdateResponse> second = submit("ORDER-2", 2);
+
+    assertThat(first.join().getOrderId()).isEqualTo("ORDER-1");
+    assertThat(second.join().getOrderId()).isEqualTo("ORDER-2");
+    verify(inventoryService, times(2)).updateInventory(any());
+  }
+
+  @Test
+  void deduct_HotProductTakesTurnsWithOtherProducts() throws InterruptedException {
+    // One worker and groups of one: every group is a turn on the shared worker
+    mailbox.shutdown();
+    mailbox =
+        new DeductionMailbox(
+            inventoryService, productCache, stockLedger, true, 1, 1, WINDOW_MILLIS, 5_000);
+    when(productCache.findByProductCode("PROD-002"))
+        .thenReturn(Optional.of(Product.builder().id(2L).productCode("PROD-002").build()));
+    List<String> applied = Collections.synchronizedList(new ArrayList<>());
+    when(inventoryService.updateInventory(any()))
+        .thenAnswer(
+            invocation -> {
+              InventoryUpdateRequest request = invocation.getArgument(0);
+              applied.add(request.getOrderId());
+              return response(request);
+            });
+
+    // The hot product's mailbox is waiting for the worker before the other one is queued
+    List<CompletableFuture<InventoryUpdateResponse>> hot = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      hot.add(submit("PROD-001", "HOT-" + i, 1));
+      Thread.sleep(20);
+    }
+    CompletableFuture<InventoryUpdateResponse> other = submit("PROD-002", "OTHER-1", 1);
+
+    other.join();
+    hot.forEach(CompletableFuture::join);
+    assertThat(applied).containsExactly("HOT-1", "OTHER-1", "HOT-2", "HOT-3");
+  }
+
+  @Test
+  void deduct_WhenGroupIsNotAppliedInTime_FailsTheRequest() throws InterruptedException {
+    mailbox.shutdown();
+    mailbox =
+        new DeductionMailbox(inventoryService, productCache, stockLedger, true, 1, 256, 0, 100);
+    CountDownLatch release = new CountDownLatch(1);
+    when(inventoryService.updateInventory(any()))
+        .thenAnswer(
+            invocation -> {
+              release.await();
+              return response(invocation.getArgument(0));
+            });
+
+    try {
+      assertThatThrownBy(() -> mailbox.deduct(new InventoryUpdateRequest("PROD-001", 1, "SLOW")))
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessageContaining("was not applied within 100 ms");
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private CompletableFuture<InventoryUpdateResponse> submit(String orderId, int quantity) {
+    return submit("PROD-001", orderId, quantity);
+  }
+
+  private CompletableFuture<InventoryUpdateResponse> submit(
+      String productCode, String orderId, int quantity) {
+    return CompletableFuture.supplyAsync(
+        () -> mailbox.deduct(new InventoryUpdateRequest(productCode, quantity, orderId)), callers);
+  }
+
+  private static InventoryUpdateResponse response(InventoryUpdateRequest request) {
+    return InventoryUpdateResponse.builder()
+        .success(true)
+        .productCode(request.getProductCode())
+        .orderId(request.getOrderId())
+        .quantityDeducted(request.getQuantityToDeduct())
+        .build();
+  }
+}
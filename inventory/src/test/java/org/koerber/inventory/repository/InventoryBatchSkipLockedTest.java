@@ -0,0 +1,146 @@
+package org.koerber.inventory.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.enums.AllocationPolicy;
+import org.koerber.inventory.enums.HandlerType;
+import org.koerber.inventory.enums.ProductCategory;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.service.InventoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Runs the SKIP LOCKED claim against H2, with a second transaction holding a batch */
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryBatchSkipLockedTest {
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private ProductRepository productRepository;
+
+  @Autowired private InventoryBatchRepository batchRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  private Product product;
+  private InventoryBatch expiringFirst;
+  private InventoryBatch expiringLater;
+
+  @BeforeEach
+  void setUp() {
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          product =
+              productRepository.save(
+                  Product.builder()
+                      .productCode("SKIP-001")
+                      .name("Skip locked product")
+                      .category(ProductCategory.HEALTH_AND_BEAUTY)
+                      .minimumStock(0)
+                      .handlerType(HandlerType.STANDARD)
+                      .allocationPolicy(AllocationPolicy.SKIP_LOCKED)
+                      .build());
+          expiringFirst = batchRepository.save(batch("SKIP-BATCH-1", LocalDate.now().plusDays(10)));
+          expiringLater = batchRepository.save(batch("SKIP-BATCH-2", LocalDate.now().plusDays(20)));
+          productRepository.recalculateAvailableQuantities(List.of(product.getId()));
+        });
+  }
+
+  @Test
+  void lockAvailableSkippingLocked_SkipsBatchLockedByAnotherTransaction() throws Exception {
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Map<Long, Integer>> holder = holdLock(expiringFirst, locked, release);
+
+    try {
+      assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+      Map<Long, Integer> claimed =
+          transactionTemplate.execute(
+              status ->
+                  batchRepository.lockAvailableSkippingLocked(
+                      List.of(expiringFirst.getId(), expiringLater.getId())));
+
+      assertThat(claimed).containsExactly(Map.entry(expiringLater.getId(), 20));
+    } finally {
+      release.countDown();
+    }
+    assertThat(holder.get(5, TimeUnit.SECONDS)).containsOnlyKeys(expiringFirst.getId());
+  }
+
+  @Test
+  void updateInventory_SkipLocked_DeductsFromBatchNoOtherOrderHolds() throws Exception {
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Map<Long, Integer>> holder = holdLock(expiringFirst, locked, release);
+
+    InventoryUpdateResponse response;
+    try {
+      assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+      response =
+          inventoryService.updateInventory(
+              InventoryUpdateRequest.builder()
+                  .productCode("SKIP-001")
+                  .quantityToDeduct(5)
+                  .orderId("SKIP-ORDER-1")
+                  .build());
+    } finally {
+      release.countDown();
+    }
+    holder.get(5, TimeUnit.SECONDS);
+
+    // The batch expiring first is held, so the order takes the next one instead of waiting
+    assertThat(response.getBatchDeductions())
+        .singleElement()
+        .satisfies(
+            deduction -> {
+              assertThat(deduction.getBatchId()).isEqualTo(expiringLater.getId());
+              assertThat(deduction.getRemainingQuantity()).isEqualTo(15);
+            });
+    assertThat(batchRepository.findById(expiringLater.getId()))
+        .get()
+        .extracting(InventoryBatch::getQuantity)
+        .isEqualTo(15);
+  }
+
+  /** Lock a batch in a transaction of its own, held until released */
+  private CompletableFuture<Map<Long, Integer>> holdLock(
+      InventoryBatch batch, CountDownLatch locked, CountDownLatch release) {
+    return CompletableFuture.supplyAsync(
+        () ->
+            transactionTemplate.execute(
+                status -> {
+                  Map<Long, Integer> claimed =
+                      batchRepository.lockAvailableSkippingLocked(List.of(batch.getId()));
+                  locked.countDown();
+                  try {
+                    release.await(5, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  return claimed;
+                }));
+  }
+
+  private InventoryBatch batch(String batchNumber, LocalDate expiryDate) {
+    return InventoryBatch.builder()
+        .product(product)
+        .batchNumber(batchNumber)
+        .quantity(20)
+        .expiryDate(expiryDate)
+        .build();
+  }
+}
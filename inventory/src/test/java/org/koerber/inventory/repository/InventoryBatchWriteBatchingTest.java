@@ -0,0 +1,210 @@
+package org.koerber.inventory.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.model.InventoryBatch;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.service.InventoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(InventoryBatchWriteBatchingTest.StatementCounter.class)
+@Transactional
+class InventoryBatchWriteBatchingTest {
+
+  private static final int BATCH_COUNT = 120;
+
+  /** The service's conditional deduction, sent through JdbcTemplate rather than Hibernate */
+  private static final String DEDUCT_SQL = "UPDATE inventory_batches SET quantity = quantity - ?";
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  @Autowired private InventoryBatchRepository batchRepository;
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private StatementCounter statementCounter;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  void receivingManyBatches_InsertsInJdbcBatches() {
+    List<InventoryBatch> received = newBatches();
+    statistics.clear();
+
+    batchRepository.saveAll(received);
+    entityManager.flush();
+
+    assertThat(statistics.getEntityInsertCount()).isEqualTo(BATCH_COUNT);
+    // A sequence call per 50 IDs and an insert batch per 50 rows, not a statement per row
+    assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(7);
+  }
+
+  @Test
+  void deductingFromManyBatches_UpdatesInOneJdbcBatch() {
+    batchRepository.saveAll(newBatches());
+    entityManager.flush();
+    statementCounter.clear();
+
+    InventoryUpdateResponse response =
+        inventoryService.updateInventory(
+            InventoryUpdateRequest.builder()
+                .productCode("PROD-001")
+                .quantityToDeduct(BATCH_COUNT * 10)
+                .orderId("BULK-ORDER-1")
+                .build());
+
+    assertThat(response.getBatchDeductions()).hasSize(BATCH_COUNT);
+    // One conditional UPDATE per batch, all sent in one JDBC batch instead of one call per row
+    assertThat(statementCounter.batchedRows(DEDUCT_SQL)).isEqualTo(BATCH_COUNT);
+    assertThat(statementCounter.batches(DEDUCT_SQL)).isEqualTo(1);
+    assertThat(statementCounter.singleUpdates(DEDUCT_SQL)).isZero();
+  }
+
+  private List<InventoryBatch> newBatches() {
+    Product product = entityManager.getReference(Product.class, 1L);
+    List<InventoryBatch> batches = new ArrayList<>(BATCH_COUNT);
+    for (int i = 0; i < BATCH_COUNT; i++) {
+      batches.add(
+          InventoryBatch.builder()
+              .product(product)
+              .batchNumber("BULK-" + i)
+              .quantity(10)
+              .expiryDate(LocalDate.now().plusYears(1))
+              .build());
+    }
+    return batches;
+  }
+
+  /** Counts the JDBC batches and single updates sent per SQL prefix, by wrapping the data source */
+  static class StatementCounter implements BeanPostProcessor {
+
+    private final Map<String, int[]> counts = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+      if (!(bean instanceof DataSource dataSource)) {
+        return bean;
+      }
+      return new DelegatingDataSource(dataSource) {
+        @Override
+        public Connection getConnection() throws SQLException {
+          return proxy(Connection.class, super.getConnection(), this::countStatements);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+          return proxy(
+              Connection.class, super.getConnection(username, password), this::countStatements);
+        }
+
+        private Object countStatements(Method method, Object[] args, Object result) {
+          if (result instanceof PreparedStatement statement
+              && method.getName().equals("prepareStatement")) {
+            String sql = (String) args[0];
+            return proxy(
+                PreparedStatement.class,
+                statement,
+                (statementMethod, statementArgs, statementResult) -> {
+                  count(sql, statementMethod, statementArgs);
+                  return statementResult;
+                });
+          }
+          return result;
+        }
+      };
+    }
+
+    void clear() {
+      counts.clear();
+    }
+
+    int batchedRows(String sqlPrefix) {
+      return sum(sqlPrefix, 0);
+    }
+
+    int batches(String sqlPrefix) {
+      return sum(sqlPrefix, 1);
+    }
+
+    int singleUpdates(String sqlPrefix) {
+      return sum(sqlPrefix, 2);
+    }
+
+    private void count(String sql, Method method, Object[] args) {
+      boolean noArgs = args == null || args.length == 0;
+      int counter =
+          switch (method.getName()) {
+            case "addBatch" -> noArgs ? 0 : -1;
+            case "executeBatch", "executeLargeBatch" -> 1;
+            case "executeUpdate", "executeLargeUpdate", "execute" -> noArgs ? 2 : -1;
+            default -> -1;
+          };
+      if (counter >= 0) {
+        int[] sqlCounts = counts.computeIfAbsent(sql, key -> new int[3]);
+        synchronized (sqlCounts) {
+          sqlCounts[counter]++;
+        }
+      }
+    }
+
+    private int sum(String sqlPrefix, int counter) {
+      return counts.entrySet().stream()
+          .filter(entry -> entry.getKey().startsWith(sqlPrefix))
+          .mapToInt(entry -> entry.getValue()[counter])
+          .sum();
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Intercepted intercepted) {
+      return type.cast(
+          Proxy.newProxyInstance(
+              type.getClassLoader(),
+              new Class<?>[] {type},
+              (proxy, method, args) -> {
+                try {
+                  return intercepted.after(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }));
+    }
+
+    @FunctionalInterface
+    private interface Intercepted {
+      Object after(Method method, Object[] args, Object result) throws SQLException;
+    }
+  }
+}
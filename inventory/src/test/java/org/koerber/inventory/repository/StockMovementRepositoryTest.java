@@ -0,0 +1,67 @@
+package org.koerber.inventory.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.StockAsOfResponse;
+import org.koerber.inventory.service.InventoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+@DirtiesContext
+class StockMovementRepositoryTest {
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private StockMovementRepository movementRepository;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @Test
+  void asOf_AfterStartup_ReplaysSeedBatchesToTheirCurrentQuantity() {
+    // The expiry sweep may record EXPIRED movements for seed batches before opening balances run
+    StockAsOfResponse asOf = inventoryService.getInventoryAsOf("PROD-001", LocalDateTime.now());
+
+    assertThat(asOf.getBatches())
+        .extracting(
+            StockAsOfResponse.BatchQuantity::getBatchNumber,
+            StockAsOfResponse.BatchQuantity::getQuantity)
+        .containsExactlyInAnyOrder(
+            tuple("ASP-BATCH-001", 200),
+            tuple("ASP-BATCH-002", 150),
+            tuple("ASP-BATCH-EXPIRED", 50),
+            tuple("ASP-BATCH-INACTIVE", 100));
+  }
+
+  @Test
+  void asOf_ReplaysMovementsOnTopOfTheNearestSnapshot() throws InterruptedException {
+    LocalDateTime snapshotAsOf = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    transactionTemplate.executeWithoutResult(
+        status -> movementRepository.createSnapshot(snapshotAsOf));
+    Thread.sleep(10);
+    LocalDateTime beforeDeduction = LocalDateTime.now();
+    Thread.sleep(10);
+
+    inventoryService.updateInventory(
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-003")
+            .quantityToDeduct(3)
+            .orderId("AS-OF-ORDER-1")
+            .build());
+
+    StockAsOfResponse before = inventoryService.getInventoryAsOf("PROD-003", beforeDeduction);
+    assertThat(before.getSnapshotAsOf()).isEqualTo(snapshotAsOf);
+    assertThat(before.getTotalQuantity()).isEqualTo(10);
+
+    StockAsOfResponse after = inventoryService.getInventoryAsOf("PROD-003", LocalDateTime.now());
+    assertThat(after.getSnapshotAsOf()).isEqualTo(snapshotAsOf);
+    assertThat(after.getTotalQuantity()).isEqualTo(7);
+  }
+}
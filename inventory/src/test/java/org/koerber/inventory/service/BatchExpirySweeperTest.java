@@ -0,0 +1,93 @@
+package org.koerber.inventory.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.enums.MovementType;
+import org.koerber.inventory.ledger.StockLedger;
+import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustom.ExpiredBatch;
+import org.koerber.inventory.repository.ProductRepository;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom.NewMovement;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class BatchExpirySweeperTest {
+
+  @Mock private InventoryBatchRepository batchRepository;
+
+  @Mock private ProductRepository productRepository;
+
+  @Mock private StockMovementRepository movementRepository;
+
+  @Mock private StockLedger stockLedger;
+
+  @Mock private TransactionTemplate transactionTemplate;
+
+  private BatchExpirySweeper sweeper;
+
+  @BeforeEach
+  void setUp() {
+    sweeper =
+        new BatchExpirySweeper(
+            batchRepository,
+            productRepository,
+            movementRepository,
+            stockLedger,
+            transactionTemplate,
+            2);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(
+            invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+  }
+
+  @Test
+  void sweep_ExpiresChunksUntilOnePartialChunk() {
+    LocalDate today = LocalDate.now();
+    when(batchRepository.expireBatches(today, 2))
+        .thenReturn(List.of(new ExpiredBatch(1L, 10L), new ExpiredBatch(2L, 20L)))
+        .thenReturn(List.of(new ExpiredBatch(3L, 10L)));
+
+    assertThat(sweeper.sweep()).isEqualTo(3);
+
+    verify(batchRepository, times(2)).expireBatches(today, 2);
+    verify(productRepository).recalculateAvailableQuantities(List.of(10L, 20L));
+    verify(productRepository).recalculateAvailableQuantities(List.of(10L));
+    verify(movementRepository)
+        .append(
+            List.of(
+                new NewMovement(1L, 10L, MovementType.EXPIRED, 0, null),
+                new NewMovement(2L, 20L, MovementType.EXPIRED, 0, null)));
+    verify(stockLedger, never()).expire(anyCollection());
+  }
+
+  @Test
+  void sweep_StopsLedgerDeductionsFromCommittedChunks() {
+    when(stockLedger.isEnabled()).thenReturn(true);
+    when(batchRepository.expireBatches(any(LocalDate.class), eq(2)))
+        .thenReturn(List.of(new ExpiredBatch(1L, 10L)));
+
+    sweeper.sweep();
+
+    verify(stockLedger).expire(List.of(1L));
+  }
+
+  @Test
+  void sweep_NothingExpired() {
+    when(batchRepository.expireBatches(any(LocalDate.class), eq(2))).thenReturn(List.of());
+
+    assertThat(sweeper.sweep()).isZero();
+
+    verify(productRepository).recalculateAvailableQuantities(List.of());
+  }
+}
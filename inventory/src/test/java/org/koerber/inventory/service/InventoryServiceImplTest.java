@@ -4,37 +4,67 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
+import jakarta.persistence.EntityManager;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.cache.ProcessedOrderCache;
+import org.koerber.inventory.cache.ProductCache;
+import org.koerber.inventory.dto.BatchDTO;
+import org.koerber.inventory.dto.BatchInventoryUpdateRequest;
+import org.koerber.inventory.dto.BatchInventoryUpdateResponse;
+import org.koerber.inventory.dto.BatchPageResponse;
 import org.koerber.inventory.dto.InventoryResponse;
 import org.koerber.inventory.dto.InventoryUpdateRequest;
 import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.StockAsOfResponse;
+import org.koerber.inventory.dto.StockAvailabilityResponse;
+import org.koerber.inventory.enums.AllocationPolicy;
 import org.koerber.inventory.enums.BatchStatus;
 import org.koerber.inventory.enums.HandlerType;
+import org.koerber.inventory.enums.MovementType;
 import org.koerber.inventory.enums.ProductCategory;
+import org.koerber.inventory.exception.ConcurrentUpdateException;
+import org.koerber.inventory.exception.InsufficientStockException;
 import org.koerber.inventory.exception.ProductNotFoundException;
+import org.koerber.inventory.exception.StockConflictException;
 import org.koerber.inventory.factory.InventoryHandlerFactoryImpl;
 import org.koerber.inventory.handler.InventoryHandler;
+import org.koerber.inventory.ledger.ProductStock;
+import org.koerber.inventory.ledger.StockLedger;
 import org.koerber.inventory.model.InventoryBatch;
 import org.koerber.inventory.model.Product;
 import org.koerber.inventory.repository.InventoryBatchRepository;
+import org.koerber.inventory.repository.InventoryBatchRepositoryCustom;
 import org.koerber.inventory.repository.ProductRepository;
+import org.koerber.inventory.repository.StockCounter;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom;
+import org.koerber.inventory.repository.StockTotals;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @ExtendWith(MockitoExtension.class)
 class InventoryServiceImplTest {
 
-  @Mock private ProductRepository productRepository;
+  @Mock private EntityManager entityManager;
+
+  @Mock private ProductCache productCache;
 
   @Mock private InventoryBatchRepository batchRepository;
 
@@ -42,6 +72,14 @@ class InventoryServiceImplTest {
 
   @Mock private InventoryHandler inventoryHandler;
 
+  @Mock private StockLedger stockLedger;
+
+  @Mock private ProductRepository productRepository;
+
+  @Mock private ProcessedOrderCache processedOrderCache;
+
+  @Mock private StockMovementRepository movementRepository;
+
   @InjectMocks private InventoryServiceImpl inventoryService;
 
   private Product testProduct;
@@ -101,11 +139,14 @@ class InventoryServiceImplTest {
     List<InventoryBatch> batches = Arrays.asList(testBatch1, testBatch2);
     List<InventoryBatch> sortedBatches = Arrays.asList(testBatch1, testBatch2);
 
-    when(productRepository.findByProductCode(productCode)).thenReturn(Optional.of(testProduct));
-    when(batchRepository.findByProductId(testProduct.getId())).thenReturn(batches);
+    when(productCache.findByProductCode(productCode)).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findBatchViewsByProductId(testProduct.getId())).thenReturn(batches);
+    when(batchRepository.findStockTotalsByProductIds(List.of(testProduct.getId())))
+        .thenReturn(List.of(new StockTotals(testProduct.getId(), 175L, 175L)));
     when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
     when(inventoryHandler.getType()).thenReturn("STANDARD");
-    when(inventoryHandler.sortAndFilterBatches(batches)).thenReturn(sortedBatches);
+    when(inventoryHandler.sortAndFilterBatches(batches))
+        .thenReturn(sortedBatches);
     when(testBatch1.isAvailable()).thenReturn(true);
     when(testBatch2.isAvailable()).thenReturn(true);
 
@@ -122,8 +163,8 @@ class InventoryServiceImplTest {
     assertThat(response.getMinimumStock()).isEqualTo(50);
     assertThat(response.getBatches()).hasSize(2);
 
-    verify(productRepository).findByProductCode(productCode);
-    verify(batchRepository).findByProductId(testProduct.getId());
+    verify(productCache).findByProductCode(productCode);
+    verify(batchRepository).findBatchViewsByProductId(testProduct.getId());
     verify(handlerFactory).getHandler("STANDARD");
     verify(inventoryHandler).sortAndFilterBatches(batches);
   }
@@ -132,16 +173,160 @@ class InventoryServiceImplTest {
   void getInventoryByProduct_ThrowsProductNotFoundException() {
 
     String productCode = "NONEXISTENT";
-    when(productRepository.findByProductCode(productCode)).thenReturn(Optional.empty());
+    when(productCache.findByProductCode(productCode)).thenReturn(Optional.empty());
 
     assertThatThrownBy(() -> inventoryService.getInventoryByProduct(productCode))
         .isInstanceOf(ProductNotFoundException.class)
         .hasMessageContaining("Product not found with productCode: NONEXISTENT");
 
-    verify(productRepository).findByProductCode(productCode);
+    verify(productCache).findByProductCode(productCode);
+    verifyNoInteractions(batchRepository, handlerFactory);
+  }
+
+  @Test
+  void getInventoryAsOf_ReplaysFromNearestSnapshot() {
+    LocalDateTime asOf = LocalDateTime.of(2026, 3, 1, 12, 0);
+    StockMovementRepositoryCustom.SnapshotRef snapshot =
+        new StockMovementRepositoryCustom.SnapshotRef(5L, asOf.minusHours(2));
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(movementRepository.findLatestSnapshot(asOf)).thenReturn(Optional.of(snapshot));
+    when(movementRepository.findQuantitiesAsOf(testProduct.getId(), snapshot, asOf))
+        .thenReturn(
+            List.of(
+                new StockMovementRepositoryCustom.BatchQuantity(1L, "BATCH-001", 60),
+                new StockMovementRepositoryCustom.BatchQuantity(2L, "BATCH-002", 15)));
+
+    StockAsOfResponse response = inventoryService.getInventoryAsOf("PROD-001", asOf);
+
+    assertThat(response.getSnapshotAsOf()).isEqualTo(snapshot.asOf());
+    assertThat(response.getTotalQuantity()).isEqualTo(75);
+    assertThat(response.getBatches())
+        .extracting(StockAsOfResponse.BatchQuantity::getBatchNumber)
+        .containsExactly("BATCH-001", "BATCH-002");
+    verifyNoInteractions(batchRepository);
+  }
+
+  @Test
+  void getInventoryETag_DoesNotLoadBatches() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(productRepository.findStockCounterById(testProduct.getId()))
+        .thenReturn(Optional.of(new StockCounter(testProduct.getId(), 175, 3L)));
+
+    assertThat(inventoryService.getInventoryETag("PROD-001")).isEqualTo("3");
+
+    verifyNoInteractions(batchRepository, handlerFactory);
+  }
+
+  @Test
+  void getInventoryETag_InLedgerMode_CarriesLedgerVersion() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(productRepository.findStockCounterById(testProduct.getId()))
+        .thenReturn(Optional.of(new StockCounter(testProduct.getId(), 175, 3L)));
+    when(stockLedger.isEnabled()).thenReturn(true);
+    when(stockLedger.version(testProduct.getId())).thenReturn(7L).thenReturn(8L);
+
+    // A ledger deduction between the reads changes the tag before the stock counter is flushed
+    assertThat(inventoryService.getInventoryETag("PROD-001")).isEqualTo("3.7");
+    assertThat(inventoryService.getInventoryETag("PROD-001")).isEqualTo("3.8");
+  }
+
+  @Test
+  void getAvailability_ReadsStockCounter() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(productRepository.findStockCounterById(testProduct.getId()))
+        .thenReturn(Optional.of(new StockCounter(testProduct.getId(), 40, 7L)));
+
+    StockAvailabilityResponse availability = inventoryService.getAvailability("PROD-001");
+
+    assertThat(availability.getAvailableQuantity()).isEqualTo(40);
+    assertThat(availability.getStockVersion()).isEqualTo(7L);
+    assertThat(availability.getLowStockWarning()).isTrue();
     verifyNoInteractions(batchRepository, handlerFactory);
   }
 
+  @Test
+  void getBatchPage_ReturnsCursorWhenMoreBatchesFollow() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findByProductIdAndIdGreaterThanOrderByIdAsc(
+            testProduct.getId(), 0L, Limit.of(2)))
+        .thenReturn(List.of(testBatch1, testBatch2));
+
+    BatchPageResponse page = inventoryService.getBatchPage("PROD-001", null, 1);
+
+    assertThat(page.getBatches()).extracting(BatchDTO::getBatchId).containsExactly(1L);
+    assertThat(page.getNextAfter()).isEqualTo(1L);
+  }
+
+  @Test
+  void getBatchPage_RejectsOversizePage() {
+    assertThatThrownBy(() -> inventoryService.getBatchPage("PROD-001", null, 1001))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    verifyNoInteractions(productCache, batchRepository);
+  }
+
+  @Test
+  void streamBatches_DetachesEachBatchOnceWritten() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.streamByProductId(testProduct.getId()))
+        .thenReturn(Stream.of(testBatch1, testBatch2));
+    @SuppressWarnings("unchecked")
+    Consumer<BatchDTO> sink = mock(Consumer.class);
+
+    assertThat(inventoryService.streamBatches("PROD-001", sink)).isEqualTo(2);
+
+    verify(sink, times(2)).accept(any(BatchDTO.class));
+    verify(entityManager).detach(testBatch1);
+    verify(entityManager).detach(testBatch2);
+  }
+
+  @Test
+  void getInventoryByProducts_ResolvesAllProductsWithTwoQueries() {
+    Product maskProduct =
+        Product.builder()
+            .id(2L)
+            .productCode("PROD-002")
+            .name("Face Masks")
+            .category(ProductCategory.HEALTH_AND_BEAUTY)
+            .handlerType(HandlerType.STANDARD)
+            .build();
+    List<InventoryBatch> batches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCodeIn(anyCollection()))
+        .thenReturn(Arrays.asList(maskProduct, testProduct));
+    when(batchRepository.findByProductIdIn(anyCollection())).thenReturn(batches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.sortAndFilterBatches(anyList()))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    Map<String, InventoryResponse> responses =
+        inventoryService.getInventoryByProducts(List.of("PROD-001", "PROD-002", "UNKNOWN"));
+
+    assertThat(responses).containsOnlyKeys("PROD-001", "PROD-002");
+    assertThat(responses.keySet()).containsExactly("PROD-001", "PROD-002");
+    assertThat(responses.get("PROD-001").getTotalQuantity()).isEqualTo(175);
+    assertThat(responses.get("PROD-001").getBatches()).hasSize(2);
+    assertThat(responses.get("PROD-002").getTotalQuantity()).isZero();
+    assertThat(responses.get("PROD-002").getBatches()).isEmpty();
+
+    verify(productCache).findByProductCodeIn(anyCollection());
+    verify(batchRepository).findByProductIdIn(anyCollection());
+    verify(productCache, never()).findByProductCode(anyString());
+  }
+
+  @Test
+  void getInventoryByProducts_RejectsOversizedLookups() {
+    List<String> productCodes =
+        IntStream.rangeClosed(0, InventoryServiceImpl.MAX_BULK_LOOKUP_SIZE)
+            .mapToObj(i -> "PROD-" + i)
+            .toList();
+
+    assertThatThrownBy(() -> inventoryService.getInventoryByProducts(productCodes))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    verifyNoInteractions(productCache, batchRepository);
+  }
+
   @Test
   void updateInventory_WhenSufficientStock_UpdatesInventorySuccessfully() {
     InventoryUpdateRequest request =
@@ -152,15 +337,14 @@ class InventoryServiceImplTest {
             .build();
 
     List<InventoryBatch> availableBatches = Arrays.asList(testBatch1, testBatch2);
-    List<InventoryBatch> sortedBatches = Arrays.asList(testBatch1, testBatch2);
     List<InventoryBatch> selectedBatches = Collections.singletonList(testBatch1);
 
-    when(productRepository.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
-    when(batchRepository.findAvailableBatches(testProduct.getId())).thenReturn(availableBatches);
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(availableBatches);
     when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
-    when(inventoryHandler.sortAndFilterBatches(availableBatches)).thenReturn(sortedBatches);
-    when(inventoryHandler.selectBatchesForDeduction(sortedBatches, 50)).thenReturn(selectedBatches);
-    when(batchRepository.calculateTotalAvailableQuantity(testProduct.getId())).thenReturn(125);
+    when(inventoryHandler.selectTopBatchesForDeduction(availableBatches, 50))
+        .thenReturn(selectedBatches);
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {1});
 
     InventoryUpdateResponse response = inventoryService.updateInventory(request);
 
@@ -171,12 +355,394 @@ class InventoryServiceImplTest {
     assertThat(response.getOrderId()).isEqualTo("ORDER-123");
     assertThat(response.getQuantityDeducted()).isEqualTo(50);
     assertThat(response.getRemainingQuantity()).isEqualTo(125);
+    assertThat(response.getBatchDeductions()).hasSize(1);
+    assertThat(response.getBatchDeductions().get(0).getRemainingQuantity()).isEqualTo(50);
+    assertThat(response.getBatchDeductions().get(0).getNewStatus()).isEqualTo("ACTIVE");
 
-    verify(productRepository).findByProductCode("PROD-001");
+    verify(productCache).findByProductCode("PROD-001");
     verify(batchRepository).findAvailableBatches(testProduct.getId());
     verify(handlerFactory).getHandler("STANDARD");
-    verify(inventoryHandler).sortAndFilterBatches(availableBatches);
-    verify(inventoryHandler).selectBatchesForDeduction(sortedBatches, 50);
-    verify(batchRepository).calculateTotalAvailableQuantity(testProduct.getId());
+    verify(productRepository).adjustAvailableQuantities(Map.of(testProduct.getId(), -50));
+    verify(inventoryHandler).selectTopBatchesForDeduction(availableBatches, 50);
+    verify(inventoryHandler, never()).sortAndFilterBatches(anyList());
+    verify(batchRepository)
+        .deductQuantities(
+            List.of(new InventoryBatchRepositoryCustom.StockDeduction(testBatch1.getId(), 50)));
+    verify(batchRepository, never()).save(any(InventoryBatch.class));
+    verify(batchRepository, never()).calculateTotalAvailableQuantity(anyLong());
+    verify(movementRepository)
+        .append(
+            List.of(
+                new StockMovementRepositoryCustom.NewMovement(
+                    testBatch1.getId(),
+                    testProduct.getId(),
+                    MovementType.DEDUCTED,
+                    -50,
+                    "ORDER-123")));
+    verify(processedOrderCache).record(request, response);
+  }
+
+  @Test
+  void updateInventory_ReportsRemainingQuantityFromWrittenCounter() {
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(50)
+            .orderId("ORDER-123")
+            .build();
+    List<InventoryBatch> availableBatches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(availableBatches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(availableBatches, 50))
+        .thenReturn(Collections.singletonList(testBatch1));
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {1});
+    // Another order took 25 from the second batch after this one read it
+    when(productRepository.adjustAvailableQuantities(Map.of(testProduct.getId(), -50)))
+        .thenReturn(Map.of(testProduct.getId(), 100));
+
+    InventoryUpdateResponse response = inventoryService.updateInventory(request);
+
+    assertThat(response.getRemainingQuantity()).isEqualTo(100);
+    verify(processedOrderCache).record(request, response);
+  }
+
+  @Test
+  void updateInventory_WhenBatchChangedConcurrently_ThrowsStockConflictException() {
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(50)
+            .orderId("ORDER-123")
+            .build();
+
+    List<InventoryBatch> availableBatches = Arrays.asList(testBatch1, testBatch2);
+    List<InventoryBatch> selectedBatches = Collections.singletonList(testBatch1);
+
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(availableBatches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(availableBatches, 50))
+        .thenReturn(selectedBatches);
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {0});
+
+    assertThatThrownBy(() -> inventoryService.updateInventory(request))
+        .isInstanceOf(StockConflictException.class)
+        .hasMessageContaining("BATCH-001");
+  }
+
+  @Test
+  void updateInventory_SkipLocked_TakesNextBatchWhenHeadBatchIsHeld() {
+    testProduct.setAllocationPolicy(AllocationPolicy.SKIP_LOCKED);
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(50)
+            .orderId("ORDER-123")
+            .build();
+
+    List<InventoryBatch> availableBatches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(availableBatches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(availableBatches, 50))
+        .thenReturn(List.of(testBatch1));
+    when(inventoryHandler.sortAndFilterBatches(availableBatches))
+        .thenReturn(availableBatches);
+    when(inventoryHandler.selectTopBatchesForDeduction(List.of(testBatch2), 50))
+        .thenReturn(List.of(testBatch2));
+    // BATCH-001 is held by a concurrent order, BATCH-002 was deducted to 60 meanwhile
+    when(batchRepository.lockAvailableSkippingLocked(List.of(testBatch1.getId())))
+        .thenReturn(Map.of());
+    when(batchRepository.lockAvailableSkippingLocked(List.of(testBatch2.getId())))
+        .thenReturn(Map.of(testBatch2.getId(), 60));
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {1});
+
+    InventoryUpdateResponse response = inventoryService.updateInventory(request);
+
+    assertThat(response.getBatchDeductions()).hasSize(1);
+    assertThat(response.getBatchDeductions().get(0).getBatchNumber()).isEqualTo("BATCH-002");
+    assertThat(response.getBatchDeductions().get(0).getRemainingQuantity()).isEqualTo(10);
+    verify(batchRepository)
+        .deductQuantities(
+            List.of(new InventoryBatchRepositoryCustom.StockDeduction(testBatch2.getId(), 50)));
+  }
+
+  @Test
+  void updateInventory_SkipLocked_WhenStockIsHeldByOtherOrders_ThrowsConcurrentUpdateException() {
+    testProduct.setAllocationPolicy(AllocationPolicy.SKIP_LOCKED);
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(150)
+            .orderId("ORDER-123")
+            .build();
+
+    List<InventoryBatch> availableBatches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(availableBatches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(availableBatches, 150))
+        .thenReturn(availableBatches);
+    when(inventoryHandler.sortAndFilterBatches(availableBatches))
+        .thenReturn(availableBatches);
+    when(batchRepository.lockAvailableSkippingLocked(
+            List.of(testBatch1.getId(), testBatch2.getId())))
+        .thenReturn(Map.of(testBatch1.getId(), 100));
+
+    assertThatThrownBy(() -> inventoryService.updateInventory(request))
+        .isInstanceOf(ConcurrentUpdateException.class)
+        .hasMessageContaining("Only 100 of 150");
+    verify(batchRepository, never()).deductQuantities(anyList());
+  }
+
+  @Test
+  void updateInventory_RepeatedOrder_ReplaysRecordedResponse() {
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(50)
+            .orderId("ORDER-123")
+            .build();
+    InventoryUpdateResponse recorded =
+        InventoryUpdateResponse.builder().success(true).orderId("ORDER-123").build();
+    when(processedOrderCache.find("ORDER-123"))
+        .thenReturn(Optional.of(new ProcessedOrderCache.ProcessedUpdate("PROD-001", 50, recorded)));
+
+    assertThat(inventoryService.updateInventory(request)).isSameAs(recorded);
+
+    verifyNoInteractions(productCache, batchRepository, handlerFactory, productRepository);
+    verify(processedOrderCache, never()).record(any(), any());
+  }
+
+  @Test
+  void updateInventory_RepeatedOrderWithOtherQuantity_ThrowsStockConflictException() {
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(10)
+            .orderId("ORDER-123")
+            .build();
+    when(processedOrderCache.find("ORDER-123"))
+        .thenReturn(
+            Optional.of(
+                new ProcessedOrderCache.ProcessedUpdate(
+                    "PROD-001", 50, InventoryUpdateResponse.builder().build())));
+
+    assertThatThrownBy(() -> inventoryService.updateInventory(request))
+        .isInstanceOf(StockConflictException.class)
+        .hasMessageContaining("ORDER-123");
+
+    verifyNoInteractions(batchRepository);
+  }
+
+  @Test
+  void updateInventoryBatch_DeductsAllLinesWithOneJdbcBatch() {
+    BatchInventoryUpdateRequest request =
+        BatchInventoryUpdateRequest.builder()
+            .orderId("ORDER-123")
+            .lines(
+                List.of(
+                    new BatchInventoryUpdateRequest.Line("PROD-001", 80),
+                    new BatchInventoryUpdateRequest.Line("PROD-001", 40)))
+            .build();
+    List<InventoryBatch> batches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCodeIn(anyCollection())).thenReturn(List.of(testProduct));
+    when(batchRepository.findAvailableBatchesByProductIds(anyCollection())).thenReturn(batches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(eq(batches), anyInt())).thenReturn(batches);
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {1, 1, 1});
+
+    BatchInventoryUpdateResponse response = inventoryService.updateInventoryBatch(request);
+
+    assertThat(response.getSuccess()).isTrue();
+    assertThat(response.getLines()).hasSize(2);
+    assertThat(response.getLines().get(0).getRemainingQuantity()).isEqualTo(95);
+    assertThat(response.getLines().get(1).getRemainingQuantity()).isEqualTo(55);
+    assertThat(response.getLines().get(1).getBatchDeductions())
+        .extracting(InventoryUpdateResponse.BatchDeduction::getBatchNumber)
+        .containsExactly("BATCH-001", "BATCH-002");
+
+    verify(batchRepository, times(1)).deductQuantities(anyList());
+    verify(inventoryHandler, times(2)).selectTopBatchesForDeduction(eq(batches), anyInt());
+    verify(processedOrderCache).recordBatch(request, response);
+  }
+
+  @Test
+  void updateInventoryBatch_RepeatedOrder_ReplaysRecordedResponse() {
+    BatchInventoryUpdateRequest request =
+        BatchInventoryUpdateRequest.builder()
+            .orderId("ORDER-123")
+            .lines(List.of(new BatchInventoryUpdateRequest.Line("PROD-001", 50)))
+            .build();
+    BatchInventoryUpdateResponse recorded =
+        BatchInventoryUpdateResponse.builder()
+            .success(true)
+            .orderId("ORDER-123")
+            .lines(
+                List.of(
+                    InventoryUpdateResponse.builder()
+                        .productCode("PROD-001")
+                        .quantityDeducted(50)
+                        .build()))
+            .build();
+    when(processedOrderCache.findBatch("ORDER-123"))
+        .thenReturn(Optional.of(new ProcessedOrderCache.ProcessedBatchUpdate(recorded)));
+
+    assertThat(inventoryService.updateInventoryBatch(request)).isSameAs(recorded);
+
+    verifyNoInteractions(productCache, batchRepository, handlerFactory, productRepository);
+    verify(processedOrderCache, never()).recordBatch(any(), any());
+  }
+
+  @Test
+  void updateInventoryBatch_RepeatedOrderWithOtherLines_ThrowsStockConflictException() {
+    BatchInventoryUpdateRequest request =
+        BatchInventoryUpdateRequest.builder()
+            .orderId("ORDER-123")
+            .lines(List.of(new BatchInventoryUpdateRequest.Line("PROD-001", 10)))
+            .build();
+    BatchInventoryUpdateResponse recorded =
+        BatchInventoryUpdateResponse.builder()
+            .lines(
+                List.of(
+                    InventoryUpdateResponse.builder()
+                        .productCode("PROD-001")
+                        .quantityDeducted(50)
+                        .build()))
+            .build();
+    when(processedOrderCache.findBatch("ORDER-123"))
+        .thenReturn(Optional.of(new ProcessedOrderCache.ProcessedBatchUpdate(recorded)));
+
+    assertThatThrownBy(() -> inventoryService.updateInventoryBatch(request))
+        .isInstanceOf(StockConflictException.class)
+        .hasMessageContaining("ORDER-123");
+
+    verifyNoInteractions(batchRepository);
+  }
+
+  @Test
+  void updateInventoryBatch_WhenOneLineIsShort_WritesNothing() {
+    BatchInventoryUpdateRequest request =
+        BatchInventoryUpdateRequest.builder()
+            .orderId("ORDER-123")
+            .lines(
+                List.of(
+                    new BatchInventoryUpdateRequest.Line("PROD-001", 100),
+                    new BatchInventoryUpdateRequest.Line("PROD-001", 100)))
+            .build();
+    List<InventoryBatch> batches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCodeIn(anyCollection())).thenReturn(List.of(testProduct));
+    when(batchRepository.findAvailableBatchesByProductIds(anyCollection())).thenReturn(batches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(eq(batches), anyInt())).thenReturn(batches);
+
+    assertThatThrownBy(() -> inventoryService.updateInventoryBatch(request))
+        .isInstanceOf(InsufficientStockException.class);
+
+    verify(batchRepository, never()).deductQuantities(anyList());
+  }
+
+  @Test
+  void updateInventoryGroup_PlansOrdersInTurnAndWritesOnce() {
+    List<InventoryUpdateRequest> requests =
+        List.of(
+            new InventoryUpdateRequest("PROD-001", 60, "ORDER-1"),
+            new InventoryUpdateRequest("PROD-001", 200, "ORDER-2"),
+            new InventoryUpdateRequest("PROD-001", 60, "ORDER-1"),
+            new InventoryUpdateRequest("PROD-001", 50, "ORDER-3"));
+    List<InventoryBatch> batches = Arrays.asList(testBatch1, testBatch2);
+
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(batchRepository.findAvailableBatchViews(testProduct.getId())).thenReturn(batches);
+    when(handlerFactory.getHandler("STANDARD")).thenReturn(inventoryHandler);
+    when(inventoryHandler.selectTopBatchesForDeduction(eq(batches), anyInt())).thenReturn(batches);
+    when(batchRepository.deductQuantities(anyList())).thenReturn(new int[] {1, 1});
+
+    List<InventoryService.DeductionOutcome> outcomes =
+        inventoryService.updateInventoryGroup("PROD-001", requests);
+
+    assertThat(outcomes.get(0).response().getRemainingQuantity()).isEqualTo(115);
+    assertThat(outcomes.get(1).failure()).isInstanceOf(InsufficientStockException.class);
+    assertThat(outcomes.get(2).response()).isSameAs(outcomes.get(0).response());
+    assertThat(outcomes.get(3).response().getRemainingQuantity()).isEqualTo(65);
+
+    // One write per batch, summed over the orders that took from it
+    verify(batchRepository)
+        .deductQuantities(
+            List.of(
+                new InventoryBatchRepositoryCustom.StockDeduction(1L, 100),
+                new InventoryBatchRepositoryCustom.StockDeduction(2L, 10)));
+    verify(productRepository).adjustAvailableQuantities(Map.of(testProduct.getId(), -110));
+    verify(processedOrderCache)
+        .recordAll(
+            argThat(
+                recorded ->
+                    recorded.keySet().stream()
+                        .map(InventoryUpdateRequest::getOrderId)
+                        .toList()
+                        .equals(List.of("ORDER-1", "ORDER-3"))));
+  }
+
+  @Test
+  void updateInventory_FromLedger_ReleasesAllocationsWhenTransactionRollsBack() {
+    InventoryUpdateRequest request =
+        InventoryUpdateRequest.builder()
+            .productCode("PROD-001")
+            .quantityToDeduct(30)
+            .orderId("ORDER-123")
+            .build();
+    List<ProductStock.Allocation> allocations =
+        List.of(new ProductStock.Allocation(0, 1L, "BATCH-001", 30, 70));
+    when(processedOrderCache.find("ORDER-123")).thenReturn(Optional.empty());
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(testProduct));
+    when(stockLedger.isEnabled()).thenReturn(true);
+    when(stockLedger.deduct(testProduct.getId(), 30)).thenReturn(allocations);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      inventoryService.updateInventory(request);
+      verify(stockLedger, never()).release(anyLong(), anyList());
+
+      // The caller's transaction, e.g. a reservation, fails after the deduction
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(
+              synchronization ->
+                  synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    verify(stockLedger).release(testProduct.getId(), allocations);
+  }
+
+  @Test
+  void restoreInventory_FromLedger_RestoresTrackedBatchesOnlyAfterCommit() {
+    when(stockLedger.isEnabled()).thenReturn(true);
+    when(stockLedger.isTracked(1L)).thenReturn(true);
+    when(stockLedger.isTracked(2L)).thenReturn(false);
+    when(stockLedger.restore(Map.of(1L, 20))).thenReturn(Map.of());
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      inventoryService.restoreInventory(testProduct.getId(), Map.of(1L, 20, 2L, 5));
+
+      // Untracked batches are restored in the transaction, tracked ones wait for the commit
+      verify(batchRepository)
+          .restoreQuantities(List.of(new InventoryBatchRepositoryCustom.StockDeduction(2L, 5)));
+      verify(stockLedger, never()).restore(any());
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    verify(stockLedger).restore(Map.of(1L, 20));
   }
 }
@@ -0,0 +1,263 @@
+package org.koerber.inventory.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.cache.ProcessedOrderCache;
+import org.koerber.inventory.cache.ProductCache;
+import org.koerber.inventory.dto.InventoryUpdateRequest;
+import org.koerber.inventory.dto.InventoryUpdateResponse;
+import org.koerber.inventory.dto.ReservationRequest;
+import org.koerber.inventory.dto.ReservationResponse;
+import org.koerber.inventory.enums.ReservationStatus;
+import org.koerber.inventory.exception.StockConflictException;
+import org.koerber.inventory.model.Product;
+import org.koerber.inventory.model.ReservedBatch;
+import org.koerber.inventory.model.StockReservation;
+import org.koerber.inventory.repository.ReservationDeadline;
+import org.koerber.inventory.repository.StockReservationRepository;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class ReservationServiceImplTest {
+
+  @Mock private InventoryService inventoryService;
+
+  @Mock private ProductCache productCache;
+
+  @Mock private ProcessedOrderCache processedOrderCache;
+
+  @Mock private StockReservationRepository reservationRepository;
+
+  @Mock private TransactionTemplate transactionTemplate;
+
+  private MutableClock clock;
+  private ReservationServiceImpl reservationService;
+  private Product product;
+
+  @BeforeEach
+  void setUp() {
+    clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    reservationService =
+        new ReservationServiceImpl(
+            inventoryService,
+            productCache,
+            processedOrderCache,
+            reservationRepository,
+            transactionTemplate,
+            clock,
+            300,
+            3600,
+            1000,
+            64);
+    product = Product.builder().id(1L).productCode("PROD-001").name("Laptop").build();
+  }
+
+  @Test
+  void reserve_DeductsStockAndHoldsBatches() {
+    when(productCache.findByProductCode("PROD-001")).thenReturn(Optional.of(product));
+    when(inventoryService.updateInventory(any(InventoryUpdateRequest.class)))
+        .thenReturn(deduction());
+    when(reservationRepository.save(any(StockReservation.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+
+    ReservationResponse response = reservationService.reserve(request(null));
+
+    assertThat(response.getStatus()).isEqualTo("HELD");
+    assertThat(response.getRemainingQuantity()).isEqualTo(95);
+    assertThat(response.getExpiresAt()).isEqualTo(LocalDateTime.now(clock).plusSeconds(300));
+    assertThat(response.getBatches())
+        .extracting(ReservationResponse.ReservedBatch::getBatchId)
+        .containsExactly(10L, 11L);
+
+    ArgumentCaptor<StockReservation> saved = ArgumentCaptor.forClass(StockReservation.class);
+    verify(reservationRepository).save(saved.capture());
+    assertThat(saved.getValue().getProductId()).isEqualTo(1L);
+    assertThat(saved.getValue().getOrderId()).isEqualTo("ORD-1");
+  }
+
+  @Test
+  void reserve_RepeatedOrder_ReturnsExistingReservation() {
+    when(reservationRepository.findFirstByOrderIdOrderByIdDesc("ORD-1"))
+        .thenReturn(Optional.of(reservation(ReservationStatus.HELD)));
+
+    assertThat(reservationService.reserve(request(null)).getReservationId()).isEqualTo("RES-1");
+
+    verifyNoInteractions(inventoryService, productCache);
+    verify(reservationRepository, never()).save(any(StockReservation.class));
+  }
+
+  @Test
+  void reserve_OrderAlreadyDeductedByInventoryUpdate_Conflict() {
+    when(processedOrderCache.contains("ORD-1")).thenReturn(true);
+
+    assertThatThrownBy(() -> reservationService.reserve(request(null)))
+        .isInstanceOf(StockConflictException.class)
+        .hasMessageContaining("already deducted");
+
+    verifyNoInteractions(inventoryService);
+    verify(reservationRepository, never()).save(any(StockReservation.class));
+  }
+
+  @Test
+  void reserve_TtlAboveMaximum_Rejected() {
+    assertThatThrownBy(() -> reservationService.reserve(request(7200)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("ttlSeconds");
+
+    verifyNoInteractions(inventoryService, reservationRepository);
+  }
+
+  @Test
+  void commit_HeldReservation_DoesNotRestoreStock() {
+    StockReservation reservation = reservation(ReservationStatus.COMMITTED);
+    when(reservationRepository.finishHeld("RES-1", ReservationStatus.COMMITTED)).thenReturn(1);
+    when(reservationRepository.findByReservationId("RES-1")).thenReturn(Optional.of(reservation));
+
+    assertThat(reservationService.commit("RES-1").getStatus()).isEqualTo("COMMITTED");
+
+    verify(inventoryService, never()).restoreInventory(anyLong(), anyMap());
+  }
+
+  @Test
+  void commit_AlreadyReleased_Conflict() {
+    when(reservationRepository.finishHeld("RES-1", ReservationStatus.COMMITTED)).thenReturn(0);
+    when(reservationRepository.findByReservationId("RES-1"))
+        .thenReturn(Optional.of(reservation(ReservationStatus.RELEASED)));
+
+    assertThatThrownBy(() -> reservationService.commit("RES-1"))
+        .isInstanceOf(StockConflictException.class)
+        .hasMessageContaining("RELEASED");
+  }
+
+  @Test
+  void release_RestoresHeldBatches() {
+    when(reservationRepository.finishHeld("RES-1", ReservationStatus.RELEASED)).thenReturn(1);
+    when(reservationRepository.findByReservationId("RES-1"))
+        .thenReturn(Optional.of(reservation(ReservationStatus.RELEASED)));
+
+    reservationService.release("RES-1");
+
+    verify(inventoryService).restoreInventory(1L, Map.of(10L, 3, 11L, 2));
+  }
+
+  @Test
+  void expireDue_RestoresOnlyOnceDeadlinePassed() {
+    doAnswer(
+            invocation -> {
+              invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+              return null;
+            })
+        .when(transactionTemplate)
+        .executeWithoutResult(any());
+    when(reservationRepository.findHeldDeadlines())
+        .thenReturn(
+            List.of(new ReservationDeadline("RES-1", LocalDateTime.now(clock).plusSeconds(5))));
+    reservationService.scheduleHeldReservations();
+
+    clock.advanceSeconds(3);
+    reservationService.expireDue();
+    verifyNoInteractions(inventoryService);
+
+    when(reservationRepository.expireHeld(eq("RES-1"), any(LocalDateTime.class))).thenReturn(1);
+    when(reservationRepository.findByReservationId("RES-1"))
+        .thenReturn(Optional.of(reservation(ReservationStatus.EXPIRED)));
+    clock.advanceSeconds(3);
+    reservationService.expireDue();
+
+    verify(inventoryService).restoreInventory(1L, Map.of(10L, 3, 11L, 2));
+  }
+
+  private static ReservationRequest request(Integer ttlSeconds) {
+    return ReservationRequest.builder()
+        .productCode("PROD-001")
+        .quantity(5)
+        .orderId("ORD-1")
+        .ttlSeconds(ttlSeconds)
+        .build();
+  }
+
+  private static InventoryUpdateResponse deduction() {
+    return InventoryUpdateResponse.builder()
+        .success(true)
+        .productCode("PROD-001")
+        .orderId("ORD-1")
+        .quantityDeducted(5)
+        .remainingQuantity(95)
+        .batchDeductions(
+            List.of(
+                InventoryUpdateResponse.BatchDeduction.builder()
+                    .batchId(10L)
+                    .batchNumber("BATCH-010")
+                    .quantityDeducted(3)
+                    .build(),
+                InventoryUpdateResponse.BatchDeduction.builder()
+                    .batchId(11L)
+                    .batchNumber("BATCH-011")
+                    .quantityDeducted(2)
+                    .build()))
+        .build();
+  }
+
+  private StockReservation reservation(ReservationStatus status) {
+    return StockReservation.builder()
+        .reservationId("RES-1")
+        .orderId("ORD-1")
+        .productId(1L)
+        .productCode("PROD-001")
+        .quantity(5)
+        .status(status)
+        .expiresAt(LocalDateTime.now(clock).plusSeconds(300))
+        .batches(
+            List.of(
+                ReservedBatch.builder().batchId(10L).batchNumber("BATCH-010").quantity(3).build(),
+                ReservedBatch.builder().batchId(11L).batchNumber("BATCH-011").quantity(2).build()))
+        .build();
+  }
+
+  /** Clock moved forward by the tests */
+  private static final class MutableClock extends Clock {
+
+    private Instant instant;
+
+    MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    void advanceSeconds(long seconds) {
+      instant = instant.plusSeconds(seconds);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.koerber.inventory.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.koerber.inventory.repository.StockMovementRepository;
+import org.koerber.inventory.repository.StockMovementRepositoryCustom.SnapshotRef;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class StockSnapshotterTest {
+
+  @Mock private StockMovementRepository movementRepository;
+
+  @Mock private TransactionTemplate transactionTemplate;
+
+  private StockSnapshotter snapshotter;
+
+  @BeforeEach
+  void setUp() {
+    snapshotter = new StockSnapshotter(movementRepository, transactionTemplate, 100, 60, 3);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(
+            invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+  }
+
+  @Test
+  void snapshotIfDue_FoldsMovementsOnceThresholdIsReached() {
+    SnapshotRef previous = new SnapshotRef(1L, LocalDateTime.now().minusHours(1));
+    when(movementRepository.findLatestSnapshot(any())).thenReturn(Optional.of(previous));
+    when(movementRepository.countMovements(eq(previous.asOf()), any())).thenReturn(100L);
+    when(movementRepository.createSnapshot(any()))
+        .thenAnswer(invocation -> new SnapshotRef(2L, invocation.getArgument(0)));
+
+    SnapshotRef snapshot = snapshotter.snapshotIfDue();
+
+    assertThat(snapshot.id()).isEqualTo(2L);
+    assertThat(snapshot.asOf()).isBefore(LocalDateTime.now().minusSeconds(59));
+    verify(movementRepository).deleteOldSnapshots(3);
+  }
+
+  @Test
+  void snapshotIfDue_SkipsWhenTooFewMovements() {
+    when(movementRepository.findLatestSnapshot(any())).thenReturn(Optional.empty());
+    when(movementRepository.countMovements(isNull(), any())).thenReturn(99L);
+
+    assertThat(snapshotter.snapshotIfDue()).isNull();
+
+    verify(movementRepository, never()).createSnapshot(any());
+    verify(movementRepository, never()).deleteOldSnapshots(anyInt());
+  }
+}
@@ -5,9 +5,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.koerber.orderservice.dto.InventoryResponse;
 import org.koerber.orderservice.dto.InventoryUpdateRequest;
 import org.koerber.orderservice.dto.InventoryUpdateResponse;
+import org.koerber.orderservice.dto.ReservationRequest;
+import org.koerber.orderservice.dto.ReservationResponse;
+import org.koerber.orderservice.exception.ErrorResponse;
+import org.koerber.orderservice.exception.InsufficientStockException;
 import org.koerber.orderservice.exception.InventoryServiceException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -17,6 +22,9 @@ import org.springframework.web.client.RestTemplate;
 @Slf4j
 public class InventoryClient {
 
+  /** Error the inventory service reports when a product does not have enough stock */
+  private static final String INSUFFICIENT_STOCK_ERROR = "Insufficient Stock";
+
   private final RestTemplate restTemplate;
 
   @Value("${inventory.service.url}")
@@ -69,4 +77,76 @@ public class InventoryClient {
       throw new InventoryServiceException("Failed to update inventory: " + e.getMessage(), e);
     }
   }
+
+  /**
+   * Hold stock for an order until it is committed or released. The inventory service answers 400
+   * with the error "Insufficient Stock" when the product does not have enough stock; any other 400,
+   * e.g. a rejected TTL, is a failed call.
+   */
+  public ReservationResponse reserve(String productCode, Integer quantity, String orderId) {
+    try {
+      String url = String.format("%s/inventory/reservations", inventoryServiceUrl);
+
+      ReservationRequest request =
+          ReservationRequest.builder()
+              .productCode(productCode)
+              .quantity(quantity)
+              .orderId(orderId)
+              .build();
+
+      log.info("Reserving stock at: {} with request: {}", url, request);
+
+      return restTemplate.postForObject(url, request, ReservationResponse.class);
+
+    } catch (HttpClientErrorException.BadRequest e) {
+      if (!isInsufficientStock(e)) {
+        log.error("Reservation of product {} rejected: {}", productCode, e.getMessage());
+        throw new InventoryServiceException("Failed to reserve stock: " + e.getMessage(), e);
+      }
+      log.warn("Insufficient stock for product {}: {}", productCode, e.getMessage());
+      throw new InsufficientStockException(
+          String.format("Insufficient stock for product %s. Requested: %d", productCode, quantity));
+    } catch (RestClientException e) {
+      log.error("Error reserving stock for product {}: {}", productCode, e.getMessage());
+      throw new InventoryServiceException("Failed to reserve stock: " + e.getMessage(), e);
+    }
+  }
+
+  /** Whether the error field of a rejected call says the product does not have enough stock */
+  private static boolean isInsufficientStock(HttpClientErrorException e) {
+    try {
+      ErrorResponse error = e.getResponseBodyAs(ErrorResponse.class);
+      return error != null && INSUFFICIENT_STOCK_ERROR.equals(error.getError());
+    } catch (RuntimeException unreadable) {
+      // Not an error response of the inventory service, e.g. from a proxy in between
+      return false;
+    }
+  }
+
+  /** Make a held reservation final */
+  public ReservationResponse commitReservation(String reservationId) {
+    return finishReservation(reservationId, "commit");
+  }
+
+  /** Give the stock of a held reservation back */
+  public ReservationResponse releaseReservation(String reservationId) {
+    return finishReservation(reservationId, "release");
+  }
+
+  private ReservationResponse finishReservation(String reservationId, String action) {
+    try {
+      String url =
+          String.format(
+              "%s/inventory/reservations/%s/%s", inventoryServiceUrl, reservationId, action);
+
+      log.info("Finishing reservation at: {}", url);
+
+      return restTemplate.postForObject(url, null, ReservationResponse.class);
+
+    } catch (RestClientException e) {
+      log.error("Error on {} of reservation {}: {}", action, reservationId, e.getMessage());
+      throw new InventoryServiceException(
+          String.format("Failed to %s reservation: %s", action, e.getMessage()), e);
+    }
+  }
 }
@@ -0,0 +1,22 @@
+package org.koerber.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Request DTO for reserving stock in the inventory service */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationRequest {
+
+  private String productCode;
+
+  private Integer quantity;
+
+  private String orderId;
+
+  private Integer ttlSeconds;
+}
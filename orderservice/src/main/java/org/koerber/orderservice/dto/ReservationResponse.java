@@ -0,0 +1,43 @@
+package org.koerber.orderservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Response DTO for stock reservations of the inventory service */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationResponse {
+
+  private String reservationId;
+
+  private String orderId;
+
+  private String productCode;
+
+  private Integer quantity;
+
+  private String status;
+
+  private LocalDateTime expiresAt;
+
+  private Integer remainingQuantity;
+
+  private List<ReservedBatch> batches;
+
+  /** Inner class representing the quantity held on one batch */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class ReservedBatch {
+    private Long batchId;
+    private String batchNumber;
+    private Integer quantity;
+  }
+}
@@ -4,5 +4,7 @@ package org.koerber.orderservice.enums;
 public enum OrderStatus {
   PENDING,
   CONFIRMED,
-  FAILED
+  FAILED,
+  /** Commit of the reservation was sent but not answered; its outcome is checked by hand */
+  UNCONFIRMED
 }
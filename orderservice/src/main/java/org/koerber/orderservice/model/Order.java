@@ -6,10 +6,12 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 import org.koerber.orderservice.enums.OrderStatus;
 
 /** Order Entity */
 @Entity
+@DynamicUpdate
 @Table(name = "orders")
 @Data
 @NoArgsConstructor
@@ -18,7 +20,9 @@ import org.koerber.orderservice.enums.OrderStatus;
 public class Order {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Pooled sequence so inserts can be batched
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+  @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
   private Long id;
 
   @Column(nullable = false, unique = true)
@@ -40,4 +44,7 @@ public class Order {
   private String message;
 
   private Integer remainingStock;
+
+  /** Stock reservation in the inventory service, committed once the order is confirmed */
+  private String reservationId;
 }
@@ -5,15 +5,16 @@ import java.util.UUID;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.koerber.orderservice.client.InventoryClient;
-import org.koerber.orderservice.dto.InventoryUpdateResponse;
 import org.koerber.orderservice.dto.OrderRequest;
 import org.koerber.orderservice.dto.OrderResponse;
+import org.koerber.orderservice.dto.ReservationResponse;
 import org.koerber.orderservice.enums.OrderStatus;
 import org.koerber.orderservice.exception.InsufficientStockException;
+import org.koerber.orderservice.exception.InventoryServiceException;
 import org.koerber.orderservice.model.Order;
 import org.koerber.orderservice.repository.OrderRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.client.HttpClientErrorException;
 
 /** Service layer for order operations */
 @Service
@@ -25,10 +26,11 @@ public class OrderServiceImpl implements OrderService {
   private final InventoryClient inventoryClient;
 
   /**
-   * Place order 1. Check stock availability 2. Create order with PENDING status 3. Update inventory
-   * 4. Update order status based on a result
+   * Place order 1. Reserve stock 2. Create order with PENDING status 3. Commit the reservation 4.
+   * Update order status based on a result. No transaction spans the remote calls; a reservation is
+   * released only when the inventory service refused its commit. A commit that was not answered
+   * may have been applied, so its order is marked UNCONFIRMED for reconciliation instead.
    */
-  @Transactional
   @Override
   public OrderResponse placeOrder(OrderRequest request) {
     log.info(
@@ -39,58 +41,80 @@ public class OrderServiceImpl implements OrderService {
     String orderId = generateOrderId();
     log.info("Generated order ID: {}", orderId);
 
-    int availableQuantity =
-        inventoryClient.getInventory(request.getProductCode()).getAvailableQuantity();
-
-    if (availableQuantity > 0 && availableQuantity < request.getQuantity()) {
+    ReservationResponse reservation;
+    try {
+      reservation =
+          inventoryClient.reserve(request.getProductCode(), request.getQuantity(), orderId);
+    } catch (InsufficientStockException e) {
       log.warn("Insufficient stock for product: {}", request.getProductCode());
 
       Order order =
           createOrder(orderId, request, OrderStatus.FAILED, "Insufficient stock available", null);
       orderRepository.save(order);
 
-      throw new InsufficientStockException(
-          String.format(
-              "Insufficient stock for product %s. Requested: %d",
-              request.getProductCode(), request.getQuantity()));
+      throw e;
     }
 
     Order order =
         createOrder(
-            orderId, request, OrderStatus.PENDING, "Order placed, awaiting inventory update", null);
+            orderId,
+            request,
+            OrderStatus.PENDING,
+            "Stock reserved, awaiting confirmation",
+            reservation.getRemainingQuantity());
+    order.setReservationId(reservation.getReservationId());
     order = orderRepository.save(order);
     log.info("Order created with ID: {} (DB ID: {})", order.getOrderId(), order.getId());
 
     try {
-      InventoryUpdateResponse updateResponse =
-          inventoryClient.updateInventory(request.getProductCode(), request.getQuantity(), orderId);
-
-      if (updateResponse.getSuccess()) {
-        order.setStatus(OrderStatus.CONFIRMED);
-        order.setMessage(
-            String.format(
-                "Order confirmed. Remaining stock: %d", updateResponse.getRemainingQuantity()));
-        order.setRemainingStock(updateResponse.getRemainingQuantity());
-        log.info("Order {} confirmed successfully", order.getOrderId());
-      } else {
+      inventoryClient.commitReservation(reservation.getReservationId());
+    } catch (InventoryServiceException e) {
+      if (e.getCause() instanceof HttpClientErrorException) {
+        // The inventory service refused the commit, so the stock is still only held
+        log.error("Commit for order {} rejected: {}", order.getOrderId(), e.getMessage());
+        releaseReservation(reservation.getReservationId());
+
         order.setStatus(OrderStatus.FAILED);
-        order.setMessage("Failed to update inventory: " + updateResponse.getMessage());
-        log.error("Failed to update inventory for order {}", order.getOrderId());
+        order.setMessage("Error: " + e.getMessage());
+        orderRepository.save(order);
+        throw e;
       }
 
-      order = orderRepository.save(order);
-
-      return OrderResponse.buildOrderResponse(order, updateResponse.getSuccess());
-
-    } catch (Exception e) {
-      log.error("Error processing order {}: {}", order.getOrderId(), e.getMessage());
-
-      order.setStatus(OrderStatus.FAILED);
-      order.setMessage("Error: " + e.getMessage());
+      // No answer: the commit may have been applied, so the stock must not be released
+      log.error("Commit for order {} not answered: {}", order.getOrderId(), e.getMessage());
+      order.setStatus(OrderStatus.UNCONFIRMED);
+      order.setMessage("Reservation commit not answered, to be reconciled: " + e.getMessage());
       orderRepository.save(order);
+      throw e;
+    }
 
+    // The stock is committed; a failure from here on leaves the order to reconciliation
+    order.setStatus(OrderStatus.CONFIRMED);
+    order.setMessage(
+        String.format("Order confirmed. Remaining stock: %d", reservation.getRemainingQuantity()));
+    order.setRemainingStock(reservation.getRemainingQuantity());
+    try {
+      order = orderRepository.save(order);
+    } catch (RuntimeException e) {
+      log.error(
+          "Order {} committed reservation {} but was not saved as confirmed: {}",
+          order.getOrderId(),
+          reservation.getReservationId(),
+          e.getMessage());
       throw e;
     }
+    log.info("Order {} confirmed successfully", order.getOrderId());
+
+    return OrderResponse.buildOrderResponse(order, true);
+  }
+
+  /** Give the reserved stock back right away; on failure it is returned when it expires */
+  private void releaseReservation(String reservationId) {
+    try {
+      inventoryClient.releaseReservation(reservationId);
+    } catch (RuntimeException e) {
+      log.warn("Reservation {} left to expire: {}", reservationId, e.getMessage());
+    }
   }
 
   /** Generate unique order ID */
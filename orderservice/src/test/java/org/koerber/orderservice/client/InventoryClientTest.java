@@ -4,17 +4,25 @@ import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.koerber.orderservice.dto.InventoryResponse;
 import org.koerber.orderservice.dto.InventoryUpdateRequest;
 import org.koerber.orderservice.dto.InventoryUpdateResponse;
+import org.koerber.orderservice.dto.ReservationRequest;
+import org.koerber.orderservice.dto.ReservationResponse;
+import org.koerber.orderservice.exception.ErrorResponse;
+import org.koerber.orderservice.exception.InsufficientStockException;
 import org.koerber.orderservice.exception.InventoryServiceException;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -67,6 +75,61 @@ class InventoryClientTest {
     verify(restTemplate).getForObject(expectedUrl, InventoryResponse.class);
   }
 
+  @Test
+  void reserve_SuccessfulResponse() {
+    ReservationResponse expectedResponse =
+        ReservationResponse.builder().reservationId("RES-1").status("HELD").build();
+
+    String expectedUrl = INVENTORY_SERVICE_URL + "/inventory/reservations";
+    when(restTemplate.postForObject(
+            eq(expectedUrl), any(ReservationRequest.class), eq(ReservationResponse.class)))
+        .thenReturn(expectedResponse);
+
+    assertThat(inventoryClient.reserve(PRODUCT_CODE, 5, "ORD-1").getReservationId())
+        .isEqualTo("RES-1");
+  }
+
+  @Test
+  void reserve_InsufficientStockError_ThrowsInsufficientStockException() {
+    when(restTemplate.postForObject(anyString(), any(), eq(ReservationResponse.class)))
+        .thenThrow(badRequest("Insufficient Stock"));
+
+    assertThatThrownBy(() -> inventoryClient.reserve(PRODUCT_CODE, 5, "ORD-1"))
+        .isInstanceOf(InsufficientStockException.class)
+        .hasMessageContaining(PRODUCT_CODE);
+  }
+
+  @Test
+  void reserve_OtherBadRequest_ThrowsInventoryServiceException() {
+    when(restTemplate.postForObject(anyString(), any(), eq(ReservationResponse.class)))
+        .thenThrow(badRequest("Bad Request"));
+
+    assertThatThrownBy(() -> inventoryClient.reserve(PRODUCT_CODE, 5, "ORD-1"))
+        .isInstanceOf(InventoryServiceException.class)
+        .hasCauseInstanceOf(HttpClientErrorException.BadRequest.class);
+  }
+
+  @Test
+  void reserve_UnreadableBadRequest_ThrowsInventoryServiceException() {
+    HttpClientErrorException unreadable =
+        HttpClientErrorException.create(
+            HttpStatus.BAD_REQUEST,
+            "Bad Request",
+            HttpHeaders.EMPTY,
+            "<html>Insufficient Stock</html>".getBytes(StandardCharsets.UTF_8),
+            StandardCharsets.UTF_8);
+    unreadable.setBodyConvertFunction(
+        type -> {
+          throw new RestClientException("Not an error response");
+        });
+    when(restTemplate.postForObject(anyString(), any(), eq(ReservationResponse.class)))
+        .thenThrow(unreadable);
+
+    assertThatThrownBy(() -> inventoryClient.reserve(PRODUCT_CODE, 5, "ORD-1"))
+        .isInstanceOf(InventoryServiceException.class)
+        .hasCause(unreadable);
+  }
+
   @Test
   void updateInventory_SuccessfulResponse() {
     // Arrange
@@ -129,4 +192,18 @@ class InventoryClientTest {
             eq(expectedUrl), any(InventoryUpdateRequest.class), eq(InventoryUpdateResponse.class));
   }
 
+  private static HttpClientErrorException badRequest(String error) {
+    String body = String.format("{\"status\":400,\"error\":\"%s\",\"message\":\"\"}", error);
+    HttpClientErrorException exception =
+        HttpClientErrorException.create(
+            HttpStatus.BAD_REQUEST,
+            "Bad Request",
+            HttpHeaders.EMPTY,
+            body.getBytes(StandardCharsets.UTF_8),
+            StandardCharsets.UTF_8);
+    // RestTemplate's error handler converts the body with its message converters
+    exception.setBodyConvertFunction(
+        type -> ErrorResponse.builder().status(400).error(error).message("").build());
+    return exception;
+  }
 }
@@ -0,0 +1,56 @@
+package org.koerber.orderservice.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.koerber.orderservice.enums.OrderStatus;
+import org.koerber.orderservice.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class OrderWriteBatchingTest {
+
+  private static final int ORDER_COUNT = 100;
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  @Autowired private OrderRepository orderRepository;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  @Test
+  void burstOfOrders_InsertsInJdbcBatches() {
+    List<Order> orders = new ArrayList<>(ORDER_COUNT);
+    for (int i = 0; i < ORDER_COUNT; i++) {
+      orders.add(
+          Order.builder()
+              .orderId(UUID.randomUUID().toString())
+              .productCode("PROD-001")
+              .quantity(1)
+              .status(OrderStatus.PENDING)
+              .orderDate(LocalDateTime.now())
+              .build());
+    }
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+
+    orderRepository.saveAll(orders);
+    entityManager.flush();
+
+    assertThat(statistics.getEntityInsertCount()).isEqualTo(ORDER_COUNT);
+    // A sequence call per 50 IDs and an insert batch per 50 rows, not a statement per row
+    assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+  }
+}
@@ -8,18 +8,22 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.koerber.orderservice.client.InventoryClient;
-import org.koerber.orderservice.dto.InventoryResponse;
-import org.koerber.orderservice.dto.InventoryUpdateResponse;
 import org.koerber.orderservice.dto.OrderRequest;
 import org.koerber.orderservice.dto.OrderResponse;
+import org.koerber.orderservice.dto.ReservationResponse;
 import org.koerber.orderservice.enums.OrderStatus;
 import org.koerber.orderservice.exception.InsufficientStockException;
+import org.koerber.orderservice.exception.InventoryServiceException;
 import org.koerber.orderservice.model.Order;
 import org.koerber.orderservice.repository.OrderRepository;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.client.RestClientException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
 @ExtendWith(MockitoExtension.class)
 class OrderServiceImplTest {
@@ -31,21 +35,19 @@ class OrderServiceImplTest {
   @InjectMocks private OrderServiceImpl orderService;
 
   private OrderRequest orderRequest;
-  private InventoryResponse inventoryResponse;
-  private InventoryUpdateResponse updateResponse;
+  private ReservationResponse reservation;
   private Order order;
 
   @BeforeEach
   void setUp() {
     orderRequest = OrderRequest.builder().productCode("PROD-001").quantity(5).build();
 
-    inventoryResponse =
-        InventoryResponse.builder().productCode("PROD-001").availableQuantity(10).build();
-
-    updateResponse =
-        InventoryUpdateResponse.builder()
-            .success(true)
-            .message("Inventory updated successfully")
+    reservation =
+        ReservationResponse.builder()
+            .reservationId("RES-1")
+            .productCode("PROD-001")
+            .quantity(5)
+            .status("HELD")
             .remainingQuantity(5)
             .build();
 
@@ -63,9 +65,8 @@ class OrderServiceImplTest {
   @Test
   void placeOrder_SuccessResponse() {
 
-    when(inventoryClient.getInventory("PROD-001")).thenReturn(inventoryResponse);
+    when(inventoryClient.reserve(eq("PROD-001"), eq(5), anyString())).thenReturn(reservation);
     when(orderRepository.save(any(Order.class))).thenReturn(order);
-    when(inventoryClient.updateInventory(eq("PROD-001"), eq(5), anyString())).thenReturn(updateResponse);
 
     OrderResponse response = orderService.placeOrder(orderRequest);
 
@@ -75,21 +76,17 @@ class OrderServiceImplTest {
     assertThat(response.getQuantity()).isEqualTo(5);
     assertThat(response.getRemainingStock()).isEqualTo(5);
 
-    verify(inventoryClient).getInventory("PROD-001");
+    verify(inventoryClient).reserve(eq("PROD-001"), eq(5), anyString());
     verify(orderRepository, times(2)).save(any(Order.class));
-    verify(inventoryClient).updateInventory(eq("PROD-001"), eq(5), anyString());
+    verify(inventoryClient).commitReservation("RES-1");
+    verify(inventoryClient, never()).releaseReservation(anyString());
   }
 
   @Test
   void placeOrder_InsufficientStockException() {
     // Arrange
-    inventoryResponse =
-        InventoryResponse.builder()
-            .productCode("PROD-001")
-            .availableQuantity(3)
-            .build();
-
-    when(inventoryClient.getInventory("PROD-001")).thenReturn(inventoryResponse);
+    when(inventoryClient.reserve(eq("PROD-001"), eq(5), anyString()))
+        .thenThrow(new InsufficientStockException("Insufficient stock for product PROD-001"));
     when(orderRepository.save(any(Order.class))).thenReturn(order);
 
     // Act & Assert
@@ -97,25 +94,64 @@ class OrderServiceImplTest {
         .isInstanceOf(InsufficientStockException.class)
         .hasMessageContaining("Insufficient stock for product PROD-001");
 
-    verify(inventoryClient).getInventory("PROD-001");
+    verify(inventoryClient).reserve(eq("PROD-001"), eq(5), anyString());
     verify(orderRepository).save(any(Order.class));
-    verify(inventoryClient, never()).updateInventory(anyString(), anyInt(), anyString());
+    verify(inventoryClient, never()).commitReservation(anyString());
   }
 
   @Test
-  void placeOrder_InventoryServiceException() {
+  void placeOrder_CommitRejected_ReleasesReservation() {
 
-    when(inventoryClient.getInventory("PROD-001")).thenReturn(inventoryResponse);
+    when(inventoryClient.reserve(eq("PROD-001"), eq(5), anyString())).thenReturn(reservation);
     when(orderRepository.save(any(Order.class))).thenReturn(order);
-    when(inventoryClient.updateInventory(anyString(), anyInt(), anyString())).thenThrow(new RestClientException("Service unavailable"));
+    when(inventoryClient.commitReservation("RES-1"))
+        .thenThrow(
+            new InventoryServiceException(
+                "Failed to commit reservation: 404 Not Found",
+                HttpClientErrorException.create(
+                    HttpStatus.NOT_FOUND, "Not Found", HttpHeaders.EMPTY, null, null)));
 
     assertThatThrownBy(() -> orderService.placeOrder(orderRequest))
-        .isInstanceOf(RestClientException.class)
-        .hasMessageContaining("Service unavailable");
+        .isInstanceOf(InventoryServiceException.class)
+        .hasMessageContaining("404 Not Found");
 
-    verify(inventoryClient).getInventory("PROD-001");
     verify(orderRepository, times(2)).save(any(Order.class));
-    verify(inventoryClient).updateInventory(eq("PROD-001"), eq(5), anyString());
+    verify(inventoryClient).releaseReservation("RES-1");
+    assertThat(order.getStatus()).isEqualTo(OrderStatus.FAILED);
   }
 
+  @Test
+  void placeOrder_CommitNotAnswered_KeepsReservationForReconciliation() {
+
+    when(inventoryClient.reserve(eq("PROD-001"), eq(5), anyString())).thenReturn(reservation);
+    when(orderRepository.save(any(Order.class))).thenReturn(order);
+    when(inventoryClient.commitReservation("RES-1"))
+        .thenThrow(
+            new InventoryServiceException(
+                "Failed to commit reservation: Read timed out",
+                new ResourceAccessException("Read timed out")));
+
+    assertThatThrownBy(() -> orderService.placeOrder(orderRequest))
+        .isInstanceOf(InventoryServiceException.class)
+        .hasMessageContaining("Read timed out");
+
+    verify(orderRepository, times(2)).save(any(Order.class));
+    verify(inventoryClient, never()).releaseReservation(anyString());
+    assertThat(order.getStatus()).isEqualTo(OrderStatus.UNCONFIRMED);
+  }
+
+  @Test
+  void placeOrder_ConfirmedOrderNotSaved_KeepsCommittedStock() {
+
+    when(inventoryClient.reserve(eq("PROD-001"), eq(5), anyString())).thenReturn(reservation);
+    when(orderRepository.save(any(Order.class)))
+        .thenReturn(order)
+        .thenThrow(new DataAccessResourceFailureException("Connection lost"));
+
+    assertThatThrownBy(() -> orderService.placeOrder(orderRequest))
+        .isInstanceOf(DataAccessResourceFailureException.class);
+
+    verify(inventoryClient).commitReservation("RES-1");
+    verify(inventoryClient, never()).releaseReservation(anyString());
+  }
 }